@@ -0,0 +1,162 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Class to write files so nobody reading them ever sees one half written. Each file is built up in
+ * memory, written to a temporary file in the same folder, forced to disk and then moved over the old
+ * one in a single step - a reader gets either the old file or the new one. The buffer is kept and
+ * reused from one write to the next.
+ */
+
+public class AtomicFileWriter {
+	
+	private static final int INITIAL_BUFFER = 64 * 1024; // Size the buffer starts at
+	private static final int MAX_KEPT_BUFFER = 4 * 1024 * 1024; // Largest buffer kept between writes
+	
+	private Buffer buffer; // Where files are built up before being written
+	private DataOutputStream bufferOutput; // Binary output to the buffer
+	
+	/*
+	 * Constructor to create a new AtomicFileWriter
+	 */
+	public AtomicFileWriter() {
+		newBuffer();
+	}
+	
+	/*
+	 * Synchronized method to write a binary file
+	 */
+	public synchronized void writeBinary(String path, BinaryWriter writer) throws IOException {
+		try {
+			writer.write(bufferOutput);
+			bufferOutput.flush();
+			
+			replace(new File(path));
+		} finally {
+			reset();
+		}
+	}
+	
+	/*
+	 * Synchronized method to write a serialized object to a file
+	 */
+	public synchronized void writeObject(String path, Object object) throws IOException {
+		try {
+			// Object streams can't be reused, the buffer under it can
+			ObjectOutputStream objectOutput = new ObjectOutputStream(buffer);
+			objectOutput.writeObject(object);
+			objectOutput.flush();
+			
+			replace(new File(path));
+		} finally {
+			reset();
+		}
+	}
+	
+	/*
+	 * Method to write the buffer to a temporary file, force it to disk and move it into place (lock held)
+	 */
+	private void replace(File file) throws IOException {
+		Path target = file.toPath();
+		Path folder = file.getAbsoluteFile().getParentFile().toPath();
+		Path temp = Files.createTempFile(folder, "." + file.getName(), ".tmp");
+		
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer contents = buffer.toByteBuffer();
+				while (contents.hasRemaining()) {
+					channel.write(contents);
+				}
+				channel.force(true);
+			}
+			
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			// Only still there if something went wrong
+			Files.deleteIfExists(temp);
+		}
+		
+		syncFolder(folder);
+	}
+	
+	/*
+	 * Method to force a folder to disk so the move survives a crash (not every platform allows this,
+	 * the file itself is safe either way)
+	 */
+	private void syncFolder(Path folder) {
+		try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Intentionally blank (folders can't be opened like this on every platform)
+		}
+	}
+	
+	/*
+	 * Method to empty the buffer ready for the next write, dropping it if it's grown too big to keep (lock held)
+	 */
+	private void reset() {
+		if (buffer.capacity() > MAX_KEPT_BUFFER) {
+			newBuffer();
+		} else {
+			buffer.reset();
+		}
+	}
+	
+	/*
+	 * Method to start a new buffer (lock held)
+	 */
+	private void newBuffer() {
+		buffer = new Buffer(INITIAL_BUFFER);
+		bufferOutput = new DataOutputStream(buffer);
+	}
+	
+	/*
+	 * Interface for writing the contents of a binary file
+	 */
+	public interface BinaryWriter {
+		
+		/*
+		 * Method to write the contents
+		 */
+		void write(DataOutputStream output) throws IOException;
+	
+	}
+	
+	/*
+	 * Class to let the buffer's contents be written out without copying them
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+		
+		/*
+		 * Constructor to create a new Buffer
+		 */
+		private Buffer(int size) {
+			super(size);
+		}
+		
+		/*
+		 * Method to return the contents as a ByteBuffer over the same bytes
+		 */
+		private ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+		
+		/*
+		 * Method to return how big the buffer currently is
+		 */
+		private int capacity() {
+			return buf.length;
+		}
+	
+	}
+
+}
@@ -0,0 +1,509 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * Class to read and write orders, users, stock and suppliers in a compact binary format instead of
+ * Java serialization. Nothing is written as an object graph - dishes, ingredients and suppliers are
+ * referred to by name and looked up again when reading, and users in orders are written without
+ * their password.
+ *
+ * File layout: [int magic][byte version][byte kind][kind specific data]
+ * Order layout (also used inside the order journal): [byte version][order data]
+ */
+
+public class BinaryCodec {
+	
+	public static final int MAGIC = 0x53424331; // "SBC1" at the start of every binary file
+	public static final byte VERSION = 1; // Newest version we can write and read
+	
+	// Kinds of binary file
+	private static final byte SUSHI_STOCK = 1;
+	private static final byte INGREDIENT_STOCK = 2;
+	private static final byte SUPPLIERS = 3;
+	private static final byte USER = 4;
+	private static final byte MENU_CHANGES = 5;
+	
+	private static final int MAX_SIZE = 1 << 20; // Most entries read into any one list or map
+	
+	/*
+	 * Private constructor as this class only has static methods
+	 */
+	private BinaryCodec() {
+	}
+	
+	/*
+	 * Method to write an Order
+	 */
+	public static void writeOrder(DataOutput output, Order order) throws IOException {
+		output.writeByte(VERSION);
+		output.writeInt(order.getID());
+		output.writeByte(order.getStatus().ordinal());
+		writeUser(output, order.getUser(), false);
+		writeString(output, order.getDate());
+		output.writeDouble(order.getPrice());
+		
+		// Dishes are written by name and price, the recipe isn't needed for an order
+		HashMap<SushiDish, Integer> content = order.getContent();
+		output.writeInt(content.size());
+		for (Map.Entry<SushiDish, Integer> entry : content.entrySet()) {
+			writeString(output, entry.getKey().getName());
+			output.writeDouble(entry.getKey().getPrice());
+			output.writeInt(entry.getValue());
+		}
+	}
+	
+	/*
+	 * Method to read an Order
+	 */
+	public static Order readOrder(DataInput input) throws IOException {
+		checkVersion(input.readByte());
+		
+		int ID = input.readInt();
+		Order.Status status = readStatus(input);
+		User user = readUser(input);
+		String date = readString(input);
+		double price = input.readDouble();
+		
+		int size = readSize(input);
+		HashMap<SushiDish, Integer> content = new HashMap<>();
+		for (int i = 0; i < size; i++) {
+			String name = readString(input);
+			double dishPrice = input.readDouble();
+			content.put(new SushiDish(name, "", dishPrice), input.readInt());
+		}
+		
+		Order order = new Order(user, date, content, price);
+		order.setID(ID);
+		order.setStatus(status);
+		
+		return order;
+	}
+	
+	/*
+	 * Method to write a User (the password is only written when saving the User itself)
+	 */
+	public static void writeUser(DataOutput output, User user, boolean withPassword) throws IOException {
+		writeString(output, user.getUsername());
+		writeString(output, withPassword ? user.getPassword() : null);
+		writeString(output, user.getEmail());
+		writeString(output, user.getPostcode());
+	}
+	
+	/*
+	 * Method to read a User
+	 */
+	public static User readUser(DataInput input) throws IOException {
+		String username = readString(input);
+		String password = readString(input);
+		String email = readString(input);
+		String postcode = readString(input);
+		
+		return new User(username, password, email, postcode);
+	}
+	
+	/*
+	 * Method to write a User to its own file
+	 */
+	public static void writeUserFile(DataOutput output, User user) throws IOException {
+		writeHeader(output, USER);
+		writeUser(output, user, true);
+	}
+	
+	/*
+	 * Method to read a User from its own file
+	 */
+	public static User readUserFile(DataInput input) throws IOException {
+		readHeader(input, USER);
+		return readUser(input);
+	}
+	
+	/*
+	 * Method to write a SushiStock (recipes refer to ingredients by name)
+	 */
+	public static void writeSushiStock(DataOutput output, SushiStock stock) throws IOException {
+		// Copy everything out under the lock so we don't hold it while writing
+		ArrayList<SushiDish> dishes = new ArrayList<>();
+		ArrayList<Integer> amounts = new ArrayList<>();
+		ArrayList<Integer> levels = new ArrayList<>();
+		
+		synchronized (stock) {
+			Iterator<SushiDish> iterator = stock.getStockIterator();
+			while (iterator.hasNext()) {
+				SushiDish dish = iterator.next();
+				dishes.add(dish);
+				amounts.add(stock.getStock(dish));
+				levels.add(stock.getRestockingLevel(dish));
+			}
+		}
+		
+		writeHeader(output, SUSHI_STOCK);
+		output.writeInt(dishes.size());
+		
+		for (int i = 0; i < dishes.size(); i++) {
+			SushiDish dish = dishes.get(i);
+			writeString(output, dish.getName());
+			writeString(output, dish.getDescription());
+			output.writeDouble(dish.getPrice());
+			output.writeInt(amounts.get(i));
+			output.writeInt(levels.get(i));
+			
+			HashMap<Ingredient, Integer> recipe = new HashMap<>(dish.getRecipe());
+			output.writeInt(recipe.size());
+			for (Map.Entry<Ingredient, Integer> entry : recipe.entrySet()) {
+				writeString(output, entry.getKey().getName());
+				output.writeInt(entry.getValue());
+			}
+		}
+	}
+	
+	/*
+	 * Method to read a SushiStock, linking recipes to the ingredients in an IngredientStock if given
+	 * (otherwise, or if an ingredient is missing, a placeholder Ingredient with just the name is used)
+	 */
+	public static SushiStock readSushiStock(DataInput input, IngredientStock ingredientStock) throws IOException {
+		readHeader(input, SUSHI_STOCK);
+		
+		// Build a lookup of the ingredients we can link to
+		HashMap<String, Ingredient> ingredients = new HashMap<>();
+		if (ingredientStock != null) {
+			synchronized (ingredientStock) {
+				Iterator<Ingredient> iterator = ingredientStock.getStockIterator();
+				while (iterator.hasNext()) {
+					Ingredient ingredient = iterator.next();
+					ingredients.put(ingredient.getName(), ingredient);
+				}
+			}
+		}
+		
+		SushiStock stock = new SushiStock();
+		int size = readSize(input);
+		
+		for (int i = 0; i < size; i++) {
+			String name = readString(input);
+			String description = readString(input);
+			double price = input.readDouble();
+			int amount = input.readInt();
+			int level = input.readInt();
+			
+			int recipeSize = readSize(input);
+			HashMap<Ingredient, Integer> recipe = new HashMap<>();
+			for (int j = 0; j < recipeSize; j++) {
+				String ingredientName = readString(input);
+				Ingredient ingredient = ingredients.get(ingredientName);
+				
+				// Placeholder so the client can still show what's in a dish
+				if (ingredient == null) {
+					ingredient = new Ingredient(ingredientName, "", null);
+					ingredients.put(ingredientName, ingredient);
+				}
+				
+				recipe.put(ingredient, input.readInt());
+			}
+			
+			SushiDish dish = new SushiDish(name, description, price, recipe);
+			stock.addStockItem(dish, level);
+			stock.setStock(dish, amount);
+		}
+		
+		return stock;
+	}
+	
+	/*
+	 * Method to write an OrderPage
+	 */
+	public static void writeOrderPage(DataOutput output, OrderPage page) throws IOException {
+		output.writeInt(page.getCursor());
+		output.writeBoolean(page.hasMore());
+		
+		output.writeInt(page.getOrders().size());
+		for (Order order : page.getOrders()) {
+			writeOrder(output, order);
+		}
+	}
+	
+	/*
+	 * Method to read an OrderPage
+	 */
+	public static OrderPage readOrderPage(DataInput input) throws IOException {
+		int cursor = input.readInt();
+		boolean more = input.readBoolean();
+		
+		int size = readSize(input);
+		ArrayList<Order> orders = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			orders.add(readOrder(input));
+		}
+		
+		return new OrderPage(orders, cursor, more);
+	}
+	
+	/*
+	 * Method to write a MenuUpdate (a snapshot is written as a whole SushiStock)
+	 */
+	public static void writeMenuUpdate(DataOutput output, MenuUpdate update) throws IOException {
+		output.writeLong(update.getEpoch());
+		output.writeLong(update.getSince());
+		output.writeLong(update.getVersion());
+		output.writeBoolean(update.isSnapshot());
+		
+		if (update.isSnapshot()) {
+			writeSushiStock(output, update.getSnapshot());
+			return;
+		}
+		
+		output.writeInt(update.getChanges().size());
+		for (MenuChange change : update.getChanges()) {
+			output.writeLong(change.getVersion());
+			writeString(output, change.getName());
+			output.writeBoolean(change.isRemoved());
+			
+			if (!change.isRemoved()) {
+				writeString(output, change.getDescription());
+				output.writeDouble(change.getPrice());
+				output.writeInt(change.getStock());
+			}
+		}
+	}
+	
+	/*
+	 * Method to read a MenuUpdate
+	 */
+	public static MenuUpdate readMenuUpdate(DataInput input) throws IOException {
+		long epoch = input.readLong();
+		long since = input.readLong();
+		long version = input.readLong();
+		
+		if (input.readBoolean()) {
+			return new MenuUpdate(epoch, version, readSushiStock(input, null));
+		}
+		
+		int size = readSize(input);
+		ArrayList<MenuChange> changes = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			long changeVersion = input.readLong();
+			String name = readString(input);
+			
+			if (input.readBoolean()) {
+				changes.add(new MenuChange(changeVersion, name));
+			} else {
+				String description = readString(input);
+				double price = input.readDouble();
+				changes.add(new MenuChange(changeVersion, name, description, price, input.readInt()));
+			}
+		}
+		
+		return new MenuUpdate(epoch, since, version, changes);
+	}
+	
+	/*
+	 * Method to write the recent menu changes to their own file
+	 */
+	public static void writeMenuChangesFile(DataOutput output, MenuUpdate changes) throws IOException {
+		writeHeader(output, MENU_CHANGES);
+		writeMenuUpdate(output, changes);
+	}
+	
+	/*
+	 * Method to read the recent menu changes from their own file
+	 */
+	public static MenuUpdate readMenuChangesFile(DataInput input) throws IOException {
+		readHeader(input, MENU_CHANGES);
+		return readMenuUpdate(input);
+	}
+	
+	/*
+	 * Method to write an IngredientStock (each Supplier is written once and referred to by name)
+	 */
+	public static void writeIngredientStock(DataOutput output, IngredientStock stock) throws IOException {
+		// Copy everything out under the lock so we don't hold it while writing
+		ArrayList<Ingredient> ingredients = new ArrayList<>();
+		ArrayList<Integer> amounts = new ArrayList<>();
+		ArrayList<Integer> levels = new ArrayList<>();
+		
+		synchronized (stock) {
+			Iterator<Ingredient> iterator = stock.getStockIterator();
+			while (iterator.hasNext()) {
+				Ingredient ingredient = iterator.next();
+				ingredients.add(ingredient);
+				amounts.add(stock.getStock(ingredient));
+				levels.add(stock.getRestockingLevel(ingredient));
+			}
+		}
+		
+		// Work out the distinct suppliers
+		HashMap<String, Supplier> suppliers = new HashMap<>();
+		for (Ingredient ingredient : ingredients) {
+			if (ingredient.getSupplier() != null) {
+				suppliers.put(ingredient.getSupplier().getName(), ingredient.getSupplier());
+			}
+		}
+		
+		writeHeader(output, INGREDIENT_STOCK);
+		writeSupplierList(output, new ArrayList<>(suppliers.values()));
+		output.writeInt(ingredients.size());
+		
+		for (int i = 0; i < ingredients.size(); i++) {
+			Ingredient ingredient = ingredients.get(i);
+			writeString(output, ingredient.getName());
+			writeString(output, ingredient.getUnit());
+			writeString(output, ingredient.getSupplier() == null ? null : ingredient.getSupplier().getName());
+			output.writeInt(amounts.get(i));
+			output.writeInt(levels.get(i));
+		}
+	}
+	
+	/*
+	 * Method to read an IngredientStock (ingredients with the same supplier share one Supplier object)
+	 */
+	public static IngredientStock readIngredientStock(DataInput input) throws IOException {
+		readHeader(input, INGREDIENT_STOCK);
+		
+		HashMap<String, Supplier> suppliers = new HashMap<>();
+		for (Supplier supplier : readSupplierList(input)) {
+			suppliers.put(supplier.getName(), supplier);
+		}
+		
+		IngredientStock stock = new IngredientStock();
+		int size = readSize(input);
+		
+		for (int i = 0; i < size; i++) {
+			String name = readString(input);
+			String unit = readString(input);
+			String supplierName = readString(input);
+			int amount = input.readInt();
+			int level = input.readInt();
+			
+			Ingredient ingredient = new Ingredient(name, unit, supplierName == null ? null : suppliers.get(supplierName));
+			stock.addStockItem(ingredient, level);
+			stock.setStock(ingredient, amount);
+		}
+		
+		return stock;
+	}
+	
+	/*
+	 * Method to write the list of Suppliers to its own file
+	 */
+	public static void writeSuppliers(DataOutput output, ArrayList<Supplier> suppliers) throws IOException {
+		writeHeader(output, SUPPLIERS);
+		writeSupplierList(output, suppliers);
+	}
+	
+	/*
+	 * Method to read the list of Suppliers from its own file
+	 */
+	public static ArrayList<Supplier> readSuppliers(DataInput input) throws IOException {
+		readHeader(input, SUPPLIERS);
+		return readSupplierList(input);
+	}
+	
+	/*
+	 * Method to write a list of Suppliers
+	 */
+	private static void writeSupplierList(DataOutput output, ArrayList<Supplier> suppliers) throws IOException {
+		output.writeInt(suppliers.size());
+		for (Supplier supplier : suppliers) {
+			writeString(output, supplier.getName());
+			output.writeInt(supplier.getDistance());
+		}
+	}
+	
+	/*
+	 * Method to read a list of Suppliers
+	 */
+	private static ArrayList<Supplier> readSupplierList(DataInput input) throws IOException {
+		int size = readSize(input);
+		ArrayList<Supplier> suppliers = new ArrayList<>(size);
+		
+		for (int i = 0; i < size; i++) {
+			String name = readString(input);
+			suppliers.add(new Supplier(name, input.readInt()));
+		}
+		
+		return suppliers;
+	}
+	
+	/*
+	 * Method to write the header at the start of a binary file
+	 */
+	private static void writeHeader(DataOutput output, byte kind) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeByte(VERSION);
+		output.writeByte(kind);
+	}
+	
+	/*
+	 * Method to read and check the header at the start of a binary file
+	 */
+	private static void readHeader(DataInput input, byte kind) throws IOException {
+		if (input.readInt() != MAGIC) {
+			throw new IOException("Not a binary file");
+		}
+		
+		checkVersion(input.readByte());
+		
+		byte actual = input.readByte();
+		if (actual != kind) {
+			throw new IOException("Expected binary file of kind " + kind + " but found " + actual);
+		}
+	}
+	
+	/*
+	 * Method to make sure we know how to read a version
+	 */
+	private static void checkVersion(byte version) throws IOException {
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported binary format version " + version);
+		}
+	}
+	
+	/*
+	 * Method to read an Order status, checking it is one we know
+	 */
+	private static Order.Status readStatus(DataInput input) throws IOException {
+		Order.Status[] statuses = Order.Status.values();
+		int ordinal = input.readByte();
+		
+		if (ordinal < 0 || ordinal >= statuses.length) {
+			throw new IOException("Unknown order status " + ordinal);
+		}
+		
+		return statuses[ordinal];
+	}
+	
+	/*
+	 * Method to read the number of entries that follow, checking it is sensible before anything is sized from it
+	 */
+	private static int readSize(DataInput input) throws IOException {
+		int size = input.readInt();
+		
+		if (size < 0 || size > MAX_SIZE) {
+			throw new IOException("Bad entry count " + size);
+		}
+		
+		return size;
+	}
+	
+	/*
+	 * Method to write a String that might be null
+	 */
+	private static void writeString(DataOutput output, String string) throws IOException {
+		output.writeBoolean(string != null);
+		if (string != null) {
+			output.writeUTF(string);
+		}
+	}
+	
+	/*
+	 * Method to read a String that might be null
+	 */
+	private static String readString(DataInput input) throws IOException {
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+
+}
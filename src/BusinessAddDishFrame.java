@@ -168,8 +168,8 @@ public class BusinessAddDishFrame extends JFrame {
 		row.add(ingredientLabel);
 		
 		// Create an array of all possible ingredients
-		Ingredient[] ingredientList = new Ingredient[businessApp.ingredientStock.getSize()];
-		Iterator<Ingredient> ingredientIt = businessApp.ingredientStock.getStockIterator();
+		Ingredient[] ingredientList = new Ingredient[businessApp.engine.getIngredientStock().getSize()];
+		Iterator<Ingredient> ingredientIt = businessApp.engine.getIngredientStock().getStockIterator();
 		
 		int i = 0;
 		// Loop over the array and set each element equal to the next element in the ingredientStock HashMap
@@ -205,10 +205,9 @@ public class BusinessAddDishFrame extends JFrame {
 	private void addDish(String name, String desc, double price, int restockingLevel, HashMap<Ingredient, Integer> recipe) {
 		SushiDish dish = new SushiDish(name, desc, price, recipe); // Create the new dish
 		
-		businessApp.sushiStock.addStockItem(dish, restockingLevel); // Add it as a new stock item
+		businessApp.engine.getSushiStock().addStockItem(dish, restockingLevel); // Add it as a new stock item
 		
-		stockPanel.refresh(); // Refresh the panel and close the frame
-		this.dispose();
+		this.dispose(); // The stock panel shows it as soon as it's added, so just close the frame
 		this.setVisible(false);
 	}
 	
@@ -73,7 +73,7 @@ public class BusinessAddIngredientFrame extends JFrame {
 		
 		// Create a dropdown and add all the suppliers to it
 		JComboBox<Supplier> supplierDropdown = new JComboBox<Supplier>();
-		for (Supplier supplier : businessApp.suppliers) {
+		for (Supplier supplier : businessApp.engine.getSuppliers()) {
 			supplierDropdown.addItem(supplier);
 		}
 		supplierDropdown.setRenderer(new SupplierRenderer()); // Give it a custom renderer so the name is displayed
@@ -130,10 +130,9 @@ public class BusinessAddIngredientFrame extends JFrame {
 	private void addIngredient(String name, String unit, Supplier supplier, int restockingLevel) {
 		Ingredient ingredient = new Ingredient(name, unit, supplier); // Create the new ingredient
 		
-		businessApp.ingredientStock.addStockItem(ingredient, restockingLevel); // Add it as a new stock item
+		businessApp.engine.getIngredientStock().addStockItem(ingredient, restockingLevel); // Add it as a new stock item
 		
-		stockPanel.refresh(); // Refresh the panel and close the frame
-		this.dispose();
+		this.dispose(); // The stock panel shows it as soon as it's added, so just close the frame
 		this.setVisible(false);
 	}
 
@@ -100,10 +100,9 @@ public class BusinessAddSupplierFrame extends JFrame {
 	private void addSupplier(String name, int distance) {
 		Supplier supplier = new Supplier(name, distance); // Create the new Supplier
 		
-		businessApp.suppliers.add(supplier); // Add it to the business' suppliers list
+		businessApp.engine.addSupplier(supplier); // Add it to the business' suppliers list
 		
-		stockPanel.refresh(); // Refresh the panel and close the frame
-		this.dispose();
+		this.dispose(); // The stock panel shows it as soon as it's added, so just close the frame
 		this.setVisible(false);
 	}
 
@@ -94,7 +94,7 @@ public class BusinessEditDishFrame extends JFrame {
 		JPanel restockingPanel = new JPanel();
 		JLabel restockingLabel = new JLabel("Restocking Level: ");
 		JTextField restockingTextBox = new JTextField(3);
-		restockingTextBox.setText(String.valueOf(businessApp.sushiStock.getRestockingLevel(dish))); // Set text to current restocking level
+		restockingTextBox.setText(String.valueOf(businessApp.engine.getSushiStock().getRestockingLevel(dish))); // Set text to current restocking level
 		restockingPanel.add(restockingLabel);
 		restockingPanel.add(restockingTextBox);
 		
@@ -202,8 +202,8 @@ public class BusinessEditDishFrame extends JFrame {
 		row.add(ingredientLabel);
 		
 		// Create an array of all possible ingredients
-		Ingredient[] ingredientList = new Ingredient[businessApp.ingredientStock.getSize()];
-		Iterator<Ingredient> ingredientIt = businessApp.ingredientStock.getStockIterator();
+		Ingredient[] ingredientList = new Ingredient[businessApp.engine.getIngredientStock().getSize()];
+		Iterator<Ingredient> ingredientIt = businessApp.engine.getIngredientStock().getStockIterator();
 		
 		// Iterate through ingredientStock and add each item to the array
 		int i = 0;
@@ -261,16 +261,15 @@ public class BusinessEditDishFrame extends JFrame {
 	 */
 	private void updateDish(String name, String desc, double price, int restockingLevel, HashMap<Ingredient, Integer> recipe) {	
 		// Set name, description, price, and recipe to new values
-		dish.setName(name);
+		businessApp.engine.getSushiStock().renameDish(dish, name);
 		dish.setDescription(desc);
 		dish.setPrice(price);
 		dish.setRecipe(recipe);
 		
 		// Set the new restocking level
-		businessApp.sushiStock.setRestockingLevel(dish, restockingLevel);
+		businessApp.engine.getSushiStock().setRestockingLevel(dish, restockingLevel);
 		
-		// Refresh the stock panel to display changes then close frame
-		stockPanel.refresh();
+		// The stock panel shows the changes as they're made, so just close the frame
 		this.dispose();
 		this.setVisible(false);
 	}
@@ -1,6 +1,7 @@
 import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 
 import javax.swing.BoxLayout;
 import javax.swing.DefaultListCellRenderer;
@@ -72,9 +73,10 @@ public class BusinessEditIngredientFrame extends JFrame {
 		unitPanel.add(unitTextBox);
 		
 		// Create an array containing all current suppliers
-		Supplier[] supplierList = new Supplier[businessApp.suppliers.size()];
-		for (int i = 0; i < businessApp.suppliers.size(); i++) {
-			supplierList[i] = businessApp.suppliers.get(i);
+		ArrayList<Supplier> suppliers = businessApp.engine.getSuppliers();
+		Supplier[] supplierList = new Supplier[suppliers.size()];
+		for (int i = 0; i < suppliers.size(); i++) {
+			supplierList[i] = suppliers.get(i);
 		}
 		
 		// Create a supplier panel, add a label and create a dropdown with these suppliers
@@ -90,7 +92,7 @@ public class BusinessEditIngredientFrame extends JFrame {
 		JPanel restockingPanel = new JPanel();
 		JLabel restockingLabel = new JLabel("Restocking Level: ");
 		JTextField restockingTextBox = new JTextField(3);
-		restockingTextBox.setText(String.valueOf(businessApp.ingredientStock.getRestockingLevel(ingredient)));
+		restockingTextBox.setText(String.valueOf(businessApp.engine.getIngredientStock().getRestockingLevel(ingredient)));
 		restockingPanel.add(restockingLabel);
 		restockingPanel.add(restockingTextBox);
 		
@@ -137,15 +139,14 @@ public class BusinessEditIngredientFrame extends JFrame {
 	 */
 	private void updateIngredient(String name, String unit, Supplier supplier, int restockingLevel) {	
 		// Set the new name, unit and supplier
-		ingredient.setName(name);
+		businessApp.engine.getIngredientStock().renameIngredient(ingredient, name);
 		ingredient.setUnit(unit);
 		ingredient.setSupplier(supplier);
 		
 		// Set the new restocking level
-		businessApp.ingredientStock.setRestockingLevel(ingredient, restockingLevel);
+		businessApp.engine.getIngredientStock().setRestockingLevel(ingredient, restockingLevel);
 		
-		// Refresh the panel to display changes and close the frame
-		stockPanel.refresh();
+		// The stock panel shows the changes as they're made, so just close the frame
 		this.dispose();
 		this.setVisible(false);
 	}
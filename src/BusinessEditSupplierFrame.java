@@ -18,15 +18,17 @@ public class BusinessEditSupplierFrame extends JFrame {
 	private static final long serialVersionUID = 1L;
 	
 	private BusinessStockPanel stockPanel;
+	private BusinessApplication businessApp;
 	private Supplier supplier; // The supplier to be edited
 
 	/*
 	 * Constructor to create a new BusinessEditSupplierFrame
 	 */
-	public BusinessEditSupplierFrame(BusinessStockPanel stockPanel, Supplier supplier) {
+	public BusinessEditSupplierFrame(BusinessStockPanel stockPanel, BusinessApplication businessApp, Supplier supplier) {
 		super("Modify Supplier");
 		
 		this.stockPanel = stockPanel;
+		this.businessApp = businessApp;
 		this.supplier = supplier;
 		
 		this.init();
@@ -102,11 +104,9 @@ public class BusinessEditSupplierFrame extends JFrame {
 	 */
 	private void updateSupplier(String name, int distance) {		
 		// Set the new name and distance
-		supplier.setName(name);
-		supplier.setDistance(distance);
+		businessApp.engine.updateSupplier(supplier, name, distance);
 		
-		// Refresh the panel to display changes and close the frame
-		stockPanel.refresh();
+		// The stock panel shows the changes as they're made, so just close the frame
 		this.dispose();
 		this.setVisible(false);
 	}
@@ -0,0 +1,676 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * Class to run the business without any GUI - owns the stock, suppliers, orders, KitchenStaff and
+ * Drones, takes in new orders and saves everything regularly. The BusinessApplication is a view over
+ * one of these, and it can also be run on its own (see main) on a host without a display.
+ */
+
+public class BusinessEngine {
+	
+	private static final long SHUTDOWN_TIMEOUT = 10000; // Longest to wait for threads to stop before saving
+	
+	private Comms comms; // Comms instance to handle all communication
+	private Clock clock; // Clock KitchenStaff and Drones time their work with
+	
+	private IngredientStock ingredientStock; // IngredientStock to store stock of ingredients
+	private SushiStock sushiStock; // SushiStock to store stock of dishes
+	private RestockSignal restockSignal; // Signal KitchenStaff wait on for dishes to prepare
+	private DispatchQueue dispatchQueue; // Queue of deliveries and collections Drones wait on
+	private MenuPublisher menuPublisher; // Versions changes to the menu for clients
+	private DirtyTracker dirtyTracker; // Which parts of the state have changed since they were saved
+	private long savedMenuVersion; // Version of the menu changes last saved
+	
+	private ArrayList<Order> orders; // ArrayList of Orders
+	private ArrayList<Supplier> suppliers; // ArrayList of Suppliers
+	private LinkedHashMap<KitchenStaff, Thread> staff; // Each member of staff and the thread running them
+	private LinkedHashMap<Drone, Thread> drones; // Each Drone and the thread running it
+	
+	private CopyOnWriteArrayList<OrderListener> orderListeners; // Told when orders are taken in
+	private CopyOnWriteArrayList<StockListener> supplierListeners; // Told when suppliers change
+	
+	private volatile boolean running; // Whether the OrderReceiver and StateSaver should keep going
+	private Thread orderReceiverThread;
+	private Thread stateSaverThread;
+	private CommsServer commsServer; // Serves clients over TCP (null unless the transport is socket)
+	
+	/*
+	 * Constructor to create a new BusinessEngine using the saved business files and the clock named
+	 * in the sushi.clock property
+	 */
+	public BusinessEngine() {
+		this(new Comms(), createClock());
+	}
+	
+	/*
+	 * Constructor to create a new BusinessEngine loading everything through a Comms
+	 */
+	public BusinessEngine(Comms comms, Clock clock) {
+		this.comms = comms;
+		this.clock = clock;
+		
+		this.staff = new LinkedHashMap<>();
+		this.drones = new LinkedHashMap<>();
+		this.orderListeners = new CopyOnWriteArrayList<>();
+		this.supplierListeners = new CopyOnWriteArrayList<>();
+		this.running = false;
+		
+		setupBusiness();
+	}
+	
+	/*
+	 * Method to create the clock named in the sushi.clock property - real (default), scaled (sped up
+	 * by the sushi.clock.scale property) or virtual
+	 */
+	public static Clock createClock() {
+		switch (System.getProperty("sushi.clock", "real").toLowerCase()) {
+			case "scaled":
+				return new ScaledClock(Double.parseDouble(System.getProperty("sushi.clock.scale", "60")));
+			case "virtual":
+				return new VirtualClock();
+			default:
+				return new RealClock();
+		}
+	}
+	
+	/*
+	 * Method to initialise the business logic
+	 */
+	private void setupBusiness() {
+		comms.prepareOrderJournal(); // Make the orders folder and get the order journal ready
+		
+		orders = comms.getAllOrders(); // Store all current orders in the orders ArrayList
+		
+		// Leave out anything not received yet, the OrderReceiver will pick those up
+		Iterator<Order> orderIt = orders.iterator();
+		while (orderIt.hasNext()) {
+			if (orderIt.next().getStatus() == Order.Status.SUBMITTED) {
+				orderIt.remove();
+			}
+		}
+		
+		// Try to get an exisitng IngredientStock, if not create a new one
+		ingredientStock = comms.receiveIngredientStock();
+		if (ingredientStock == null) {
+			ingredientStock = new IngredientStock();
+			comms.saveIngredientStock(ingredientStock);
+		}
+		
+		// Try to get an exisitng SushiStock, if not create a new one
+		sushiStock = comms.receiveSushiStock(ingredientStock);
+		if (sushiStock == null) {
+			sushiStock = new SushiStock();
+			comms.saveSushiStock(sushiStock);
+		}
+		
+		// Keep track of what needs saving (before anything else listens, so the menu is never
+		// published as changed before the stock is marked as needing saving)
+		dirtyTracker = new DirtyTracker();
+		sushiStock.addStockListener(dirtyTracker);
+		ingredientStock.addStockListener(dirtyTracker);
+		supplierListeners.add(dirtyTracker);
+		
+		// Wake KitchenStaff whenever dish or ingredient stock changes
+		restockSignal = new RestockSignal(sushiStock, clock);
+		sushiStock.addStockListener(restockSignal);
+		ingredientStock.addStockListener(restockSignal);
+		
+		// Publish deliveries and collections to Drones as orders arrive and stock changes
+		dispatchQueue = new DispatchQueue(sushiStock, ingredientStock, clock);
+		sushiStock.addStockListener(dispatchQueue);
+		ingredientStock.addStockListener(dispatchQueue);
+		
+		// Publish menu changes so clients don't have to read the whole stock
+		menuPublisher = new MenuPublisher(sushiStock);
+		sushiStock.addStockListener(menuPublisher);
+		savedMenuVersion = -1;
+		
+		// Queue up any orders that were received but not delivered last time, and any ingredients already low
+		for (Order order : orders) {
+			if (order.getStatus() == Order.Status.RECEIVED) {
+				sushiStock.addDemand(order.getContent());
+				dispatchQueue.addOrder(order);
+			}
+		}
+		dispatchQueue.checkAllIngredients();
+		
+		// Try to get a existing Suppliers, if not initialise the ArrayList as empty
+		suppliers = comms.receiveSuppliers();
+		if (suppliers == null) {
+			suppliers = new ArrayList<>();
+			comms.saveSuppliers(suppliers);
+		}
+	}
+	
+	/*
+	 * Synchronized method to start taking in orders and saving regularly
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		
+		// Create a thread to receive new orders
+		orderReceiverThread = new Thread(new OrderReceiver());
+		orderReceiverThread.start();
+		
+		// Create a thread to save the state at regular intervals
+		stateSaverThread = new Thread(new StateSaver());
+		stateSaverThread.start();
+		
+		// Also serve clients over TCP if the sushi.comms.transport property asks for it
+		if (System.getProperty("sushi.comms.transport", "file").equalsIgnoreCase("socket")) {
+			commsServer = new CommsServer(this, Integer.getInteger("sushi.comms.port", CommsServer.DEFAULT_PORT));
+			
+			try {
+				commsServer.start();
+			} catch (IOException e) {
+				e.printStackTrace();
+				commsServer = null;
+			}
+		}
+	}
+	
+	/*
+	 * Synchronized method to stop everything and save the state of the business
+	 */
+	public synchronized void shutdown() {
+		running = false;
+		ArrayList<Thread> stopping = new ArrayList<>(); // Threads to wait for before saving
+		
+		// Stop taking in orders and saving in the background
+		if (orderReceiverThread != null) {
+			orderReceiverThread.interrupt();
+			stateSaverThread.interrupt();
+			stopping.add(orderReceiverThread);
+			stopping.add(stateSaverThread);
+		}
+		if (commsServer != null) {
+			commsServer.stop();
+			stopping.addAll(commsServer.getThreads());
+		}
+		
+		// Stop every member of staff and every drone
+		for (KitchenStaff member : getKitchenStaff()) {
+			stopKitchenStaff(member);
+			if (staff.get(member) != null) {
+				stopping.add(staff.get(member));
+			}
+		}
+		for (Drone drone : getDrones()) {
+			stopDrone(drone);
+			if (drones.get(drone) != null) {
+				stopping.add(drones.get(drone));
+			}
+		}
+		
+		// Staff commit or release what they've reserved and the StateSaver may be part way through
+		// saving, so let them finish before resetting and saving the state
+		awaitStopped(stopping);
+		
+		// Set every ingredient to collected
+		ingredientStock.prepareForClose();
+		
+		// Set every SushiDish's inPreparation to 0
+		sushiStock.prepareForClose();
+		
+		// Set any orders that are "DELIVERING" to DELIVERED
+		for (Order order : getOrders()) {
+			if (order.getStatus() == Order.Status.DELIVERING) {
+				comms.updateOrderStatus(order, Order.Status.DELIVERED);
+			}
+		}
+		
+		// Save everything
+		comms.flushOrders();
+		saveState();
+	}
+	
+	/*
+	 * Method to wait for threads to finish, giving up on any still running after SHUTDOWN_TIMEOUT in total
+	 */
+	private void awaitStopped(ArrayList<Thread> threads) {
+		long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
+		
+		try {
+			for (Thread thread : threads) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining > 0) {
+					thread.join(remaining);
+				}
+				
+				if (thread.isAlive()) {
+					System.err.println("Thread " + thread.getName() + " didn't stop in time, saving anyway");
+				}
+			}
+		} catch (InterruptedException e) {
+			// Save what we have rather than nothing
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/*
+	 * Method to save ingredients, dishes and suppliers
+	 */
+	public void saveState() {
+		// Everything is about to be saved
+		dirtyTracker.takeDishes();
+		dirtyTracker.takeIngredients();
+		dirtyTracker.takeSuppliers();
+		
+		// Take the menu changes before saving the stock so the saved stock is never older than them
+		MenuUpdate menuChanges = menuPublisher.getHistory();
+		
+		comms.saveIngredientStock(ingredientStock);
+		comms.saveSushiStock(sushiStock);
+		comms.saveMenuChanges(menuChanges);
+		comms.saveSuppliers(getSuppliers());
+		
+		savedMenuVersion = menuChanges.getVersion();
+	}
+	
+	/*
+	 * Method to save only whatever has changed since it was last saved
+	 */
+	public void saveChanges() {
+		// Take the menu changes first - anything they include has already marked the dishes as changed
+		MenuUpdate menuChanges = null;
+		if (menuPublisher.getVersion() != savedMenuVersion) {
+			menuChanges = menuPublisher.getHistory();
+		}
+		
+		if (dirtyTracker.takeIngredients()) {
+			comms.saveIngredientStock(ingredientStock);
+		}
+		if (dirtyTracker.takeDishes()) {
+			comms.saveSushiStock(sushiStock);
+		}
+		if (menuChanges != null) {
+			comms.saveMenuChanges(menuChanges);
+			savedMenuVersion = menuChanges.getVersion();
+		}
+		if (dirtyTracker.takeSuppliers()) {
+			comms.saveSuppliers(getSuppliers());
+		}
+	}
+	
+	/*
+	 * Method to add a listener to be told when orders are taken in, change status or are removed
+	 */
+	public void addOrderListener(OrderListener listener) {
+		orderListeners.add(listener);
+		comms.addOrderListener(listener);
+	}
+	
+	/*
+	 * Method to remove an order listener
+	 */
+	public void removeOrderListener(OrderListener listener) {
+		orderListeners.remove(listener);
+		comms.removeOrderListener(listener);
+	}
+	
+	/*
+	 * Method to add a listener to be told when dishes, ingredients or suppliers change
+	 */
+	public void addStockListener(StockListener listener) {
+		sushiStock.addStockListener(listener);
+		ingredientStock.addStockListener(listener);
+		supplierListeners.add(listener);
+	}
+	
+	/*
+	 * Method to return a copy of the current orders
+	 */
+	public ArrayList<Order> getOrders() {
+		synchronized (orders) {
+			return new ArrayList<>(orders);
+		}
+	}
+	
+	/*
+	 * Method to remove an order, cancelling it first if it can still be cancelled
+	 */
+	public void removeOrder(Order order) {
+		// If it's RECEIVED it can still be cancelled
+		if (order.getStatus() == Order.Status.RECEIVED) {
+			comms.updateOrderStatus(order, Order.Status.CANCELLED);
+		}
+		
+		// Make sure no Drone picks it up
+		dispatchQueue.removeOrder(order);
+		
+		// Remove it from the journal and the list
+		comms.removeOrder(order);
+		synchronized (orders) {
+			orders.remove(order);
+		}
+	}
+	
+	/*
+	 * Method to take every delivered or cancelled order off the list of current orders (they stay
+	 * in the journal) and return them
+	 */
+	public ArrayList<Order> removeCompletedOrders() {
+		ArrayList<Order> removed = new ArrayList<>();
+		
+		synchronized (orders) {
+			Iterator<Order> orderIt = orders.iterator();
+			while (orderIt.hasNext()) {
+				Order order = orderIt.next();
+				
+				if (order.getStatus() == Order.Status.DELIVERED || order.getStatus() == Order.Status.CANCELLED) {
+					orderIt.remove();
+					removed.add(order);
+				}
+			}
+		}
+		
+		return removed;
+	}
+	
+	/*
+	 * Method to return a copy of the suppliers
+	 */
+	public ArrayList<Supplier> getSuppliers() {
+		synchronized (suppliers) {
+			return new ArrayList<>(suppliers);
+		}
+	}
+	
+	/*
+	 * Method to add a supplier
+	 */
+	public void addSupplier(Supplier supplier) {
+		synchronized (suppliers) {
+			suppliers.add(supplier);
+		}
+		
+		fireSupplierChanged(supplier);
+	}
+	
+	/*
+	 * Method to change the name and distance of a supplier
+	 */
+	public void updateSupplier(Supplier supplier, String name, int distance) {
+		synchronized (suppliers) {
+			supplier.setName(name);
+			supplier.setDistance(distance);
+		}
+		
+		fireSupplierChanged(supplier);
+	}
+	
+	/*
+	 * Method to remove a supplier
+	 */
+	public void removeSupplier(Supplier supplier) {
+		synchronized (suppliers) {
+			suppliers.remove(supplier);
+		}
+		
+		fireSupplierChanged(supplier);
+	}
+	
+	/*
+	 * Method to tell every supplier listener that a supplier has changed (outside the suppliers lock)
+	 */
+	private void fireSupplierChanged(Supplier supplier) {
+		for (StockListener listener : supplierListeners) {
+			listener.supplierChanged(supplier);
+		}
+	}
+	
+	/*
+	 * Synchronized method to add a new member of KitchenStaff and start them working
+	 */
+	public synchronized KitchenStaff addKitchenStaff() {
+		KitchenStaff member = new KitchenStaff(sushiStock, ingredientStock, restockSignal, clock);
+		staff.put(member, null);
+		startKitchenStaff(member);
+		
+		return member;
+	}
+	
+	/*
+	 * Synchronized method to start a member of KitchenStaff (if they're not already working)
+	 */
+	public synchronized void startKitchenStaff(KitchenStaff member) {
+		Thread thread = staff.get(member);
+		
+		if (staff.containsKey(member) && (thread == null || !thread.isAlive())) {
+			thread = new Thread(member);
+			staff.put(member, thread);
+			thread.start();
+		}
+	}
+	
+	/*
+	 * Synchronized method to stop a member of KitchenStaff
+	 */
+	public synchronized void stopKitchenStaff(KitchenStaff member) {
+		member.stop();
+		
+		Thread thread = staff.get(member);
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+	
+	/*
+	 * Synchronized method to stop and remove a member of KitchenStaff
+	 */
+	public synchronized void removeKitchenStaff(KitchenStaff member) {
+		stopKitchenStaff(member);
+		staff.remove(member);
+	}
+	
+	/*
+	 * Synchronized method to return every member of KitchenStaff
+	 */
+	public synchronized ArrayList<KitchenStaff> getKitchenStaff() {
+		return new ArrayList<>(staff.keySet());
+	}
+	
+	/*
+	 * Synchronized method to add a new Drone and start it working
+	 */
+	public synchronized Drone addDrone(double speed, int capacity) {
+		Drone drone = new Drone(dispatchQueue, sushiStock, ingredientStock, comms, clock, speed, capacity);
+		drones.put(drone, null);
+		startDrone(drone);
+		
+		return drone;
+	}
+	
+	/*
+	 * Synchronized method to start a Drone (if it's not already working)
+	 */
+	public synchronized void startDrone(Drone drone) {
+		Thread thread = drones.get(drone);
+		
+		if (drones.containsKey(drone) && (thread == null || !thread.isAlive())) {
+			thread = new Thread(drone);
+			drones.put(drone, thread);
+			thread.start();
+		}
+	}
+	
+	/*
+	 * Synchronized method to stop a Drone
+	 */
+	public synchronized void stopDrone(Drone drone) {
+		drone.stop();
+		
+		Thread thread = drones.get(drone);
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+	
+	/*
+	 * Synchronized method to stop and remove a Drone
+	 */
+	public synchronized void removeDrone(Drone drone) {
+		stopDrone(drone);
+		drones.remove(drone);
+	}
+	
+	/*
+	 * Synchronized method to return every Drone
+	 */
+	public synchronized ArrayList<Drone> getDrones() {
+		return new ArrayList<>(drones.keySet());
+	}
+	
+	/*
+	 * Method to return the Comms
+	 */
+	public Comms getComms() {
+		return comms;
+	}
+	
+	/*
+	 * Method to return the Clock
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+	
+	/*
+	 * Method to return the MenuPublisher
+	 */
+	public MenuPublisher getMenuPublisher() {
+		return menuPublisher;
+	}
+	
+	/*
+	 * Method to return the SushiStock
+	 */
+	public SushiStock getSushiStock() {
+		return sushiStock;
+	}
+	
+	/*
+	 * Method to return the IngredientStock
+	 */
+	public IngredientStock getIngredientStock() {
+		return ingredientStock;
+	}
+	
+	/*
+	 * Method to take in a new order - makes sure it can be made and queues it for the kitchen and drones
+	 */
+	private void takeOrder(Order order) {
+		synchronized (orders) {
+			orders.add(order); // Add it to the ArrayList
+		}
+		
+		HashMap<SushiDish, Integer> contents = order.getContent();
+		
+		// Check none of the contents exceed restocking levels
+		for (SushiDish dish : contents.keySet()) {
+			Integer restockingLevel = sushiStock.getRestockingLevel(dish.getName());
+			int quantity = contents.get(dish);
+			
+			// If it is just change the restocking level to stop it from breaking
+			if (restockingLevel != null && quantity > restockingLevel) {
+				sushiStock.setRestockingLevel(dish.getName(), quantity);
+			}
+		}
+		
+		sushiStock.addDemand(contents); // Let KitchenStaff know these dishes are being waited on
+		dispatchQueue.addOrder(order); // Queue it for delivery once its dishes are ready
+		
+		// Let everyone know it's here
+		for (OrderListener listener : orderListeners) {
+			listener.orderReceived(order);
+		}
+	}
+	
+	/*
+	 * Main launch method - runs the business without a GUI until the process is stopped
+	 *
+	 * Usage: java BusinessEngine [staff=0] [drones=0] [speed=10] [capacity=3]
+	 */
+	public static void main(String[] args) {
+		// Read the name=value arguments
+		HashMap<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			String[] parts = arg.split("=", 2);
+			options.put(parts[0], parts.length > 1 ? parts[1] : "");
+		}
+		
+		BusinessEngine engine = new BusinessEngine();
+		
+		int staffCount = Integer.parseInt(options.getOrDefault("staff", "0"));
+		for (int i = 0; i < staffCount; i++) {
+			engine.addKitchenStaff();
+		}
+		
+		int droneCount = Integer.parseInt(options.getOrDefault("drones", "0"));
+		double speed = Double.parseDouble(options.getOrDefault("speed", "10"));
+		int capacity = Integer.parseInt(options.getOrDefault("capacity", "3"));
+		for (int i = 0; i < droneCount; i++) {
+			engine.addDrone(speed, capacity);
+		}
+		
+		// Save everything when the process is stopped
+		Runtime.getRuntime().addShutdownHook(new Thread(engine::shutdown));
+		
+		engine.start();
+		System.out.println("Business running with " + staffCount + " staff and " + droneCount + " drones");
+	}
+	
+	/*
+	 * Runnable class to receive new orders
+	 */
+	private class OrderReceiver implements Runnable {
+		
+		/*
+		 * Method run on Thread.start()
+		 */
+		public void run() {
+			// Loop until shut down
+			while (running) {
+				// Get every new order, waiting up to a second for the journal to change if there aren't any
+				ArrayList<Order> newOrders = comms.awaitNewOrders(1000);
+				
+				for (Order order : newOrders) {
+					takeOrder(order);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Runnable class to save the state of the business at regular intervals
+	 */
+	private class StateSaver implements Runnable {
+		
+		/*
+		 * Method run on Thread.start()
+		 */
+		public void run() {
+			// Run until shut down
+			while (running) {
+				// Only what's changed, so nothing is written while we're idle
+				saveChanges();
+				
+				// Sleep for 5 seconds (aka save every 5 seconds)
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException e) {
+					// Interrupted means we're shutting down
+				}
+			}
+		}
+	}
+
+}
@@ -2,21 +2,26 @@ import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.ArrayList;
 
-import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
 
 /*
- * JPanel to display all orders and a navigation menu
+ * JPanel to display all orders and a navigation menu. Listens for orders being taken in, changing
+ * status and being removed (on the Event Dispatch Thread, see EdtOrderListener) to keep the table
+ * up to date.
  */
 
-public class BusinessOrdersPanel extends JPanel {
+public class BusinessOrdersPanel extends JPanel implements OrderListener {
 	
 	private static final long serialVersionUID = 1L;
 	private BusinessApplication businessApp;
@@ -24,9 +29,9 @@ public class BusinessOrdersPanel extends JPanel {
 	private BusinessStaffPanel staffPanel; // View staff/drones
 	private BusinessStockPanel stockPanel; // View stock
 	
-	private JPanel orderContainer; // JPanel to hold orders
-	private HashMap<Order, JPanel> orderPanelMapping; // Maps orders to their JPanel
-	private HashMap<Order, JLabel> orderLabelMapping; // Maps orders to their status JLabel
+	private OrderTableModel orderModel; // One row per order
+	private JTable orderTable; // Table displaying the orders (only visible rows are rendered)
+	private TableRowSorter<OrderTableModel> orderSorter; // Sorts the table and filters it by status
 	
 	/*
 	 * Constructor to create a new BusinessOrdersPanel
@@ -36,9 +41,7 @@ public class BusinessOrdersPanel extends JPanel {
 		
 		this.businessApp = businessApp;		
 		
-		this.orderContainer = new JPanel();
-		this.orderPanelMapping = new HashMap<>();
-		this.orderLabelMapping = new HashMap<>();
+		this.orderModel = new OrderTableModel();
 		
 		this.setLayout(new BorderLayout());
 		
@@ -60,116 +63,124 @@ public class BusinessOrdersPanel extends JPanel {
 		// Initialise top bar and order history
 		initTopBar();
 		initOrderHistory();
-		
-		// Create a status updater thread to update order statuses automatically
-		StatusUpdater statusUpdater = new StatusUpdater();
-		Thread thread = new Thread(statusUpdater);
-		thread.start();
 	}
 	
 	/*
 	 * Method to initialise order history
 	 */
 	private void initOrderHistory() {
-		// Set orderContainer's layout to a vertical BoxLayout and add it to a scroll pane
-		orderContainer.setLayout(new BoxLayout(orderContainer, BoxLayout.Y_AXIS));
-		JScrollPane tablePane = new JScrollPane(orderContainer);
-		
-		// Get all orders and store them in the main orders ArrayList
-		businessApp.orders = businessApp.comms.getAllOrders();
+		// Create the table, re-sorted and re-filtered whenever a row changes (e.g. its status)
+		orderTable = new JTable(orderModel);
+		orderSorter = new TableRowSorter<>(orderModel);
+		orderSorter.setSortsOnUpdates(true);
+		orderTable.setRowSorter(orderSorter);
+		orderTable.setFillsViewportHeight(true);
 		
-		// If the ArrayList isn't null..
-		if (businessApp.orders != null) {
-			int size = businessApp.orders.size();
-			
-			// Create a title label, centre it (sorta..) and add it
-			JLabel ordersLabel = new JLabel("All Orders");
-			ordersLabel.setAlignmentX(CENTER_ALIGNMENT);
-			orderContainer.add(ordersLabel);
+		// Display prices as money
+		orderTable.getColumnModel().getColumn(OrderTableModel.PRICE_COLUMN).setCellRenderer(new DefaultTableCellRenderer() {
+			private static final long serialVersionUID = 1L;
 			
-			// Loop over the orders ArrayList and add each order
-			for (int i = 0; i < size; i++) {
-				Order order = businessApp.orders.get(i);
-				addOrderPanel(order);
+			protected void setValue(Object value) {
+				setText(value == null ? "" : String.format("%.2f", (Double) value));
 			}
-		}
-		
-		// Add the scroll pane to the main panel
-		this.add(tablePane, BorderLayout.CENTER);
-	}
-	
-	/*
-	 * Method to add a JPanel for an order
-	 */
-	protected void addOrderPanel(Order order) {
-		// Create a containing panel and give it a GridLayout
-		JPanel orderPanel = new JPanel();
-		orderPanel.setLayout(new GridLayout(1, 5));
-		
-		// Create JLabels to display username, date, price and status
-		JLabel usernameLabel = new JLabel(order.getUser().getUsername());
-		JLabel dateLabel = new JLabel(order.getDate());
-		JLabel priceLabel = new JLabel(String.format("%.2f", order.getPrice()));
-		JLabel statusLabel = new JLabel(order.getStatus().toString());
+		});
 		
-		// Add a mapping from order to the status label
-		orderLabelMapping.put(order, statusLabel);
+		JScrollPane tablePane = new JScrollPane(orderTable);
 		
-		// Centre all the labels
-		usernameLabel.setAlignmentX(CENTER_ALIGNMENT);
-		dateLabel.setAlignmentX(CENTER_ALIGNMENT);
-		priceLabel.setAlignmentX(CENTER_ALIGNMENT);
-		statusLabel.setAlignmentX(CENTER_ALIGNMENT);
+		// Create a panel to hold the title, status filter and remove button
+		JPanel filterPanel = new JPanel();
+		JLabel ordersLabel = new JLabel("All Orders");
 		
-		// Add all the labels
-		orderPanel.add(usernameLabel);
-		orderPanel.add(dateLabel);
-		orderPanel.add(priceLabel);
-		orderPanel.add(statusLabel);
+		// Create a JComboBox to only show orders with one status
+		JComboBox<Object> statusDropdown = new JComboBox<>();
+		statusDropdown.addItem("Any status");
+		for (Order.Status status : Order.Status.values()) {
+			statusDropdown.addItem(status);
+		}
+		statusDropdown.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				filterByStatus(statusDropdown.getSelectedItem());
+			}
+		});
 		
-		// JButton to remove an order
-		JButton removeBttn = new JButton("Remove");
+		// JButton to remove the selected orders
+		JButton removeBttn = new JButton("Remove Selected");
 		removeBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// If it's RECEIVED it can still be cancelled
-				if (order.getStatus() == Order.Status.RECEIVED) {
-					// Cancel the order
-					businessApp.comms.updateOrderStatus(order, Order.Status.CANCELLED);
-				}
-				
-				// Remove the order file
-				businessApp.comms.removeOrder(order);
-				// Remove it from the ArrayList
-				businessApp.orders.remove(order);
-				
-				// Remove its panel
-				orderContainer.remove(orderPanel);
-				
-				// Repaint
-				orderContainer.revalidate();
-				orderContainer.repaint();
+				removeSelectedOrders();
 			}
 		});
 		
-		// Add a mapping from order to its JPanel
-		orderPanelMapping.put(order, orderPanel);
-		// Add the new panel to the container panel
-		orderContainer.add(orderPanel);
+		filterPanel.add(ordersLabel);
+		filterPanel.add(new JLabel("Show: "));
+		filterPanel.add(statusDropdown);
+		filterPanel.add(removeBttn);
+		
+		// Add every current order
+		for (Order order : businessApp.engine.getOrders()) {
+			orderModel.addOrder(order);
+		}
+		
+		// Put the filter panel above the table and add them to the main panel
+		JPanel ordersPanel = new JPanel(new BorderLayout());
+		ordersPanel.add(filterPanel, BorderLayout.NORTH);
+		ordersPanel.add(tablePane, BorderLayout.CENTER);
+		this.add(ordersPanel, BorderLayout.CENTER);
+	}
+	
+	/*
+	 * Method to add a row for an order taken in (on the EDT)
+	 */
+	public void orderReceived(Order order) {
+		orderModel.addOrder(order);
+	}
+	
+	/*
+	 * Method to redraw the row of an order whose status changed (on the EDT)
+	 */
+	public void orderStatusChanged(Order order) {
+		orderModel.orderChanged(order);
+	}
+	
+	/*
+	 * Method to remove the row of a removed order (on the EDT)
+	 */
+	public void orderRemoved(Order order) {
+		orderModel.removeOrder(order);
+	}
+	
+	/*
+	 * Method to only show orders with a status (or every order if it isn't a status)
+	 */
+	private void filterByStatus(Object selected) {
+		if (!(selected instanceof Order.Status)) {
+			orderSorter.setRowFilter(null);
+			return;
+		}
 		
-		// Repaint
-		this.revalidate();
-		this.repaint();
+		Order.Status status = (Order.Status) selected;
+		orderSorter.setRowFilter(new RowFilter<OrderTableModel, Integer>() {
+			public boolean include(Entry<? extends OrderTableModel, ? extends Integer> entry) {
+				return entry.getModel().getOrder(entry.getIdentifier()).getStatus() == status;
+			}
+		});
 	}
 	
 	/*
-	 * Method to remove a JPanel
+	 * Method to remove the orders selected in the table
 	 */
-	private void removePanel(JPanel panel) {
-		// Remove it, then repaint
-		orderContainer.remove(panel);
+	private void removeSelectedOrders() {
+		// Find the orders first, as removing rows changes the selection
+		ArrayList<Order> selected = new ArrayList<>();
+		for (int viewRow : orderTable.getSelectedRows()) {
+			selected.add(orderModel.getOrder(orderTable.convertRowIndexToModel(viewRow)));
+		}
 		
-		this.revalidate();
-		this.repaint();
+		// Cancel each if it can be, make sure no Drone picks it up and remove it (its row goes when
+		// we're told it's been removed)
+		for (Order order : selected) {
+			businessApp.engine.removeOrder(order);
+		}
 	}
 	
 	/*
@@ -194,7 +205,7 @@ public class BusinessOrdersPanel extends JPanel {
 		addDishBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				// If there's no ingredients show an error dialog..
-				if (businessApp.ingredientStock.getSize() == 0) {
+				if (businessApp.engine.getIngredientStock().getSize() == 0) {
 					JOptionPane.showMessageDialog(BusinessOrdersPanel.this, "You must add an ingredient first!", "Error", JOptionPane.ERROR_MESSAGE);
 				} else {
 					// Else create the frame
@@ -208,7 +219,7 @@ public class BusinessOrdersPanel extends JPanel {
 		addIngredientBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				// If there's no suppliers show an error dialog..
-				if (businessApp.suppliers.size() == 0) {
+				if (businessApp.engine.getSuppliers().size() == 0) {
 					JOptionPane.showMessageDialog(BusinessOrdersPanel.this, "You must add a supplier first!", "Error", JOptionPane.ERROR_MESSAGE);
 				} else {
 					// Else create the frame
@@ -239,19 +250,8 @@ public class BusinessOrdersPanel extends JPanel {
 		JButton removeCompletedBttn = new JButton("Remove Completed");
 		removeCompletedBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// Iterator for the orders ArrayList
-				Iterator<Order> orderIt = businessApp.orders.iterator();
-				
-				// Loop
-				while (orderIt.hasNext()) {
-					Order order = orderIt.next();
-					
-					// If the order status is DELIVERED or CANCELLED
-					if (order.getStatus() == Order.Status.DELIVERED || order.getStatus() == Order.Status.CANCELLED) {
-						orderIt.remove(); // Remove it from the ArrayList
-						removePanel(orderPanelMapping.get(order)); // Remove its panel
-					}
-				}
+				// Remove every DELIVERED or CANCELLED order and its row
+				orderModel.removeOrders(businessApp.engine.removeCompletedOrders());
 			}
 		});
 		
@@ -267,32 +267,4 @@ public class BusinessOrdersPanel extends JPanel {
 		this.add(topBarPanel, BorderLayout.NORTH);
 	}
 	
-	public class StatusUpdater implements Runnable {
-		/*
-		 * Runnable class to update order statuses
-		 */
-		
-		/*
-		 * Method run on Thread.start()
-		 */
-		public void run() {
-			// Loop indefinitely..
-			while (true) {
-				// For each order in the orderLabel mapping
-				for (Order order : orderLabelMapping.keySet()) {
-					// Get the label and change its text to that order's current status
-					JLabel label = orderLabelMapping.get(order);
-					label.setText(order.getStatus().toString());
-				}
-				
-				// Sleep for 3 seconds
-				try {
-					Thread.sleep(3000);
-				} catch (InterruptedException e) {
-					// Shouldn't be anything thrown here
-				}
-			}
-		}
-	}
-	
 }
\ No newline at end of file
@@ -3,7 +3,6 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.HashMap;
-import java.util.Iterator;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -23,10 +22,6 @@ public class BusinessStaffPanel extends JPanel {
 	private JPanel staffContainer; // Container to hold staff panels
 	private JPanel droneContainer; // Container to hold drone panels
 	
-	// Mappings from threads to staff and drones
-	private HashMap<Thread, KitchenStaff> staffThreadMapping;
-	private HashMap<Thread, Drone> droneThreadMapping;
-	
 	// Mappings from staff and drones to their status labels
 	private HashMap<KitchenStaff, JLabel> staffStatusMapping;
 	private HashMap<Drone, JLabel> droneStatusMapping;
@@ -40,9 +35,6 @@ public class BusinessStaffPanel extends JPanel {
 		super();
 		this.businessApp = businessApp;
 		
-		this.staffThreadMapping = new HashMap<>();
-		this.droneThreadMapping = new HashMap<>();
-		
 		this.staffStatusMapping = new HashMap<>();
 		this.droneStatusMapping = new HashMap<>();
 		
@@ -73,28 +65,17 @@ public class BusinessStaffPanel extends JPanel {
 		JButton addStaffBttn = new JButton("Add Staff");
 		addStaffBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// Create the staff member
-				KitchenStaff staff = new KitchenStaff(businessApp.sushiStock, businessApp.ingredientStock);
+				// Create the staff member and start them working
+				KitchenStaff staff = businessApp.engine.addKitchenStaff();
 				
-				// Create a thread using it and start it
-				Thread thread = new Thread(staff);
-				thread.start();
-				
-				// Add the thread to the ArrayList of staff threads
-				businessApp.staff.add(thread);
-				// Add the mapping from thread to staff
-				staffThreadMapping.put(thread, staff);
 				// Add a panel for the new staff member
-				addStaffPanel(thread);
+				addStaffPanel(staff);
 			}
 		});
 		staffContainer.add(addStaffBttn);
 		
-		// Get iterator for staff threads
-		Iterator<Thread> staffIt = businessApp.staff.iterator();
-		while (staffIt.hasNext()) {
-			// For each add a staff panel
-			Thread staff = staffIt.next();
+		// For each staff member add a staff panel
+		for (KitchenStaff staff : businessApp.engine.getKitchenStaff()) {
 			addStaffPanel(staff);
 		}
 		
@@ -115,37 +96,33 @@ public class BusinessStaffPanel extends JPanel {
 		addDroneBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				Double speed;
+				Integer capacity;
 				try {
 					speed = Double.parseDouble(JOptionPane.showInputDialog("Enter a speed:")); // Prompt user to enter a speed
 					if (speed <= 0) {
 						throw new InvalidDetailsException();
 					}
 					
-					Drone drone = new Drone(businessApp, speed); // Create a new drone using that speed
+					// Prompt user to enter how many ingredients or orders it can carry in one trip
+					capacity = Integer.parseInt(JOptionPane.showInputDialog("Enter a payload capacity (ingredients or orders per trip):"));
+					if (capacity <= 0) {
+						throw new InvalidDetailsException();
+					}
 					
-					// Create a thread using the drone and start it
-					Thread thread = new Thread(drone);
-					thread.start();
+					Drone drone = businessApp.engine.addDrone(speed, capacity); // Create a new drone using that speed and capacity and start it
 					
-					// Add the thread to the drones ArrayList
-					businessApp.drones.add(thread);
-					// Add the mapping from thread to drone
-					droneThreadMapping.put(thread, drone);
 					// Add a panel for the Drone
-					addDronePanel(thread);
+					addDronePanel(drone);
 				} catch (Exception e1) {
-					// Invalid speed so show error message dialog
-					JOptionPane.showMessageDialog(BusinessStaffPanel.this, "Invalid speed entered!", "Error", JOptionPane.OK_OPTION);
+					// Invalid speed or capacity so show error message dialog
+					JOptionPane.showMessageDialog(BusinessStaffPanel.this, "Invalid speed or capacity entered!", "Error", JOptionPane.OK_OPTION);
 				}
 			}
 		});
 		droneContainer.add(addDroneBttn);
 		
-		// Get iterator for drone threads
-		Iterator<Thread> droneIt = businessApp.drones.iterator();
-		while (droneIt.hasNext()) {
-			// For each add a drone panel
-			Thread drone = droneIt.next();
+		// For each drone add a drone panel
+		for (Drone drone : businessApp.engine.getDrones()) {
 			addDronePanel(drone);
 		}
 		
@@ -174,9 +151,8 @@ public class BusinessStaffPanel extends JPanel {
 	/*
 	 * Method to add a staff panel
 	 */
-	private void addStaffPanel(Thread thread) {
-		// Get the corresponding staff member and then get their status
-		KitchenStaff staff = staffThreadMapping.get(thread);
+	private void addStaffPanel(KitchenStaff staff) {
+		// Get the staff member's status
 		KitchenStaff.Status status = staff.getStatus();
 		
 		// Create a panel and give it a GridLayout
@@ -204,9 +180,8 @@ public class BusinessStaffPanel extends JPanel {
 		// Add an action listener to the start button
 		startBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// Create new thread using that staff member and start it
-				Thread thread = new Thread(staff);
-				thread.start();
+				// Start it working again
+				businessApp.engine.startKitchenStaff(staff);
 				
 				// Update the statusLabel to the new status
 				statusLabel.setText(staff.getStatus().toString());
@@ -221,10 +196,8 @@ public class BusinessStaffPanel extends JPanel {
 		// Add an action listener to the stop button
 		stopBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// Set staff's status variable to STOPPED
-				staff.stop();
-				// Interrupt the thread
-				thread.interrupt();
+				// Set staff's status variable to STOPPED and interrupt its thread
+				businessApp.engine.stopKitchenStaff(staff);
 				
 				// Update the statusLabel to the new status
 				statusLabel.setText(staff.getStatus().toString());
@@ -239,14 +212,10 @@ public class BusinessStaffPanel extends JPanel {
 		// Add an action listener to the remove button
 		removeBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// Make sure the thread is stopped
-				staff.stop();
-				thread.interrupt();
-				
-				// Remove it from the ArrayList of threads
-				businessApp.staff.remove(staff);
+				// Make sure the thread is stopped and remove it from the business
+				businessApp.engine.removeKitchenStaff(staff);
 				// Remove its mapping
-				staffThreadMapping.remove(thread);
+				staffStatusMapping.remove(staff);
 				// Remove its panel
 				removeStaffPanel(staffPanel);
 			}
@@ -270,9 +239,8 @@ public class BusinessStaffPanel extends JPanel {
 	/*
 	 * Method to add a drone panel
 	 */
-	private void addDronePanel(Thread thread) {
-		// Get the corresponding drone and then get its status
-		Drone drone = droneThreadMapping.get(thread);
+	private void addDronePanel(Drone drone) {
+		// Get the drone's status
 		Drone.Status status = drone.getStatus();
 		
 		// Create a panel and give it a GridLayout
@@ -300,9 +268,8 @@ public class BusinessStaffPanel extends JPanel {
 		// Add an action listener to the start button
 		startBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// Create new thread using that drone and start it
-				Thread thread = new Thread(drone);
-				thread.start();
+				// Start it working again
+				businessApp.engine.startDrone(drone);
 				
 				// Update the statusLabel to the new status
 				statusLabel.setText(drone.getStatus().toString());
@@ -317,10 +284,8 @@ public class BusinessStaffPanel extends JPanel {
 		// Add an action listener to the stop button
 		stopBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// Set drone's status variable to STOPPED
-				drone.stop();
-				// Interrupt the thread
-				thread.interrupt();
+				// Set drone's status variable to STOPPED and interrupt its thread
+				businessApp.engine.stopDrone(drone);
 				
 				// Update the statusLabel to the new status
 				statusLabel.setText(drone.getStatus().toString());
@@ -335,14 +300,10 @@ public class BusinessStaffPanel extends JPanel {
 		// Add an action listener to the remove button
 		removeBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				// Make sure the thread is stopped
-				drone.stop();
-				thread.interrupt();
-				
-				// Remove it from the ArrayList of threads
-				businessApp.staff.remove(drone);
+				// Make sure the thread is stopped and remove it from the business
+				businessApp.engine.removeDrone(drone);
 				// Remove its mapping
-				droneThreadMapping.remove(drone);
+				droneStatusMapping.remove(drone);
 				// Remove its panel
 				removeDronePanel(dronePanel);
 			}
@@ -427,18 +388,14 @@ public class BusinessStaffPanel extends JPanel {
 		public void run() {
 			// Run indefinitely
 			while (true) {
-				// For each thread in staff ArrayList
-				for (Thread staff : businessApp.staff) {
-					// Get associated staff and update their status
-					KitchenStaff staffMember = staffThreadMapping.get(staff);
-					updateStatus(staffMember);
+				// Update the status of every staff member
+				for (KitchenStaff staff : businessApp.engine.getKitchenStaff()) {
+					updateStatus(staff);
 				}
 				
-				// For each thread in drone ArrayList
-				for (Thread drone : businessApp.drones) {
-					// Get associated drone and update its status
-					Drone droneMember = droneThreadMapping.get(drone);
-					updateStatus(droneMember);
+				// Update the status of every drone
+				for (Drone drone : businessApp.engine.getDrones()) {
+					updateStatus(drone);
 				}
 				
 				// Sleep for 3 seconds
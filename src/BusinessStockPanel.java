@@ -13,30 +13,24 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 
 /*
- * JPanel to display current stock and suppliers
+ * JPanel to display current stock and suppliers. Listens for stock and supplier changes and only
+ * updates the rows of whatever changed.
  */
 
-public class BusinessStockPanel extends JPanel {
+public class BusinessStockPanel extends JPanel implements StockListener {
 	
 	private static final long serialVersionUID = 1L;
-
+	private static final int REFRESH_INTERVAL = 250; // Shortest time between updates in milliseconds
+	
 	// Containers for each part
 	private JPanel sushiContainer;
 	private JPanel ingredientsContainer;
 	private JPanel supplierContainer;
 	
-	// Mappings from dishes, ingredients and suppliers to panels
-	private HashMap<SushiDish, JPanel> dishPanelMapping;
-	private HashMap<Ingredient, JPanel> ingredientPanelMapping;
-	private HashMap<Supplier, JPanel> supplierPanelMapping;
-	
-	// Mappings from dishes and ingredients to restock stock labels
-	private HashMap<SushiDish, JLabel> dishLabelMapping;
-	private HashMap<Ingredient, JLabel> ingredientLabelMapping;
-	
-	// Mappings from dishes and ingredients to restock stock labels
-	private HashMap<SushiDish, JLabel> dishRestockLabelMapping;
-	private HashMap<Ingredient, JLabel> ingredientRestockLabelMapping;
+	// Mappings from dishes, ingredients and suppliers to their rows
+	private HashMap<SushiDish, StockRow> dishRows;
+	private HashMap<Ingredient, StockRow> ingredientRows;
+	private HashMap<Supplier, SupplierRow> supplierRows;
 	
 	private BusinessApplication businessApp;
 	
@@ -50,15 +44,9 @@ public class BusinessStockPanel extends JPanel {
 		this.ingredientsContainer = new JPanel();
 		this.supplierContainer = new JPanel();
 		
-		dishPanelMapping = new HashMap<>();
-		ingredientPanelMapping = new HashMap<>();
-		supplierPanelMapping = new HashMap<>();
-		
-		dishLabelMapping = new HashMap<>();
-		ingredientLabelMapping = new HashMap<>();
-		
-		dishRestockLabelMapping = new HashMap<>();
-		ingredientRestockLabelMapping = new HashMap<>();
+		dishRows = new HashMap<>();
+		ingredientRows = new HashMap<>();
+		supplierRows = new HashMap<>();
 		
 		this.businessApp = businessApp;
 		
@@ -71,6 +59,10 @@ public class BusinessStockPanel extends JPanel {
 	 * Method to initialise the panel
 	 */
 	private void init() {
+		// Start listening before adding rows so nothing changed meanwhile is missed (a change to
+		// something that already has a row just updates it)
+		businessApp.engine.addStockListener(new EdtStockListener(this, REFRESH_INTERVAL));
+		
 		// Create a contents JPanel, give it a vertical BoxLayout and add it to a scroll pane
 		JPanel contents = new JPanel();
 		contents.setLayout(new BoxLayout(contents, BoxLayout.Y_AXIS));
@@ -85,11 +77,10 @@ public class BusinessStockPanel extends JPanel {
 		sushiContainer.add(sushiLabel);
 		
 		// Get iterator for all sushi stock
-		Iterator<SushiDish> sushiIt = businessApp.sushiStock.getStockIterator();
+		Iterator<SushiDish> sushiIt = businessApp.engine.getSushiStock().getStockIterator();
 		while (sushiIt.hasNext()) {
-			// Iterate through and add panel for each dish
-			SushiDish dish = sushiIt.next();
-			addDishPanel(dish);
+			// Iterate through and add a row for each dish
+			dishStockChanged(sushiIt.next());
 		}
 		
 		// Give ingredients container a vertical BoxLayout
@@ -101,11 +92,10 @@ public class BusinessStockPanel extends JPanel {
 		ingredientsContainer.add(ingredientLabel);
 		
 		// Get iterator for all ingredients
-		Iterator<Ingredient> ingredientIt = businessApp.ingredientStock.getStockIterator();
+		Iterator<Ingredient> ingredientIt = businessApp.engine.getIngredientStock().getStockIterator();
 		while (ingredientIt.hasNext()) {
-			// Iterate through and add panel for each ingredient
-			Ingredient ingredient = ingredientIt.next();
-			addIngredientPanel(ingredient);
+			// Iterate through and add a row for each ingredient
+			ingredientStockChanged(ingredientIt.next());
 		}
 		
 		// Give supplier container a vertical BoxLayout
@@ -116,8 +106,8 @@ public class BusinessStockPanel extends JPanel {
 		supplierLabel.setAlignmentX(CENTER_ALIGNMENT);
 		supplierContainer.add(supplierLabel);
 		
-		// For each Supplier in the suppliers ArrayList, add a panel
-		for (Supplier supplier : businessApp.suppliers) {
+		// For each Supplier in the suppliers ArrayList, add a row
+		for (Supplier supplier : businessApp.engine.getSuppliers()) {
 			addSupplierPanel(supplier);
 		}
 		
@@ -138,40 +128,86 @@ public class BusinessStockPanel extends JPanel {
 			}
 		});
 		this.add(backBttn, BorderLayout.SOUTH);
+	}
+	
+	/*
+	 * Method to add, update or remove the row of a dish that's changed (run on the EDT)
+	 */
+	public void dishStockChanged(SushiDish dish) {
+		SushiStock sushiStock = businessApp.engine.getSushiStock();
+		Integer stock = sushiStock.getStock(dish);
+		Integer restockingLevel = sushiStock.getRestockingLevel(dish);
+		
+		StockRow row = dishRows.get(dish);
+		
+		// No longer stocked, so take its row away
+		if (stock == null || restockingLevel == null) {
+			if (row != null) {
+				dishRows.remove(dish);
+				removeRow(sushiContainer, row);
+			}
+			return;
+		}
+		
+		if (row == null) {
+			row = addDishPanel(dish);
+		}
+		row.update(dish.getName(), stock, restockingLevel);
+	}
+	
+	/*
+	 * Method to add, update or remove the row of an ingredient that's changed (run on the EDT)
+	 */
+	public void ingredientStockChanged(Ingredient ingredient) {
+		IngredientStock ingredientStock = businessApp.engine.getIngredientStock();
+		Integer stock = ingredientStock.getStock(ingredient);
+		Integer restockingLevel = ingredientStock.getRestockingLevel(ingredient);
+		
+		StockRow row = ingredientRows.get(ingredient);
+		
+		// No longer stocked, so take its row away
+		if (stock == null || restockingLevel == null) {
+			if (row != null) {
+				ingredientRows.remove(ingredient);
+				removeRow(ingredientsContainer, row);
+			}
+			return;
+		}
+		
+		if (row == null) {
+			row = addIngredientPanel(ingredient);
+		}
+		row.update(ingredient.getName(), stock, restockingLevel);
+	}
+	
+	/*
+	 * Method to add, update or remove the row of a supplier that's changed (run on the EDT)
+	 */
+	public void supplierChanged(Supplier supplier) {
+		SupplierRow row = supplierRows.get(supplier);
+		
+		// No longer one of the business' suppliers, so take its row away
+		if (!businessApp.engine.getSuppliers().contains(supplier)) {
+			if (row != null) {
+				supplierRows.remove(supplier);
+				removeRow(supplierContainer, row);
+			}
+			return;
+		}
 		
-		// Create a StockUpdater thread to update current stock levels and start it
-		StockUpdater stockUpdater = new StockUpdater();
-		Thread thread = new Thread(stockUpdater);
-		thread.start();
+		if (row == null) {
+			addSupplierPanel(supplier);
+		} else {
+			row.update(supplier);
+		}
 	}
 	
 	/*
-	 * Method to add a SushiDish panel
+	 * Method to add a SushiDish row and return it
 	 */
-	public void addDishPanel(SushiDish dish) {
-		// Get current stock of the dish
-		int stock = businessApp.sushiStock.getStock(dish);
-		// Get dish's restocking level
-		int restockingLevel = businessApp.sushiStock.getRestockingLevel(dish);
-		
-		// Create a panel to hold everything and give it a GridLayout
-		JPanel sushiPanel = new JPanel();
-		sushiPanel.setLayout(new GridLayout(1,5));
-		
-		// Add a JLabel for its name
-		sushiPanel.add(new JLabel(dish.getName()));
-		
-		// Add a label for its stock
-		JLabel stockLabel = new JLabel("Current Stock: " + stock);
-		// Add a mapping from dish to its stock label
-		dishLabelMapping.put(dish, stockLabel);
-		sushiPanel.add(stockLabel);
-		
-		// Add a label for its restocking level
-		JLabel restockLabel = new JLabel("Restocking Level: " + restockingLevel);
-		// Add a mapping from dish to its restock label
-		dishRestockLabelMapping.put(dish, restockLabel);
-		sushiPanel.add(restockLabel);
+	private StockRow addDishPanel(SushiDish dish) {
+		// Create a row to hold everything
+		StockRow sushiPanel = new StockRow();
 		
 		// Create a JButton to edit dish
 		JButton editBttn = new JButton("Edit");
@@ -193,44 +229,24 @@ public class BusinessStockPanel extends JPanel {
 		});
 		sushiPanel.add(removeBttn);
 		
-		// Add the new panel to the container
+		// Add the new row to the container
 		sushiContainer.add(sushiPanel);
-		// Add mapping from dish to panel
-		dishPanelMapping.put(dish, sushiPanel);
+		// Add mapping from dish to row
+		dishRows.put(dish, sushiPanel);
+		
+		// Lay out again now there's a new row
+		sushiContainer.revalidate();
 		
-		// Repaint
-		this.revalidate();
-		this.repaint();
+		return sushiPanel;
 	}
 	
 	/*
-	 * Method to add an Ingredient panel
+	 * Method to add an Ingredient row and return it
 	 */
-	public void addIngredientPanel(Ingredient ingredient) {
-		// Get current stock of the ingredient
-		int stock = businessApp.ingredientStock.getStock(ingredient);
-		// Get ingredient's restocking level
-		int restockingLevel = businessApp.ingredientStock.getRestockingLevel(ingredient);
-		
-		// Create a panel to hold everything and give it a GridLayout
-		JPanel ingredientPanel = new JPanel();
+	private StockRow addIngredientPanel(Ingredient ingredient) {
+		// Create a row to hold everything
+		StockRow ingredientPanel = new StockRow();
 		ingredientPanel.setAlignmentX(CENTER_ALIGNMENT);
-		ingredientPanel.setLayout(new GridLayout(1,5));
-		
-		// Add a JLabel for its name
-		ingredientPanel.add(new JLabel(ingredient.getName()));
-		
-		// Add a label for its stock
-		JLabel stockLabel = new JLabel("Current Stock: " + stock);
-		// Add a mapping from dish to its stock label
-		ingredientLabelMapping.put(ingredient, stockLabel);
-		ingredientPanel.add(stockLabel);
-		
-		// Add a label for its restocking level
-		JLabel restockLabel = new JLabel("Restocking Level: " + restockingLevel);
-		// Add a mapping from dish to its stock label
-		ingredientRestockLabelMapping.put(ingredient, restockLabel);
-		ingredientPanel.add(restockLabel);
 		
 		// Create a JButton to edit ingredient
 		JButton editBttn = new JButton("Edit");
@@ -252,41 +268,31 @@ public class BusinessStockPanel extends JPanel {
 		});
 		ingredientPanel.add(removeBttn);
 		
-		// Add the new panel to the container
+		// Add the new row to the container
 		ingredientsContainer.add(ingredientPanel);
-		// Add mapping from dish to panel
-		ingredientPanelMapping.put(ingredient, ingredientPanel);
+		// Add mapping from ingredient to row
+		ingredientRows.put(ingredient, ingredientPanel);
+		
+		// Lay out again now there's a new row
+		ingredientsContainer.revalidate();
 		
-		// Repaint
-		this.revalidate();
-		this.repaint();
+		return ingredientPanel;
 	}
 	
 	/*
-	 * Method to add a Supplier panel
+	 * Method to add a Supplier row
 	 */
-	public void addSupplierPanel(Supplier supplier) {
-		// Get name of the supplier
-		String name = supplier.getName();
-		// Get distance to the supplier
-		String distance = String.valueOf(supplier.getDistance());
-		
-		// Create a panel to hold everything and give it a GridLayout
-		JPanel supplierPanel = new JPanel();
-		supplierPanel.setLayout(new GridLayout(1,4));
-		
-		// Add a JLabel for its name
-		supplierPanel.add(new JLabel(name));
-		
-		// Add a JLabel for its distance
-		supplierPanel.add(new JLabel("Distance: " + distance));
+	private void addSupplierPanel(Supplier supplier) {
+		// Create a row showing its name and distance
+		SupplierRow supplierPanel = new SupplierRow();
+		supplierPanel.update(supplier);
 		
 		// Create a JButton to edit supplier
 		JButton editBttn = new JButton("Edit");
 		editBttn.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				// Create frame
-				BusinessEditSupplierFrame editSupplier = new BusinessEditSupplierFrame(BusinessStockPanel.this, supplier);
+				BusinessEditSupplierFrame editSupplier = new BusinessEditSupplierFrame(BusinessStockPanel.this, businessApp, supplier);
 			}
 		});
 		supplierPanel.add(editBttn);
@@ -301,48 +307,45 @@ public class BusinessStockPanel extends JPanel {
 		});
 		supplierPanel.add(removeBttn);
 		
-		// Add the new panel to the container
+		// Add the new row to the container
 		supplierContainer.add(supplierPanel);
-		// Add mapping from dish to panel
-		supplierPanelMapping.put(supplier, supplierPanel);
+		// Add mapping from supplier to row
+		supplierRows.put(supplier, supplierPanel);
+		
+		// Lay out again now there's a new row
+		supplierContainer.revalidate();
+	}
+	
+	/*
+	 * Method to take a row out of its container
+	 */
+	private void removeRow(JPanel container, JPanel row) {
+		container.remove(row);
 		
-		// Repaint
-		this.revalidate();
-		this.repaint();
+		// Lay out again and repaint where the row was
+		container.revalidate();
+		container.repaint();
 	}
 	
 	/*
-	 * Method to remove a dish
+	 * Method to remove a dish (its row goes when the stock says it's gone)
 	 */
 	private void removeDish(SushiDish dish) {
 		// Remove it as an item of stock
-		businessApp.sushiStock.removeStockItem(dish);
+		businessApp.engine.getSushiStock().removeStockItem(dish);
 		
 		// Reset number in preparation
 		dish.resetInPreparation();
-		
-		// Get the panel associated with the dish and remove it
-		JPanel panel = dishPanelMapping.get(dish);
-		sushiContainer.remove(panel);
-		
-		// Remove its mappings
-		dishPanelMapping.remove(dish);
-		dishLabelMapping.remove(dish);
-		dishRestockLabelMapping.remove(dish);
-		
-		// Repaint
-		this.revalidate();
-		this.repaint();
-	} 
+	}
 	
 	/*
-	 * Method to remove an ingredient
+	 * Method to remove an ingredient (its row goes when the stock says it's gone)
 	 */
 	private void removeIngredient(Ingredient ingredient) {
 		// Boolean to check we can remove it
 		boolean removable = true;
 		// Get iterator for all dishes
-		Iterator<SushiDish> dishIt = businessApp.sushiStock.getStockIterator();
+		Iterator<SushiDish> dishIt = businessApp.engine.getSushiStock().getStockIterator();
 		
 		while (dishIt.hasNext()) {
 			SushiDish dish = dishIt.next();
@@ -358,20 +361,7 @@ public class BusinessStockPanel extends JPanel {
 		// If we can remove it
 		if (removable) {
 			// Remove it as an item of stock
-			businessApp.ingredientStock.removeStockItem(ingredient);
-			
-			// Get the panel associated with the ingredient and remove it
-			JPanel panel = ingredientPanelMapping.get(ingredient);
-			ingredientsContainer.remove(panel);
-			
-			// Remove its mappings
-			ingredientPanelMapping.remove(ingredient);
-			ingredientLabelMapping.remove(ingredient);
-			ingredientRestockLabelMapping.remove(ingredient);
-			
-			// Repaint
-			this.revalidate();
-			this.repaint();
+			businessApp.engine.getIngredientStock().removeStockItem(ingredient);
 		} else {
 			// Otherwise we can't remove it because its in current dishes, so display error message dialog
 			JOptionPane.showMessageDialog(BusinessStockPanel.this, "Could not remove ingredient, remove dishes "
@@ -380,13 +370,13 @@ public class BusinessStockPanel extends JPanel {
 	}
 	
 	/*
-	 * Method to remove a supplier
+	 * Method to remove a supplier (its row goes when the business says it's gone)
 	 */
 	private void removeSupplier(Supplier supplier) {
 		// Boolean to check we can remove it
 		boolean removable = true;
 		// Get iterator for all ingredients
-		Iterator<Ingredient> ingredientIt = businessApp.ingredientStock.getStockIterator();
+		Iterator<Ingredient> ingredientIt = businessApp.engine.getIngredientStock().getStockIterator();
 		
 		// Check every ingredient for the supplier
 		while (ingredientIt.hasNext()) {
@@ -400,18 +390,7 @@ public class BusinessStockPanel extends JPanel {
 		// If we can remove it
 		if (removable) {
 			// Remove the supplier
-			businessApp.suppliers.remove(supplier);
-			
-			// Get the panel associated with it and remove that
-			JPanel panel = supplierPanelMapping.get(supplier);
-			supplierContainer.remove(panel);
-			
-			// Remove its mapping
-			supplierPanelMapping.remove(supplier);
-			
-			// Repaint
-			this.revalidate();
-			this.repaint();
+			businessApp.engine.removeSupplier(supplier);
 		} else {
 			// Otherwise an ingredient has that supplier and we can't remove it, so display error message dialog
 			JOptionPane.showMessageDialog(BusinessStockPanel.this, "Could not remove supplier, remove ingredients "
@@ -420,69 +399,90 @@ public class BusinessStockPanel extends JPanel {
 	}
 	
 	/*
-	 * Method to refresh the panel (really ungraceful but oh well)
+	 * JPanel showing the name, stock and restocking level of a dish or ingredient, followed by its buttons
 	 */
-	public void refresh() {
-		// Remove everything in its entirety
-		this.removeAll();
-		sushiContainer.removeAll();
-		ingredientsContainer.removeAll();
-		supplierContainer.removeAll();
-		
-		// Clear all mappings
-		dishPanelMapping.clear();
-		ingredientPanelMapping.clear();
-		supplierPanelMapping.clear();
-		dishLabelMapping.clear();
-		ingredientLabelMapping.clear();
-		
-		// Reinitialise the panel
-		this.init();
-	}
-	
-	public class StockUpdater implements Runnable {
+	private class StockRow extends JPanel {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private JLabel nameLabel;
+		private JLabel stockLabel;
+		private JLabel restockLabel;
+		
+		// What the labels currently show (-1 before the first update)
+		private int shownStock;
+		private int shownRestockingLevel;
+		
 		/*
-		 * Runnable class to update stock of dishes and ingredients
+		 * Constructor to create a new StockRow with empty labels
 		 */
+		private StockRow() {
+			super();
+			this.setLayout(new GridLayout(1,5));
+			
+			this.nameLabel = new JLabel();
+			this.stockLabel = new JLabel();
+			this.restockLabel = new JLabel();
+			
+			this.shownStock = -1;
+			this.shownRestockingLevel = -1;
+			
+			this.add(nameLabel);
+			this.add(stockLabel);
+			this.add(restockLabel);
+		}
 		
 		/*
-		 * Method run on Thread.start()
+		 * Method to show a new name, stock and restocking level, only touching labels that changed
 		 */
-		public void run() {
-			// Run indefinitely
-			while (true) {
-				// For each SushiDish get its label and update it to display current stock
-				for (SushiDish dish : dishLabelMapping.keySet()) {
-					JLabel label = dishLabelMapping.get(dish);
-					label.setText("Current Stock: " + businessApp.sushiStock.getStock(dish));
-				}
-				
-				// For each Ingredient get its label and update it to display current stock
-				for (Ingredient ingredient : ingredientLabelMapping.keySet()) {
-					JLabel label = ingredientLabelMapping.get(ingredient);
-					label.setText("Current Stock: " + businessApp.ingredientStock.getStock(ingredient));
-				}
-				
-				// For each SushiDish get its label and update it to display restock level
-				for (SushiDish dish : dishRestockLabelMapping.keySet()) {
-					JLabel label = dishRestockLabelMapping.get(dish);
-					label.setText("Restocking Level: " + businessApp.sushiStock.getRestockingLevel(dish));
-				}
-				
-				// For each Ingredient get its label and update it to display restock level
-				for (Ingredient ingredient : ingredientRestockLabelMapping.keySet()) {
-					JLabel label = ingredientRestockLabelMapping.get(ingredient);
-					label.setText("Restocking Level: " + businessApp.ingredientStock.getRestockingLevel(ingredient));
-				}
-				
-				// Sleep for 3 seconds
-				try {
-					Thread.sleep(3000);
-				} catch (InterruptedException e) {
-					// Shouldn't be interrupted but just in case..
-				}
+		private void update(String name, int stock, int restockingLevel) {
+			if (!name.equals(nameLabel.getText())) {
+				nameLabel.setText(name);
+			}
+			if (stock != shownStock) {
+				stockLabel.setText("Current Stock: " + stock);
+				shownStock = stock;
+			}
+			if (restockingLevel != shownRestockingLevel) {
+				restockLabel.setText("Restocking Level: " + restockingLevel);
+				shownRestockingLevel = restockingLevel;
 			}
 		}
+	
 	}
 	
-}
+	/*
+	 * JPanel showing the name and distance of a supplier, followed by its buttons
+	 */
+	private class SupplierRow extends JPanel {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private JLabel nameLabel;
+		private JLabel distanceLabel;
+		
+		/*
+		 * Constructor to create a new SupplierRow with empty labels
+		 */
+		private SupplierRow() {
+			super();
+			this.setLayout(new GridLayout(1,4));
+			
+			this.nameLabel = new JLabel();
+			this.distanceLabel = new JLabel();
+			
+			this.add(nameLabel);
+			this.add(distanceLabel);
+		}
+		
+		/*
+		 * Method to show a supplier's current name and distance
+		 */
+		private void update(Supplier supplier) {
+			nameLabel.setText(supplier.getName());
+			distanceLabel.setText("Distance: " + supplier.getDistance());
+		}
+	
+	}
+
+}
\ No newline at end of file
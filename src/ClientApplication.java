@@ -24,7 +24,7 @@ public class ClientApplication extends JFrame {
 	private void init() {
 		this.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		
-		comms = new Comms();
+		comms = Comms.createClientComms(); // Shared files or a socket to the business
 		
 		layout = new CardLayout();
 		cards = new JPanel(layout);
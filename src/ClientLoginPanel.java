@@ -70,15 +70,7 @@ public class ClientLoginPanel extends JPanel {
 	}
 	
 	public User attemptLogin(String username, String password) {
-		User user = clientApp.comms.receiveUser(username);
-		
-		if (user == null) {
-			return null;
-		} else if (user.getPassword().equals(password)) {
-			return user;
-		}
-		
-		return null;
+		return clientApp.comms.login(username, password);
 	}
 	
 }
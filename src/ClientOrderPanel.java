@@ -5,13 +5,18 @@ import java.awt.event.ActionListener;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 /*
  * JPanel to allow a User to place orders
@@ -23,12 +28,15 @@ public class ClientOrderPanel extends JPanel {
 	
 	private JPanel basketPanel; // Panel to display basket
 	private JPanel menuPanel; // Panel to display menu
+	private LinkedHashMap<String, MenuRow> menuRows; // Row showing each dish on the menu, by name
 	
 	private double basketPrice; // Total price of all items in basket
 	
 	private ClientApplication clientApp;
 	private User user;
-	private SushiStock sushiStock;
+	private SushiStock sushiStock; // Our copy of the menu (only touched on the EDT once shown)
+	private long menuEpoch; // Which run of the business our copy came from (MenuUpdater only)
+	private long menuVersion; // Version of the menu our copy is at (MenuUpdater only)
 	
 	private HashMap<SushiDish, Integer> basket; // Basket mapping dishes to quantity
 	
@@ -42,6 +50,12 @@ public class ClientOrderPanel extends JPanel {
 		this.user = user;
 		
 		this.basket = new HashMap<>();
+		this.menuRows = new LinkedHashMap<>();
+		
+		// Start with an empty menu, the MenuUpdater will fetch the whole thing first
+		this.sushiStock = new SushiStock();
+		this.menuEpoch = 0;
+		this.menuVersion = -1;
 		
 		this.setPreferredSize(new Dimension(800, 800));
 		this.setLayout(new BorderLayout());
@@ -58,7 +72,7 @@ public class ClientOrderPanel extends JPanel {
 		initMenu();
 		initBasket();
 		
-		// Create a MenuUpdater to update the menu regularly
+		// Create a MenuUpdater to update the menu whenever it changes
 		MenuUpdater menuUpdater = new MenuUpdater();
 		Thread thread = new Thread(menuUpdater);
 		thread.start();
@@ -160,8 +174,11 @@ public class ClientOrderPanel extends JPanel {
 			JButton completeBttn = new JButton("Complete Order");
 			completeBttn.addActionListener(new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					// Add an order
-					addOrder();
+					// Add an order, keeping the basket if it couldn't be sent
+					if (!addOrder()) {
+						JOptionPane.showMessageDialog(ClientOrderPanel.this, "Your order couldn't be sent, please try again!", "Order Failed", JOptionPane.ERROR_MESSAGE);
+						return;
+					}
 					
 					// Clear the basket and reset the basket price and update the basket
 					basket.clear();
@@ -184,15 +201,15 @@ public class ClientOrderPanel extends JPanel {
 	}
 	
 	/*
-	 * Method to add a new order
+	 * Method to add a new order. Returns false if it couldn't be sent.
 	 */
-	private void addOrder() {
+	private boolean addOrder() {
 		// Get date then add order
 		String date = new SimpleDateFormat("HH:mm:ss dd/M/yyyy").format(new Date());
 		Order order = new Order(user, date, basket, basketPrice);
 		
 		// Send the order to the BusinessApplication
-		clientApp.comms.sendUserOrder(order);
+		return clientApp.comms.sendUserOrder(order);
 	}
 	
 	/*
@@ -243,6 +260,11 @@ public class ClientOrderPanel extends JPanel {
 		menuPanel.setLayout(new BoxLayout(menuPanel, BoxLayout.Y_AXIS));
 		JScrollPane menuPane = new JScrollPane(menuPanel);
 		
+		// Create a title label, centre it (sorta..) and add it
+		JLabel menuLabel = new JLabel("MENU");
+		menuLabel.setAlignmentX(CENTER_ALIGNMENT);
+		menuPanel.add(menuLabel);
+		
 		// Update the menu
 		updateMenu();
 		
@@ -251,81 +273,148 @@ public class ClientOrderPanel extends JPanel {
 	}
 	
 	/*
-	 * Method to update the menu
+	 * Method to bring the menu rows in line with our copy of the menu - only rows whose dish has
+	 * changed are touched, and rows are only added or removed with their dish (on the EDT)
 	 */
 	private void updateMenu() {
-		// Remove everything from the menu
-		menuPanel.removeAll();
-		
-		// Create a title label, centre it (sorta..) and add it
-		JLabel menuLabel = new JLabel("MENU");
-		menuLabel.setAlignmentX(CENTER_ALIGNMENT);
-		menuPanel.add(menuLabel);
-		
-		// Get latest SushiStock from BusinessApplication
-		this.sushiStock = clientApp.comms.receiveSushiStock();
+		HashSet<String> names = new HashSet<>();
+		boolean rowsChanged = false;
 		
 		// Get iterator to iterate through SushiStock
 		Iterator<SushiDish> stockIterator = sushiStock.getStockIterator();
 		while (stockIterator.hasNext()) {
-			// Get dish and current stock of it
+			// Get dish and current stock of it (skipping it if it's just been removed)
 			SushiDish dish = stockIterator.next();
-			int currentStock = sushiStock.getStock(dish);
+			Integer currentStock = sushiStock.getStock(dish);
+			if (currentStock == null) {
+				continue;
+			}
+			names.add(dish.getName());
 			
-			// Create a panel to hold everything
-			JPanel dishPanel = new JPanel();
+			MenuRow row = menuRows.get(dish.getName());
+			if (row == null) {
+				// New dish, add a row for it
+				row = new MenuRow(dish.getName());
+				menuRows.put(dish.getName(), row);
+				menuPanel.add(row);
+				rowsChanged = true;
+			}
+			
+			row.update(dish, currentStock);
+		}
+		
+		// Remove the rows of dishes no longer on the menu
+		Iterator<MenuRow> rowIterator = menuRows.values().iterator();
+		while (rowIterator.hasNext()) {
+			MenuRow row = rowIterator.next();
+			if (!names.contains(row.name)) {
+				rowIterator.remove();
+				menuPanel.remove(row);
+				rowsChanged = true;
+			}
+		}
+		
+		// Only lay the menu out again if rows came or went
+		if (rowsChanged) {
+			menuPanel.revalidate();
+			menuPanel.repaint();
+		}
+	}
+	
+	/*
+	 * Method to add one of a dish to the basket
+	 */
+	private void addToBasket(String name) {
+		// Use the dish as it is now, in case it's changed since the row was made
+		SushiDish dish = sushiStock.getDish(name);
+		if (dish == null) {
+			return;
+		}
+		
+		// Boolean to check it's not already in basket (since Object references keep breaking and adding duplicate dishes)
+		boolean found = false;
+		
+		// Loop over everything in the basket
+		for (SushiDish basketDish : basket.keySet()) {
+			if (basketDish.getName().equals(dish.getName())) {
+				// If we found it set found to true and add one of it to the basket
+				basket.put(basketDish, basket.get(basketDish) +  1);
+				found = true;
+			}
+		}
+		
+		// If we didn't find it add it as a new dish
+		if (found == false) {
+			basket.put(dish, 1);
+		}
+		
+		// Update the basket price
+		basketPrice += dish.getPrice();
+		
+		// Update the basket
+		updateBasket();
+	}
+	
+	private class MenuRow extends JPanel {
+		/*
+		 * JPanel to show one dish on the menu, kept for as long as the dish is on it
+		 */
+		
+		private static final long serialVersionUID = 1L;
+		
+		private String name; // Name of the dish
+		private JLabel label; // Displays name, current stock and description
+		private JButton addBttn; // Adds the dish to the basket
+		
+		private boolean shown; // Whether the dish has been displayed yet
+		private int shownStock; // What's currently displayed, so unchanged rows aren't touched
+		private String shownDescription;
+		private double shownPrice;
+		
+		/*
+		 * Constructor to create a new MenuRow for a dish
+		 */
+		private MenuRow(String name) {
+			this.name = name;
+			this.label = new JLabel();
+			this.addBttn = new JButton();
+			this.shown = false;
 			
-			// Create a label to display name, current stock and description
-			JLabel label = new JLabel("<html>" + dish.getName() + "   (" + currentStock + " in stock)" +
-					"<br>" + dish.getDescription() + "</html>");
-
 			// Create a JButton to add the dish to basket
-			JButton addBttn = new JButton("Add (+ " + String.format("%.2f", dish.getPrice()) + ")");
 			addBttn.addActionListener(new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					// Boolean to check it's not already in basket (since Object references keep breaking and adding duplicate dishes)
-					boolean found = false;
-					
-					// Loop over everything in the basket
-					for (SushiDish basketDish : basket.keySet()) {
-						if (basketDish.getName().equals(dish.getName())) {
-							// If we found it set found to true and add one of it to the basket
-							basket.put(basketDish, basket.get(basketDish) +  1);
-							found = true;
-						}
-					}
-					
-					// If we didn't find it add it as a new dish
-					if (found == false) {
-						basket.put(dish, 1);
-					}
-					
-					// Update the basket price
-					basketPrice += dish.getPrice();
-					
-					// Update the basket and repaint
-					updateBasket();
-					revalidate();
-					repaint();
+					addToBasket(MenuRow.this.name);
 				}
 			});
 			
-			// Add the label and button to the dish panel
-			dishPanel.add(label);
-			dishPanel.add(addBttn);
-			
-			// Add the dish panel to the menu panel
-			menuPanel.add(dishPanel);
+			// Add the label and button to the row
+			this.add(label);
+			this.add(addBttn);
 		}
 		
-		// Repaint
-		this.revalidate();
-		this.repaint();
+		/*
+		 * Method to display the latest stock, description and price of the dish, if they've changed
+		 */
+		private void update(SushiDish dish, int currentStock) {
+			if (!shown || currentStock != shownStock || !Objects.equals(dish.getDescription(), shownDescription)) {
+				shownStock = currentStock;
+				shownDescription = dish.getDescription();
+				label.setText("<html>" + name + "   (" + currentStock + " in stock)" +
+						"<br>" + shownDescription + "</html>");
+			}
+			
+			if (!shown || dish.getPrice() != shownPrice) {
+				shownPrice = dish.getPrice();
+				addBttn.setText("Add (+ " + String.format("%.2f", shownPrice) + ")");
+			}
+			
+			shown = true;
+		}
 	}
 	
 	private class MenuUpdater implements Runnable {
 		/*
-		 * Runnable class to update the menu at regular intervals
+		 * Runnable class to apply changes to the menu as the business publishes them
 		 */
 		
 		/*
@@ -334,12 +423,17 @@ public class ClientOrderPanel extends JPanel {
 		public void run() {
 			// Run indefinitely
 			while (true) {
-				// Update the menu
-				updateMenu();
-				
-				// Sleep for 5 seconds
 				try {
-					Thread.sleep(5000);
+					// Wait for the menu to change
+					MenuUpdate update = clientApp.comms.awaitMenuUpdate(menuEpoch, menuVersion);
+					menuEpoch = update.getEpoch();
+					menuVersion = update.getVersion();
+					
+					// Then bring our copy up to date and show it on the EDT (in the order they arrived)
+					SwingUtilities.invokeLater(() -> {
+						sushiStock = update.applyTo(sushiStock);
+						updateMenu();
+					});
 				} catch (InterruptedException e) {
 					//
 				}
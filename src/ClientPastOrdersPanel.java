@@ -1,25 +1,41 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.util.HashSet;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableModel;
 
 /*
- * JPanel to display a User's past orders
+ * JPanel to display a User's past orders, newest first. Orders are loaded a page at a time in the
+ * background, the first straight away and the rest as the table is scrolled towards the bottom.
  */
 
 public class ClientPastOrdersPanel extends JPanel {
 
 	private static final long serialVersionUID = 1L;
+	private static final int PAGE_SIZE = 50; // Orders loaded at a time
+	private static final int LOAD_AHEAD = 10; // Rows from the bottom at which the next page is loaded
 	
 	private ClientApplication clientApp;
 	private User user;
 	
+	private JTable table;
+	private DefaultTableModel tableModel;
+	private JScrollPane tablePane;
+	private HashSet<Integer> shownIDs; // IDs of the orders in the table
+	
+	private int cursor; // Where the next page starts
+	private boolean more; // Whether there are older orders still to load
+	private boolean loading; // Whether a page is being loaded
+	
 	/*
 	 * Constructor to create a new ClientPastOrdersPanel
 	 */
@@ -29,6 +45,11 @@ public class ClientPastOrdersPanel extends JPanel {
 		this.user = user;
 		this.clientApp = clientApp;
 		
+		this.shownIDs = new HashSet<>();
+		this.cursor = OrderPage.NEWEST;
+		this.more = true;
+		this.loading = false;
+		
 		this.setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
 		
 		this.init();
@@ -41,41 +62,29 @@ public class ClientPastOrdersPanel extends JPanel {
 		// Create an array of column names
 		String[] columns = { "Username", "Date", "Order Total", "Status" };
 		
-		// Create an ArrayList of the User's orders
-		ArrayList<Order> orders = clientApp.comms.getUsersOrders(user.getUsername());
-		
-		// Get size of the orders ArrayList
-		int size = orders.size();
-		
-		// Create a data array of that length
-		String[][] data = new String[size][4];
-		
-		// Loop over the size of the ArrayList and populate the data array with relevant information
-		for (int i = 0; i < size; i++) {
-			Order currentOrder = orders.get(i);
-			data[i][0] = currentOrder.getUser().getUsername();
-			data[i][1] = currentOrder.getDate();
-			data[i][2] = String.format("%.2f", currentOrder.getPrice());
-			data[i][3] = currentOrder.getStatus().toString();
-		}
-		
-		// Create a new JTable with the data and columns
-		JTable table = new JTable(data, columns);
-		
-		// Create and set a table model to disable cell editing
-		DefaultTableModel tableModel = new DefaultTableModel(data, columns) {
+		// Create a table model with no rows yet which disables cell editing
+		tableModel = new DefaultTableModel(columns, 0) {
 			private static final long serialVersionUID = 1L;
 
 		    public boolean isCellEditable(int row, int column) {
 		       return false;
 		    }
 		};
-		table.setModel(tableModel);
+		
+		// Create a new JTable with the model
+		table = new JTable(tableModel);
 		
 		// Create a tablePane to display the JTable and add it
-		JScrollPane tablePane = new JScrollPane(table);
+		tablePane = new JScrollPane(table);
 		this.add(tablePane);
 		
+		// Load more whenever the table is scrolled, resized or grows (anything that moves the scroll bar)
+		tablePane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+			public void adjustmentValueChanged(AdjustmentEvent e) {
+				loadIfNeeded();
+			}
+		});
+		
 		// Create a JButton to go back
 		JButton backBttn = new JButton("Back");
 		backBttn.addActionListener(new ActionListener() {
@@ -85,6 +94,88 @@ public class ClientPastOrdersPanel extends JPanel {
 			}
 		});
 		this.add(backBttn);
+		
+		// Start loading the first page
+		loadIfNeeded();
+	}
+	
+	/*
+	 * Method to start loading the next page if the bottom of the table is close to being shown (run on the EDT)
+	 */
+	private void loadIfNeeded() {
+		if (loading || !more) {
+			return;
+		}
+		
+		// Once there's something in the table wait until it's shown and nearly scrolled to the bottom
+		if (tableModel.getRowCount() > 0) {
+			if (!table.isShowing()) {
+				return;
+			}
+			
+			JScrollBar scrollBar = tablePane.getVerticalScrollBar();
+			int bottom = scrollBar.getValue() + scrollBar.getVisibleAmount();
+			if (bottom < scrollBar.getMaximum() - LOAD_AHEAD * table.getRowHeight()) {
+				return;
+			}
+		}
+		
+		// Create a PageLoader thread to get the page and start it
+		loading = true;
+		PageLoader pageLoader = new PageLoader(cursor);
+		Thread thread = new Thread(pageLoader);
+		thread.start();
+	}
+	
+	/*
+	 * Method to add a page of orders to the bottom of the table (run on the EDT)
+	 */
+	private void addPage(OrderPage page) {
+		for (Order order : page.getOrders()) {
+			// Skip anything already shown (pages can overlap if orders are removed meanwhile)
+			if (!shownIDs.add(order.getID())) {
+				continue;
+			}
+			
+			tableModel.addRow(new Object[] {
+					order.getUser().getUsername(),
+					order.getDate(),
+					String.format("%.2f", order.getPrice()),
+					order.getStatus().toString()
+			});
+		}
+		
+		cursor = page.getCursor();
+		more = page.hasMore();
+		loading = false;
+		
+		// The page may not have filled the table
+		loadIfNeeded();
+	}
+	
+	public class PageLoader implements Runnable {
+		/*
+		 * Runnable class to load a page of orders in the background and add it to the table
+		 */
+		
+		private int from; // Cursor to load the page from
+		
+		/*
+		 * Constructor to create a new PageLoader for the page after a cursor
+		 */
+		public PageLoader(int from) {
+			this.from = from;
+		}
+		
+		/*
+		 * Method run on Thread.start()
+		 */
+		public void run() {
+			OrderPage page = clientApp.comms.getUsersOrdersPage(user.getUsername(), from, PAGE_SIZE);
+			
+			// Swing components may only be changed on the EDT
+			SwingUtilities.invokeLater(() -> addPage(page));
+		}
 	}
 	
 }
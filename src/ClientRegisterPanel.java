@@ -112,21 +112,18 @@ public class ClientRegisterPanel extends JPanel {
 	 * Method to register a new User
 	 */
 	private boolean register(String username, String password, String email, String postcode) throws UserAlreadyExistsException, InvalidDetailsException {
-		User user = clientApp.comms.receiveUser(username); // Get the user with the provided username (if exists)
+		// If any of the required details are empty, throw exception
+		if (username.equals("") || password.equals("") || email.equals("") || postcode.equals("")) {
+			throw new InvalidDetailsException();
+		}
 		
-		// If a User with that username already exists..
-		if (user != null) {
-			// Throw exception
+		// Create new User and save them (this fails if a User with that username already exists)
+		User newUser = new User(username, password, email, postcode);
+		if (!clientApp.comms.saveUser(newUser)) {
 			throw new UserAlreadyExistsException();
-		} else if (username.equals("") || password.equals("") || email.equals("") || postcode.equals("")) {
-			// If any of the required details are empty, throw exception
-			throw new InvalidDetailsException();
-		} else {
-			// Create new User and save them
-			User newUser = new User(username, password, email, postcode);
-			clientApp.comms.saveUser(newUser);
-			return true;
 		}
+		
+		return true;
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+/*
+ * Interface for the time source Drones and KitchenStaff sleep on, so the shop can be run in real
+ * time, sped up, or on virtual time that jumps straight to the next thing to happen. Threads that
+ * take part in the timing register with the clock and wait for work through it, so it knows when
+ * they're busy and (for virtual time) can decide which of them runs when.
+ */
+
+public interface Clock {
+	
+	/*
+	 * Method to return the current time in milliseconds
+	 */
+	public long currentTimeMillis();
+	
+	/*
+	 * Method to block the calling thread for an amount of clock time
+	 */
+	public void sleep(long millis) throws InterruptedException;
+	
+	/*
+	 * Method to add the calling thread to the threads the clock keeps time for
+	 */
+	public void register();
+	
+	/*
+	 * Method to remove the calling thread from the threads the clock keeps time for
+	 */
+	public void unregister();
+	
+	/*
+	 * Method called by a thread that's found no work, while still holding the lock the work is guarded by
+	 */
+	public void beginWait(Object lock);
+	
+	/*
+	 * Method to block after beginWait() (with the lock let go) until wake() is called for the lock
+	 */
+	public void awaitWork() throws InterruptedException;
+	
+	/*
+	 * Method called when work is handed out, while holding the lock it's guarded by
+	 */
+	public void wake(Object lock);
+	
+}
@@ -1,15 +1,20 @@
-import java.io.EOFException;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /*
  * Class to handle (file based) communication between ClientApplications and BusinessApplcation
@@ -17,187 +22,201 @@ import java.util.Iterator;
 
 public class Comms {
 	
-	// Strings to store folder paths in one place
-	private static final String ORDER_FOLDER = "Business/Orders/";
-	private static final String USER_FOLDER = "Business/Users/";
-	private static final String STOCK_FOLDER = "Business/Stock/";
+	// Folder everything is kept in unless another is given
+	private static final String BUSINESS_FOLDER = "Business/";
+	
+	// How often clients look for menu changes in the files
+	private static final long MENU_POLL_INTERVAL = 5000;
 	
 	// Not in use
 	// private static final String STAFF_FOLDER = "Business/Staff/";
 	
+	// Formats everything can be saved in
+	enum Format {
+		SERIALIZED, BINARY
+	}
+	
+	// Strings to store folder paths in one place
+	private String orderFolder;
+	private String userFolder;
+	private String stockFolder;
+	
+	private Format format; // Format new files are written in (either can always be read)
+	private OrderJournal journal; // Append-only journal holding every order
+	private AtomicFileWriter fileWriter; // Writes every saved file so it's never seen half written
+	private WatchService orderWatcher; // Watches the order folder for new orders (business only)
+	private CopyOnWriteArrayList<OrderListener> orderListeners; // Told whenever an order changes
+	
 	/*
-	 * Constructor to create a new Comms
+	 * Constructor to create a new Comms using the format in the sushi.comms.format property (binary by default)
 	 */
 	public Comms() {
-		
+		this(formatFromProperty());
 	}
 	
 	/*
-	 * Synchronized ethod to check if a path currently exists
+	 * Method to read the format from the sushi.comms.format property, falling back to binary if it's
+	 * not one we know
 	 */
-	public synchronized boolean checkPathExists(String path) {
-		// Create a file using that path
-		File file = new File(path);
+	private static Format formatFromProperty() {
+		String property = System.getProperty("sushi.comms.format", "BINARY");
 		
-		return file.exists();
+		try {
+			return Format.valueOf(property.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("Unknown sushi.comms.format \"" + property + "\", using BINARY");
+			return Format.BINARY;
+		}
 	}
 	
 	/*
-	 * Synchronized method to determine and return the path an order should be saved to
+	 * Method to create the Comms a ClientApplication should use - a SocketComms if the
+	 * sushi.comms.transport property is "socket" (connecting to sushi.comms.host and sushi.comms.port),
+	 * otherwise one working on the shared files
 	 */
-	public synchronized String determineOrderPath(Order order) {
-		// Start at 1
-		int i = 1;
-		// First path
-		String path = ORDER_FOLDER + "Order" + i + ".txt";
+	public static Comms createClientComms() {
+		if (System.getProperty("sushi.comms.transport", "file").equalsIgnoreCase("socket")) {
+			String host = System.getProperty("sushi.comms.host", "localhost");
+			int port = Integer.getInteger("sushi.comms.port", CommsServer.DEFAULT_PORT);
+			
+			return new SocketComms(host, port);
+		}
 		
-		// Recursively check if it already exists, increasing i each time
-		while (checkPathExists(path)) {
-			i++;
-			path = ORDER_FOLDER + "Order" + i + ".txt";
+		return new Comms();
+	}
+	
+	/*
+	 * Constructor to create a new Comms writing in a given format
+	 */
+	public Comms(Format format) {
+		this(format, BUSINESS_FOLDER);
+	}
+	
+	/*
+	 * Constructor to create a new Comms writing in a given format and keeping everything in a given
+	 * folder (e.g. so a simulation doesn't touch the real business files)
+	 */
+	public Comms(Format format, String folder) {
+		// Make sure the folder ends in a separator
+		if (!folder.endsWith("/")) {
+			folder += "/";
 		}
 		
-		order.setID(i); // Set the ID of the order to i
-
-		return path;
+		this.orderFolder = folder + "Orders/";
+		this.userFolder = folder + "Users/";
+		this.stockFolder = folder + "Stock/";
+		
+		this.format = format;
+		this.journal = new OrderJournal(orderFolder, format == Format.BINARY);
+		this.fileWriter = new AtomicFileWriter();
+		this.orderListeners = new CopyOnWriteArrayList<>();
 	}
 	
 	/*
-	 * Synchronized method to send an order from ClientApplication
+	 * Method to add a listener to be told whenever an order's status changes or it's removed
 	 */
-	public synchronized void sendUserOrder(Order order) {
-		// Create output streams
-		OutputStream output = null;
-		ObjectOutputStream objectOutput = null;
+	public void addOrderListener(OrderListener listener) {
+		orderListeners.add(listener);
+	}
+	
+	/*
+	 * Method to remove an order listener
+	 */
+	public void removeOrderListener(OrderListener listener) {
+		orderListeners.remove(listener);
+	}
+	
+	/*
+	 * Synchronized ethod to check if a path currently exists
+	 */
+	public synchronized boolean checkPathExists(String path) {
+		// Create a file using that path
+		File file = new File(path);
 		
+		return file.exists();
+	}
+	
+	/*
+	 * Synchronized method to send an order from ClientApplication. Returns false if it couldn't be sent.
+	 */
+	public synchronized boolean sendUserOrder(Order order) {
 		// Create the order directory if it doesn't exist already
 		makeOrderDir();
 		
-		// Determine the save path
-		String path = determineOrderPath(order);
-		
 		try {
-			// Initialise output streams for that path
-			output = new FileOutputStream(path);
-			objectOutput = new ObjectOutputStream(output);
-			
-			// Write the order to the stream
-			objectOutput.writeObject(order);
-			objectOutput.flush();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			// Append it to the journal (this also sets its ID)
+			journal.submit(order);
+			return true;
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			// Try and close the streams
-			try {
-				if (objectOutput != null) {
-					objectOutput.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				if (output != null) {
-					output.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+			return false;
 		}
 	}
 	
 	/*
-	 * Method to get the path of the first unhandled order
+	 * Synchronized method to receive every order that hasn't been received yet, oldest first
 	 */
-	public String getNewOrderPath(int i) {
-		// Create a file object of the ORDER_FOLDER and store an array of all files in it
-		File orderFolder = new File(ORDER_FOLDER);
-		String[] orders = orderFolder.list();
+	public synchronized ArrayList<Order> receiveNewOrders() {
+		// Get every order still SUBMITTED (only reads what's new in the journal)
+		ArrayList<Order> newOrders = journal.getSubmitted();
 		
-		// If there's no orders at all return null
-		if (orders.length == 0) {
-			return null;
+		// Update their statuses to received so we don't get them again
+		for (Order order : newOrders) {
+			updateOrderStatus(order, Order.Status.RECEIVED);
 		}
 		
-		// If the path doesn't exist return null
-		String path = ORDER_FOLDER + "Order" + i + ".txt";
-		if (!checkPathExists(path)) {
-			return null;
-		}
-		
-		// Otherwise return path
-		return path;
+		return newOrders;
 	}
 	
 	/*
-	 * Synchronized method to receive a new order
+	 * Method to receive new orders, waiting up to timeout milliseconds for some to arrive if there
+	 * aren't any yet. Wakes as soon as the journal changes, and the timeout means we still check
+	 * regularly if the file system doesn't tell us about a change.
 	 */
-	public synchronized Order receiveNewOrder(int i) {
-		// Create input streams
-		InputStream input = null;
-		ObjectInputStream objectInput = null;
-		
-		// Get the path from the ID supplied
-		String path = getNewOrderPath(i);
-		// If that path is null return null
-		if (path == null) {
-			return null;
+	public ArrayList<Order> awaitNewOrders(long timeout) {
+		// If there's anything already waiting return it straight away
+		ArrayList<Order> newOrders = receiveNewOrders();
+		if (!newOrders.isEmpty()) {
+			return newOrders;
 		}
 		
 		try {
-			// Initialise the input streams at the path specified
-			input = new FileInputStream(path);
-			objectInput = new ObjectInputStream(input);
-			
-			// Read in the order
-			Order order = (Order) objectInput.readObject();
+			// Wait for something in the order folder to change (without holding our lock)
+			WatchKey key = getOrderWatcher().poll(timeout, TimeUnit.MILLISECONDS);
 			
-			// If the status of that order is not submitted then recursively call ourselves with the next ID along
-			if (order.getStatus() != Order.Status.SUBMITTED) {
-				return receiveNewOrder(i + 1);
-			} else {
-				// Otherwise update status to received and return the order
-				updateOrderStatus(order, Order.Status.RECEIVED);
-				return order;
+			// Clear the events and re-arm the key, we only care that something changed
+			if (key != null) {
+				key.pollEvents();
+				key.reset();
 			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (EOFException e) {
-			// Nothing needs to be done here (readObject should return null not throw an exception...)
-	    } catch (IOException e) {
-			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
+		} catch (IOException e) {
+			// Couldn't watch the folder so just wait out the timeout instead
 			e.printStackTrace();
-		} finally {
-			// Try and close the streams
-			try {
-				if (objectInput != null) {
-					objectInput.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
 			
 			try {
-				if (input != null) {
-					input.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+				Thread.sleep(timeout);
+			} catch (InterruptedException e1) {
+				Thread.currentThread().interrupt();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 		
-		return null;
+		return receiveNewOrders();
 	}
 	
 	/*
-	 * Method to return the path of an order
+	 * Synchronized method to return a WatchService watching the order folder, creating it the first time
 	 */
-	public String getPathFromID(Order order) {
-		int ID = order.getID();
-		return ORDER_FOLDER + "Order" + ID + ".txt";
+	private synchronized WatchService getOrderWatcher() throws IOException {
+		if (orderWatcher == null) {
+			makeOrderDir();
+			
+			orderWatcher = FileSystems.getDefault().newWatchService();
+			Paths.get(orderFolder).register(orderWatcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		
+		return orderWatcher;
 	}
 	
 	/*
@@ -206,42 +225,12 @@ public class Comms {
 	public void updateOrderStatus(Order order, Order.Status status) {
 		// Set the status of the order
 		order.setStatus(status);
-		// Get the order's path
-		String path = getPathFromID(order);
 		
-		// Create the output streams
-		OutputStream output = null;
-		ObjectOutputStream objectOutput = null;
+		// Record the change in the journal (written in the background with other changes)
+		journal.updateStatus(order);
 		
-		try {
-			// Initialise the streams at the path specified
-			output = new FileOutputStream(path);
-			objectOutput = new ObjectOutputStream(output);
-			
-			// Write the order
-			objectOutput.writeObject(order);
-			objectOutput.flush();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			// Try and close the streams
-			try {
-				if (objectOutput != null) {
-					objectOutput.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				if (output != null) {
-					output.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+		for (OrderListener listener : orderListeners) {
+			listener.orderStatusChanged(order);
 		}
 	}
 	
@@ -249,123 +238,224 @@ public class Comms {
 	 * Method to remove (delete) an order
 	 */
 	public void removeOrder(Order order) {
-		// Get the path and supply it to a File
-		String path = getPathFromID(order);
-		File file = new File(path);
+		journal.remove(order);
+		
+		for (OrderListener listener : orderListeners) {
+			listener.orderRemoved(order);
+		}
+	}
+	
+	/*
+	 * Method to write any order changes waiting in the background straight away
+	 */
+	public void flushOrders() {
+		journal.flush();
+	}
+	
+	/*
+	 * Method to get the order journal ready when the BusinessApplication starts - imports any orders
+	 * saved the old way (one file per order) and compacts the journal
+	 */
+	public void prepareOrderJournal() {
+		makeOrderDir();
 		
 		try {
-			/*
-			 * Using System.gc() because without it file.delete() doesn't work. God knows why - a Java bug apparently.
-			 * See: http://stackoverflow.com/questions/991489/i-cant-delete-a-file-in-java
-			 */
-			System.gc();
+			// If there's no journal yet bring in any old order files
+			if (!journal.exists()) {
+				ArrayList<Order> legacyOrders = readLegacyOrders();
+				
+				if (!legacyOrders.isEmpty()) {
+					journal.importOrders(legacyOrders);
+				}
+			}
 			
-			// Delete the file
-			file.delete();
-		} catch (Exception e) {
-			System.err.println("Error deleting order: Order" + order.getID());
+			// Drop old status changes and removed orders so startup stays a short read
+			journal.compact();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 	
 	/*
-	 * Method to return an ArrayList of orders submitted by a specified user
+	 * Method to rewrite everything saved in our format - the stock, suppliers, users and order journal.
+	 * The old files are left where they are but the rewritten ones are newer so are read instead.
 	 */
-	public ArrayList<Order> getUsersOrders(String username) {
-		// Create an ArrayList containing every order
-		ArrayList<Order> orders = getAllOrders();
-		
-		// If there are actually orders
-		if (orders != null) {
-			// Iterate over the ArrayList
-			Iterator<Order> orderIt = orders.iterator();
-			while (orderIt.hasNext()) {
-				Order current = orderIt.next();
-				
-				// If the user who submitted that order is not our user, remove it
-				if (!current.getUser().getUsername().equals(username)) {
-					orderIt.remove();
+	public void migrateFiles() {
+		// Ingredients first so recipes can be linked to them
+		IngredientStock ingredientStock = receiveIngredientStock();
+		if (ingredientStock != null) {
+			saveIngredientStock(ingredientStock);
+		}
+		
+		SushiStock sushiStock = receiveSushiStock(ingredientStock);
+		if (sushiStock != null) {
+			saveSushiStock(sushiStock);
+		}
+		
+		ArrayList<Supplier> suppliers = receiveSuppliers();
+		if (suppliers != null) {
+			saveSuppliers(suppliers);
+		}
+		
+		// Rewrite every user (by name, as each might have been saved in either format)
+		String[] files = new File(userFolder).list();
+		if (files != null) {
+			TreeSet<String> usernames = new TreeSet<>();
+			for (String name : files) {
+				if (name.endsWith(".txt") || name.endsWith(".bin")) {
+					usernames.add(name.substring(0, name.length() - 4));
+				}
+			}
+			
+			for (String username : usernames) {
+				User user = receiveUser(username);
+				if (user != null) {
+					writeUser(user);
 				}
 			}
 		}
 		
-		// Return the trimmed ArrayList
-		return orders;
+		// Compacting rewrites every order in our format too
+		prepareOrderJournal();
+	}
+	
+	/*
+	 * Method to return an ArrayList of orders submitted by a specified user
+	 */
+	public ArrayList<Order> getUsersOrders(String username) {
+		// Only that user's records are read, using their index
+		return journal.getUsersOrders(username);
+	}
+	
+	/*
+	 * Method to return a page of the orders submitted by a specified user, newest first. Pass
+	 * OrderPage.NEWEST as the cursor for the first page and the last page's cursor for the next.
+	 */
+	public OrderPage getUsersOrdersPage(String username, int cursor, int size) {
+		return journal.getUsersOrdersPage(username, cursor, size);
 	}
 	
 	/*
 	 * Method to return an ArrayList of all orders
 	 */
 	public ArrayList<Order> getAllOrders() {
+		return journal.getOrders();
+	}
+	
+	/*
+	 * Method to read in orders saved the old way, one serialized OrderN.txt file per order
+	 */
+	private ArrayList<Order> readLegacyOrders() {
 		// Initialise the ArrayList
 		ArrayList<Order> orders = new ArrayList<>();
 		
 		// Create a File of the order folder
-		File folder = new File(ORDER_FOLDER);
+		File folder = new File(orderFolder);
 		
 		// Create the input streams
 		InputStream input = null;
 		ObjectInputStream objectInput = null;
 		
-		// If the folder doesn't exist or there are no orders in it return the empty list
-		if (!folder.exists() || folder.listFiles().length == 0) {
+		// If the folder doesn't exist return the empty list
+		if (!folder.exists()) {
 			return orders;
-		} else {
-			// Otherwise loop over each file in the order folder
-			for (File file : folder.listFiles()) {
+		}
+		
+		// Otherwise loop over each old order file in the order folder
+		for (File file : folder.listFiles()) {
+			if (!file.getName().matches("Order[0-9]+\\.txt")) {
+				continue;
+			}
+			
+			try {
+				// Initialise new streams for that file
+				input = new FileInputStream(file);
+				objectInput = new ObjectInputStream(input);
+				
+				// Read in the order
+				Order order = (Order) objectInput.readObject();
+				
+				// Add the order to the ArrayList
+				orders.add(order);
+			} catch (FileNotFoundException e) {
+				e.printStackTrace();
+			} catch (IOException e) {
+				e.printStackTrace();
+			} catch (ClassNotFoundException e) {
+				e.printStackTrace();
+			} finally {
+				// Try and close the streams
 				try {
-					// Initialise new streams for that file
-					input = new FileInputStream(file);
-					objectInput = new ObjectInputStream(input);
-					
-					// Read in the order
-					Order order = (Order) objectInput.readObject();
-					
-					// Add the order to the ArrayList
-					orders.add(order);
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				} catch (IOException e) {
-					e.printStackTrace();
-				} catch (ClassNotFoundException e) {
-					e.printStackTrace();
-				} finally {
-					// Try and close the streams
-					try {
-						if (objectInput != null) {
-							objectInput.close();
-						}
-					} catch (Exception e) {
-						e.printStackTrace();
+					if (objectInput != null) {
+						objectInput.close();
 					}
-					
-					try {
-						if (input != null) {
-							input.close();
-						}
-					} catch (Exception e) {
-						e.printStackTrace();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				
+				try {
+					if (input != null) {
+						input.close();
 					}
+				} catch (Exception e) {
+					e.printStackTrace();
 				}
 			}
 		}
 		
+		// Keep them in ID order so the journal is too
+		orders.sort((first, second) -> Integer.compare(first.getID(), second.getID()));
+		
 		// Return the ArrayList
 		return orders;
 	}
 	
+	/*
+	 * Method to return whichever of the serialized (.txt) and binary (.bin) versions of a file was
+	 * saved most recently, or null if neither exists
+	 */
+	private File newestFile(String path) {
+		File serialized = new File(path + ".txt");
+		File binary = new File(path + ".bin");
+		
+		if (!binary.exists()) {
+			return serialized.exists() ? serialized : null;
+		}
+		
+		if (serialized.exists() && serialized.lastModified() > binary.lastModified()) {
+			return serialized;
+		}
+		
+		return binary;
+	}
+	
+	/*
+	 * Method to check whether a file found by newestFile is in the binary format
+	 */
+	private boolean isBinary(File file) {
+		return file.getName().endsWith(".bin");
+	}
+	
+	/*
+	 * Method to open a buffered binary input stream from a file
+	 */
+	private DataInputStream openBinaryInput(File file) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+	}
+	
 	/*
 	 * Method to make the order folder
 	 */
 	public void makeOrderDir() {
-		File dir = new File(ORDER_FOLDER);
-		dir.mkdir();
+		File dir = new File(orderFolder);
+		dir.mkdirs();
 	}
 	
 	/*
 	 * Method to make the stock folder
 	 */
 	public void makeStockDir() {
-		File file = new File(STOCK_FOLDER);
+		File file = new File(stockFolder);
 		file.mkdirs();
 	}
 	
@@ -373,7 +463,7 @@ public class Comms {
 	 * Method to make the user folder
 	 */
 	public void makeUserDir() {
-		File file = new File(USER_FOLDER);
+		File file = new File(userFolder);
 		file.mkdirs();
 	}
 	
@@ -381,42 +471,18 @@ public class Comms {
 	 * Method to save a SushiStock
 	 */
 	public synchronized void saveSushiStock(SushiStock stock) {
-		// Create the output streams
-		OutputStream output = null;
-		ObjectOutputStream objectOutput = null;
-		
 		// Make the stock folder if it doesn't exist already
 		makeStockDir();
 		
 		try {
-			// Initialise the output streams for the path
-			output = new FileOutputStream(STOCK_FOLDER + "SushiStock.txt");
-			objectOutput = new ObjectOutputStream(output);
-			
-			// Write out the stock object
-			objectOutput.writeObject(stock);
-			objectOutput.flush();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			// Write it with the binary codec if that's the chosen format
+			if (format == Format.BINARY) {
+				fileWriter.writeBinary(stockFolder + "SushiStock.bin", binaryOutput -> BinaryCodec.writeSushiStock(binaryOutput, stock));
+			} else {
+				fileWriter.writeObject(stockFolder + "SushiStock.txt", stock);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			// Try and close the streams
-			try {
-				if (objectOutput != null) {
-					objectOutput.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				if (output != null) {
-					output.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
 		}
 	}
 	
@@ -424,16 +490,34 @@ public class Comms {
 	 * Method to receive SushiStock
 	 */
 	public SushiStock receiveSushiStock() {
+		return receiveSushiStock(null);
+	}
+	
+	/*
+	 * Method to receive SushiStock, linking recipes to the ingredients in an IngredientStock (only
+	 * possible if it was saved in the binary format)
+	 */
+	public SushiStock receiveSushiStock(IngredientStock ingredientStock) {
 		// Create the input streams
 		InputStream input = null;
 		ObjectInputStream objectInput = null;
 		
 		// Check if it exists - if not return null
-		File file = new File(STOCK_FOLDER + "SushiStock.txt");
-		if (!file.exists()) {
+		File file = newestFile(stockFolder + "SushiStock");
+		if (file == null) {
 			return null;
 		}
 		
+		// Read it with the binary codec if it was written that way
+		if (isBinary(file)) {
+			try (DataInputStream binaryInput = openBinaryInput(file)) {
+				return BinaryCodec.readSushiStock(binaryInput, ingredientStock);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		
 		try {
 			// Initialise the input stream
 			input = new FileInputStream(file);
@@ -474,46 +558,90 @@ public class Comms {
 	}
 	
 	/*
-	 * Method to save an IngredientStock
+	 * Method to save the recent menu changes for clients to pick up (always binary, it's new)
 	 */
-	public void saveIngredientStock(IngredientStock stock) {
-		// Create the output streams
-		OutputStream output = null;
-		ObjectOutputStream objectOutput = null;
-		
+	public void saveMenuChanges(MenuUpdate changes) {
 		// Make the stock folder if it doesn't exist already
 		makeStockDir();
 		
 		try {
-			// Initialise output streams
-			output = new FileOutputStream(STOCK_FOLDER + "IngredientStock.txt");
-			objectOutput = new ObjectOutputStream(output);
+			fileWriter.writeBinary(stockFolder + "MenuChanges.bin", binaryOutput -> BinaryCodec.writeMenuChangesFile(binaryOutput, changes));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * Method to return what a client at a menu version needs to be up to date - just the changes if
+	 * the saved ones go back far enough, otherwise the whole SushiStock (null if neither can be read)
+	 */
+	public MenuUpdate receiveMenuUpdate(long epoch, long version) {
+		File file = new File(stockFolder + "MenuChanges.bin");
+		
+		// Nothing is publishing changes, so fall back to the whole stock whenever its file changes
+		if (!file.exists()) {
+			File stockFile = newestFile(stockFolder + "SushiStock");
+			if (stockFile == null) {
+				return null;
+			}
 			
-			// Write the IngredientStock out
-			objectOutput.writeObject(stock);
+			long modified = stockFile.lastModified();
+			if (modified == epoch) {
+				return new MenuUpdate(epoch, version, version, new ArrayList<>());
+			}
 			
-			objectOutput.flush();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			SushiStock stock = receiveSushiStock();
+			return stock == null ? null : new MenuUpdate(modified, 0, stock);
+		}
+		
+		MenuUpdate changes;
+		try (DataInputStream binaryInput = openBinaryInput(file)) {
+			changes = BinaryCodec.readMenuChangesFile(binaryInput);
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			// Try and close the streams
-			try {
-				if (objectOutput != null) {
-					objectOutput.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+			return null;
+		}
+		
+		// Same run of the business and the changes go back far enough
+		if (changes.getEpoch() == epoch && version >= changes.getSince()) {
+			return changes.changesAfter(version);
+		}
+		
+		// Otherwise start again from the whole stock (saved no earlier than the changes we just read)
+		SushiStock stock = receiveSushiStock();
+		return stock == null ? null : new MenuUpdate(changes.getEpoch(), changes.getVersion(), stock);
+	}
+	
+	/*
+	 * Method to wait until the menu has changed since a version and return what changed
+	 */
+	public MenuUpdate awaitMenuUpdate(long epoch, long version) throws InterruptedException {
+		while (true) {
+			MenuUpdate update = receiveMenuUpdate(epoch, version);
+			if (update != null && !update.isEmpty()) {
+				return update;
 			}
 			
-			try {
-				if (output != null) {
-					output.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+			Thread.sleep(MENU_POLL_INTERVAL);
+		}
+	}
+	
+	/*
+	 * Method to save an IngredientStock
+	 */
+	public void saveIngredientStock(IngredientStock stock) {
+		// Make the stock folder if it doesn't exist already
+		makeStockDir();
+		
+		try {
+			// Write it with the binary codec if that's the chosen format
+			if (format == Format.BINARY) {
+				fileWriter.writeBinary(stockFolder + "IngredientStock.bin", binaryOutput -> BinaryCodec.writeIngredientStock(binaryOutput, stock));
+			} else {
+				fileWriter.writeObject(stockFolder + "IngredientStock.txt", stock);
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 	
@@ -526,11 +654,21 @@ public class Comms {
 		ObjectInputStream objectInput = null;
 		
 		// If the file doesn't exist already return null
-		File file = new File(STOCK_FOLDER + "IngredientStock.txt");
-		if (!file.exists()) {
+		File file = newestFile(stockFolder + "IngredientStock");
+		if (file == null) {
 			return null;
 		}
 		
+		// Read it with the binary codec if it was written that way
+		if (isBinary(file)) {
+			try (DataInputStream binaryInput = openBinaryInput(file)) {
+				return BinaryCodec.readIngredientStock(binaryInput);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		
 		try {
 			// Initialise the input streams
 			input = new FileInputStream(file);
@@ -574,43 +712,18 @@ public class Comms {
 	 * Method to save an ArrayList of Suppliers
 	 */
 	public void saveSuppliers(ArrayList<Supplier> suppliers) {
-		// Create the output streams
-		OutputStream output = null;
-		ObjectOutputStream objectOutput = null;
-		
 		// Make the stock folder if it doesn't exist already
 		makeStockDir();
 		
 		try {
-			// Initialise the output streams
-			output = new FileOutputStream(STOCK_FOLDER + "Suppliers.txt");
-			objectOutput = new ObjectOutputStream(output);
-			
-			// Write out the ArrayList
-			objectOutput.writeObject(suppliers);
-			
-			objectOutput.flush();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			// Write it with the binary codec if that's the chosen format
+			if (format == Format.BINARY) {
+				fileWriter.writeBinary(stockFolder + "Suppliers.bin", binaryOutput -> BinaryCodec.writeSuppliers(binaryOutput, suppliers));
+			} else {
+				fileWriter.writeObject(stockFolder + "Suppliers.txt", suppliers);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			// Try and close the streams
-			try {
-				if (objectOutput != null) {
-					objectOutput.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				if (output != null) {
-					output.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
 		}
 	}
 	
@@ -622,11 +735,21 @@ public class Comms {
 		InputStream input = null;
 		ObjectInputStream objectInput = null;
 		
-		// Create a file object using the path
-		File file = new File(STOCK_FOLDER + "Suppliers.txt");
+		// Find the newest file saved
+		File file = newestFile(stockFolder + "Suppliers");
+		
+		// Read it with the binary codec if it was written that way
+		if (file != null && isBinary(file)) {
+			try (DataInputStream binaryInput = openBinaryInput(file)) {
+				return BinaryCodec.readSuppliers(binaryInput);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
 		
 		// If it exists..
-		if (file.exists()) {
+		if (file != null) {
 			try {
 				// Initialise the input streams
 				input = new FileInputStream(file);
@@ -675,51 +798,48 @@ public class Comms {
 		String username = user.getUsername();
 		
 		// If that User already exists return false
-		if (checkPathExists(USER_FOLDER + username + ".txt")) {
+		if (checkPathExists(userFolder + username + ".txt") || checkPathExists(userFolder + username + ".bin")) {
 			return false;
 		}
 		
-		// Create the output streams
-		OutputStream output = null;
-		ObjectOutputStream objectOutput = null;
+		writeUser(user);
+		
+		// Return true if successfully saved
+		return true;
+	}
+	
+	/*
+	 * Method to return a User if their password matches (null if it doesn't or they don't exist)
+	 */
+	public User login(String username, String password) {
+		User user = receiveUser(username);
+		
+		if (user != null && user.getPassword() != null && user.getPassword().equals(password)) {
+			return user;
+		}
+		
+		return null;
+	}
+	
+	/*
+	 * Method to write a User out, replacing any saved in the same format
+	 */
+	private void writeUser(User user) {
+		String username = user.getUsername();
 		
 		// Create the user folder if it doesn't already exist
 		makeUserDir();
 		
 		try {
-			// Initialise the output streams
-			output = new FileOutputStream(USER_FOLDER + username + ".txt");
-			objectOutput = new ObjectOutputStream(output);
-			
-			// Write out the User
-			objectOutput.writeObject(user);
-			
-			objectOutput.flush();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			// Write it with the binary codec if that's the chosen format
+			if (format == Format.BINARY) {
+				fileWriter.writeBinary(userFolder + username + ".bin", binaryOutput -> BinaryCodec.writeUserFile(binaryOutput, user));
+			} else {
+				fileWriter.writeObject(userFolder + username + ".txt", user);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
-		} finally {
-			// Try and close the streams
-			try {
-				if (objectOutput != null) {
-					objectOutput.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				if (output != null) {
-					output.close();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
 		}
-		
-		// Return true if successfully saved
-		return true;
 	}
 	
 	/*
@@ -730,9 +850,21 @@ public class Comms {
 		InputStream input = null;
 		ObjectInputStream objectInput = null;
 		
+		// Find the newest file saved
+		File file = newestFile(userFolder + username);
+		
+		// Read it with the binary codec if it was written that way
+		if (file != null && isBinary(file)) {
+			try (DataInputStream binaryInput = openBinaryInput(file)) {
+				return BinaryCodec.readUserFile(binaryInput);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		
 		// Check if the file exists
-		File file = new File(USER_FOLDER + username + ".txt");
-		if (file.exists()) {
+		if (file != null) {
 			try {
 				// Initialise the input sterams
 				input = new FileInputStream(file);
@@ -776,7 +908,7 @@ public class Comms {
 	/* Wrote this block to save KitchenStaff and Drones but had to change approach to storing them
 	 * (storing the threads rather than the instances.. bad I know) so now this is defunct. Leaving it
 	 * here in case I go back and change how I'm storing them.
-	  
+	
 	  public void saveKitchenStaff(ArrayList<KitchenStaff> staff) {
 		OutputStream output = null;
 		ObjectOutputStream objectOutput = null;
@@ -926,5 +1058,5 @@ public class Comms {
 	}
 	
 	*/
-	
+
 }
\ No newline at end of file
@@ -0,0 +1,698 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+ * Class to serve ClientApplications over TCP instead of through the shared files (see SocketComms).
+ * One thread handles every connection with a non-blocking selector. Requests are answered from the
+ * BusinessEngine - the menu straight from its SushiStock, everything else through its Comms, so
+ * orders still go through the journal and the OrderReceiver like file based ones.
+ *
+ * Menu subscriptions are answered straight away if the menu has changed since the client's version,
+ * otherwise they're held until it does (or SUBSCRIPTION_TIMEOUT passes, when an empty update is
+ * sent). A connection shouldn't send anything else while it has a subscription waiting.
+ *
+ * Anything that waits for the disk or the journal (orders, order history, logging in and registering)
+ * is handed to a separate worker thread so it doesn't hold up every other client. Nothing more is
+ * read from the client until that's been answered, so its responses still come back in order.
+ * A request that can't be carried out is answered with ERROR, and if it broke something other than
+ * the I/O (a bad request we didn't catch, or a bug) the connection is closed once that's been sent.
+ *
+ * A connection belongs to whoever last logged in on it, and only their orders can be sent or looked
+ * up on it - anyone else's are refused with FAILED.
+ *
+ * Requests are kept small (MAX_REQUEST) so nobody can make us hold on to much for them, and a client
+ * sending a bigger one is dropped. Responses can be much bigger (a user's whole order history).
+ *
+ * Every message is a frame: [int length][payload]
+ * Request payload: [byte type][type specific data, written with BinaryCodec]
+ * Response payload: [byte result][type specific data, or a message if result is ERROR]
+ */
+
+public class CommsServer implements Runnable {
+	
+	public static final int DEFAULT_PORT = 7070;
+	public static final int MAX_REQUEST = 8 * 1024; // Largest request we'll read (plenty for an order)
+	public static final int MAX_FRAME = 16 * 1024 * 1024; // Largest response a client will read
+	public static final long SUBSCRIPTION_TIMEOUT = 30000; // Longest a menu subscription is held
+	public static final int MAX_PAGE_SIZE = 500; // Most orders sent in one page
+	
+	// Types of request
+	public static final byte SEND_ORDER = 1;
+	public static final byte GET_MENU = 2;
+	public static final byte GET_USER_ORDERS = 3;
+	public static final byte LOGIN = 4;
+	public static final byte REGISTER = 5;
+	public static final byte SUBSCRIBE_MENU = 6;
+	public static final byte GET_USER_ORDERS_PAGE = 7;
+	
+	// Results of a request
+	public static final byte OK = 0;
+	public static final byte FAILED = 1; // Understood but refused (wrong password, user already exists, not that user's connection)
+	public static final byte ERROR = 2;
+	
+	private BusinessEngine engine;
+	private int port;
+	
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private Thread thread;
+	private Thread workerThread;
+	private volatile boolean running;
+	
+	private LinkedBlockingQueue<PendingRequest> requests; // Requests waiting for the worker thread
+	private ConcurrentLinkedQueue<PendingRequest> doneRequests; // Requests carried out and waiting to be answered
+	
+	private ArrayList<Subscription> subscriptions; // Menu subscriptions waiting for a change (selector thread only)
+	private volatile boolean menuChanged; // Set when the menu changes so waiting subscriptions get answered
+	private Runnable menuSubscriber; // Told by the MenuPublisher when the menu changes
+	
+	/*
+	 * Constructor to create a new CommsServer for a BusinessEngine
+	 */
+	public CommsServer(BusinessEngine engine, int port) {
+		this.engine = engine;
+		this.port = port;
+		this.running = false;
+		
+		this.requests = new LinkedBlockingQueue<>();
+		this.doneRequests = new ConcurrentLinkedQueue<>();
+		
+		this.subscriptions = new ArrayList<>();
+		this.menuChanged = false;
+		this.menuSubscriber = () -> {
+			menuChanged = true;
+			selector.wakeup();
+		};
+	}
+	
+	/*
+	 * Method to start listening for clients on the port
+	 */
+	public void start() throws IOException {
+		selector = Selector.open();
+		
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.bind(new InetSocketAddress(port));
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		
+		running = true;
+		engine.getMenuPublisher().addSubscriber(menuSubscriber);
+		
+		thread = new Thread(this, "CommsServer");
+		thread.start();
+		
+		workerThread = new Thread(new RequestWorker(), "CommsServer worker");
+		workerThread.start();
+	}
+	
+	/*
+	 * Method to stop listening and close every connection
+	 */
+	public void stop() {
+		running = false;
+		engine.getMenuPublisher().removeSubscriber(menuSubscriber);
+		
+		if (selector != null) {
+			selector.wakeup();
+		}
+		
+		// Let the worker thread finish what's already been queued, then stop
+		requests.add(PendingRequest.STOP);
+	}
+	
+	/*
+	 * Method to return the threads to wait for after stop()
+	 */
+	public ArrayList<Thread> getThreads() {
+		ArrayList<Thread> threads = new ArrayList<>();
+		if (thread != null) {
+			threads.add(thread);
+			threads.add(workerThread);
+		}
+		return threads;
+	}
+	
+	/*
+	 * Method run on Thread.start()
+	 */
+	public void run() {
+		try {
+			while (running) {
+				// Wake up now and then to time out subscriptions
+				selector.select(1000);
+				
+				Iterator<SelectionKey> keyIt = selector.selectedKeys().iterator();
+				while (keyIt.hasNext()) {
+					SelectionKey key = keyIt.next();
+					keyIt.remove();
+					
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							if (key.isReadable()) {
+								read(key);
+							}
+							if (key.isValid() && key.isWritable()) {
+								write(key);
+							}
+						}
+					} catch (IOException e) {
+						// Something went wrong with this client so drop it
+						close(key);
+					} catch (RuntimeException e) {
+						// Shouldn't happen, but only this client should suffer for it
+						e.printStackTrace();
+						close(key);
+					}
+				}
+				
+				answerRequests();
+				answerSubscriptions();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			// Close every connection and the server
+			for (SelectionKey key : selector.keys()) {
+				close(key);
+			}
+			
+			try {
+				selector.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/*
+	 * Method to accept a new client
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ, new Connection());
+	}
+	
+	/*
+	 * Method to read what's available from a client and answer any complete requests
+	 */
+	private void read(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+		
+		if (channel.read(connection.input) < 0) {
+			// Client has gone away
+			close(key);
+			return;
+		}
+		
+		handleFrames(key);
+	}
+	
+	/*
+	 * Method to answer every complete request read from a client, stopping if one has to be answered later
+	 */
+	private void handleFrames(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		
+		// Answer every complete frame we've got
+		connection.input.flip();
+		while (!connection.busy && !connection.closing && connection.input.remaining() >= 4) {
+			int length = connection.input.getInt(connection.input.position());
+			
+			if (length < 1 || length > MAX_REQUEST) {
+				throw new IOException("Bad frame length " + length);
+			}
+			
+			// Not all here yet - the buffer always has room for it so wait for more
+			if (connection.input.remaining() < 4 + length) {
+				break;
+			}
+			
+			connection.input.getInt();
+			byte[] request = new byte[length];
+			connection.input.get(request);
+			
+			// Held subscriptions and requests left to the worker thread are answered later
+			byte[] response = handle(key, request);
+			if (response != null) {
+				queueResponse(key, response);
+			}
+		}
+		connection.input.compact();
+		
+		// Stop reading while the worker thread has a request or the connection is closing
+		updateInterest(key);
+	}
+	
+	/*
+	 * Method to write as much of the waiting responses to a client as it'll take
+	 */
+	private void write(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+		
+		while (!connection.output.isEmpty()) {
+			ByteBuffer buffer = connection.output.peek();
+			channel.write(buffer);
+			
+			// Socket's full, try again when it's writable
+			if (buffer.hasRemaining()) {
+				return;
+			}
+			
+			connection.output.remove();
+		}
+		
+		// Everything's written, including the error it was closing for
+		if (connection.closing) {
+			close(key);
+			return;
+		}
+		
+		updateInterest(key);
+	}
+	
+	/*
+	 * Method to frame a response and queue it to be written to a client
+	 */
+	private void queueResponse(SelectionKey key, byte[] response) {
+		Connection connection = (Connection) key.attachment();
+		
+		ByteBuffer buffer = ByteBuffer.allocate(4 + response.length);
+		buffer.putInt(response.length);
+		buffer.put(response);
+		buffer.flip();
+		
+		connection.output.add(buffer);
+		updateInterest(key);
+	}
+	
+	/*
+	 * Method to only wait for requests when a client's ready for more and to write when there's something waiting
+	 */
+	private void updateInterest(SelectionKey key) {
+		Connection connection = (Connection) key.attachment();
+		
+		int ops = 0;
+		if (!connection.busy && !connection.closing) {
+			ops |= SelectionKey.OP_READ;
+		}
+		if (!connection.output.isEmpty()) {
+			ops |= SelectionKey.OP_WRITE;
+		}
+		
+		key.interestOps(ops);
+	}
+	
+	/*
+	 * Method to close a client's connection
+	 */
+	private void close(SelectionKey key) {
+		key.cancel();
+		
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * Method to answer the requests the worker thread has carried out and carry on with those clients
+	 */
+	private void answerRequests() {
+		PendingRequest pending;
+		while ((pending = doneRequests.poll()) != null) {
+			SelectionKey key = pending.key;
+			
+			// Client has gone away
+			if (!key.isValid()) {
+				continue;
+			}
+			
+			Connection connection = (Connection) key.attachment();
+			connection.busy = false;
+			connection.closing |= pending.failed;
+			queueResponse(key, pending.response);
+			
+			// The connection is now theirs
+			if (pending.loggedIn != null) {
+				connection.username = pending.loggedIn;
+			}
+			
+			// Answer anything the client sent meanwhile
+			try {
+				handleFrames(key);
+			} catch (IOException e) {
+				close(key);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				close(key);
+			}
+		}
+	}
+	
+	/*
+	 * Method to answer any subscriptions the menu has changed for, or that have waited long enough
+	 */
+	private void answerSubscriptions() {
+		// Clear the flag first so a change while we're answering isn't missed
+		boolean changed = menuChanged;
+		menuChanged = false;
+		
+		long now = System.currentTimeMillis();
+		
+		Iterator<Subscription> subscriptionIt = subscriptions.iterator();
+		while (subscriptionIt.hasNext()) {
+			Subscription subscription = subscriptionIt.next();
+			
+			// Client has gone away
+			if (!subscription.key.isValid()) {
+				subscriptionIt.remove();
+				continue;
+			}
+			
+			boolean expired = now >= subscription.deadline;
+			if (!changed && !expired) {
+				continue;
+			}
+			
+			MenuUpdate update = engine.getMenuPublisher().getUpdate(subscription.epoch, subscription.version);
+			if (update.isEmpty() && !expired) {
+				continue;
+			}
+			
+			subscriptionIt.remove();
+			queueResponse(subscription.key, menuResponse(update));
+		}
+	}
+	
+	/*
+	 * Method to build the response to a menu subscription
+	 */
+	private byte[] menuResponse(MenuUpdate update) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		
+		try {
+			output.writeByte(OK);
+			BinaryCodec.writeMenuUpdate(output, update);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/*
+	 * Method to carry out a request and return the response (null if it's a subscription being held)
+	 */
+	private byte[] handle(SelectionKey key, byte[] request) {
+		Connection connection = (Connection) key.attachment();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		
+		try {
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(request));
+			
+			switch (input.readByte()) {
+				case SEND_ORDER:
+				case GET_USER_ORDERS:
+				case GET_USER_ORDERS_PAGE:
+				case LOGIN:
+				case REGISTER: {
+					// These wait for the disk or the journal, so leave them to the worker thread rather
+					// than hold up every other client
+					connection.busy = true;
+					requests.add(new PendingRequest(key, request, connection.username));
+					return null;
+				}
+				case GET_MENU: {
+					output.writeByte(OK);
+					BinaryCodec.writeSushiStock(output, engine.getSushiStock());
+					break;
+				}
+				case SUBSCRIBE_MENU: {
+					long epoch = input.readLong();
+					long version = input.readLong();
+					MenuUpdate update = engine.getMenuPublisher().getUpdate(epoch, version);
+					
+					// Nothing new yet, hold on to it until there is
+					if (update.isEmpty()) {
+						subscriptions.add(new Subscription(key, epoch, version, System.currentTimeMillis() + SUBSCRIPTION_TIMEOUT));
+						return null;
+					}
+					
+					return menuResponse(update);
+				}
+				default:
+					throw new IOException("Unknown request type");
+			}
+		} catch (IOException e) {
+			// Send the error back instead
+			return errorResponse(e);
+		} catch (RuntimeException e) {
+			// Send the error back and drop the client once it's gone, but keep serving everyone else
+			e.printStackTrace();
+			connection.closing = true;
+			return errorResponse(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/*
+	 * Method to build the response to a request that couldn't be carried out
+	 */
+	private static byte[] errorResponse(Exception e) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		
+		try {
+			output.writeByte(ERROR);
+			output.writeUTF(String.valueOf(e.getMessage()));
+		} catch (IOException e1) {
+			e1.printStackTrace();
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/*
+	 * Method to carry out a request left to the worker thread and return the response
+	 */
+	private byte[] carryOut(PendingRequest pending) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(pending.request));
+		Comms comms = engine.getComms();
+		
+		switch (input.readByte()) {
+			case SEND_ORDER: {
+				Order order = BinaryCodec.readOrder(input);
+				order.setStatus(Order.Status.SUBMITTED);
+				
+				// Only the user logged in on this connection can order
+				if (!order.getUser().getUsername().equals(pending.username)) {
+					output.writeByte(FAILED);
+					break;
+				}
+				
+				// Submit it like a file based client would and send back its new ID
+				if (!comms.sendUserOrder(order)) {
+					throw new IOException("Order couldn't be journalled");
+				}
+				
+				output.writeByte(OK);
+				output.writeInt(order.getID());
+				break;
+			}
+			case GET_USER_ORDERS: {
+				String username = input.readUTF();
+				
+				// Only the user logged in on this connection can see their orders
+				if (!username.equals(pending.username)) {
+					output.writeByte(FAILED);
+					break;
+				}
+				
+				ArrayList<Order> orders = comms.getUsersOrders(username);
+				
+				output.writeByte(OK);
+				output.writeInt(orders.size());
+				for (Order order : orders) {
+					BinaryCodec.writeOrder(output, order);
+				}
+				break;
+			}
+			case GET_USER_ORDERS_PAGE: {
+				String username = input.readUTF();
+				int cursor = input.readInt();
+				int size = Math.max(1, Math.min(input.readInt(), MAX_PAGE_SIZE));
+				
+				if (!username.equals(pending.username)) {
+					output.writeByte(FAILED);
+					break;
+				}
+				
+				output.writeByte(OK);
+				BinaryCodec.writeOrderPage(output, comms.getUsersOrdersPage(username, cursor, size));
+				break;
+			}
+			case LOGIN: {
+				// Only send the user back (without their password) if the password matches
+				User user = comms.login(input.readUTF(), input.readUTF());
+				
+				if (user == null) {
+					output.writeByte(FAILED);
+				} else {
+					output.writeByte(OK);
+					BinaryCodec.writeUser(output, user, false);
+					pending.loggedIn = user.getUsername();
+				}
+				break;
+			}
+			case REGISTER: {
+				User user = BinaryCodec.readUser(input);
+				output.writeByte(comms.saveUser(user) ? OK : FAILED);
+				break;
+			}
+			default:
+				throw new IOException("Unknown request type");
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	public class RequestWorker implements Runnable {
+		/*
+		 * Runnable class to carry out the requests that wait for the disk or the journal, one at a time
+		 * in the order they arrived
+		 */
+		
+		/*
+		 * Method run on Thread.start()
+		 */
+		public void run() {
+			while (true) {
+				PendingRequest pending;
+				try {
+					pending = requests.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				
+				if (pending == PendingRequest.STOP) {
+					return;
+				}
+				
+				try {
+					pending.response = carryOut(pending);
+				} catch (IOException e) {
+					// Send the error back instead, the client can try again
+					pending.response = errorResponse(e);
+				} catch (RuntimeException e) {
+					// Send the error back and drop the client once it's gone, but keep serving everyone else
+					e.printStackTrace();
+					pending.response = errorResponse(e);
+					pending.failed = true;
+				}
+				
+				// Hand it back to the selector thread to send
+				doneRequests.add(pending);
+				selector.wakeup();
+			}
+		}
+	}
+	
+	/*
+	 * Class to hold what's been read from and is waiting to be written to a client
+	 */
+	private static class Connection {
+		
+		private ByteBuffer input = ByteBuffer.allocate(4 + MAX_REQUEST); // Bytes read but not yet handled
+		private LinkedList<ByteBuffer> output = new LinkedList<>(); // Responses still to write
+		private boolean busy = false; // Whether the worker thread has a request from this client
+		private boolean closing = false; // Whether to close once everything's written
+		private String username = null; // User logged in on this connection (null until someone does)
+	
+	}
+	
+	/*
+	 * Class to hold a request on its way to and back from the worker thread
+	 */
+	private static class PendingRequest {
+		
+		private static final PendingRequest STOP = new PendingRequest(null, null, null); // Tells the worker thread to stop
+		
+		private SelectionKey key; // Client that sent it
+		private byte[] request;
+		private String username; // User logged in on the connection when it was sent (null if nobody)
+		private byte[] response; // Set once it's been carried out
+		private boolean failed; // Whether to close the connection after answering
+		private String loggedIn; // Set if it was a successful login, for the selector thread to tie the connection to
+		
+		/*
+		 * Constructor to create a new PendingRequest
+		 */
+		private PendingRequest(SelectionKey key, byte[] request, String username) {
+			this.key = key;
+			this.request = request;
+			this.username = username;
+			this.loggedIn = null;
+			this.response = null;
+			this.failed = false;
+		}
+	
+	}
+	
+	/*
+	 * Class to hold a menu subscription waiting for a change
+	 */
+	private static class Subscription {
+		
+		private SelectionKey key; // Client waiting
+		private long epoch; // Epoch and version of the menu the client has
+		private long version;
+		private long deadline; // When to give up and send an empty update
+		
+		/*
+		 * Constructor to create a new Subscription
+		 */
+		private Subscription(SelectionKey key, long epoch, long version, long deadline) {
+			this.key = key;
+			this.epoch = epoch;
+			this.version = version;
+			this.deadline = deadline;
+		}
+	
+	}
+
+}
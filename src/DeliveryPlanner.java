@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/*
+ * Class to plan multi-stop delivery trips for Drones. Holds the distance between the shop and each
+ * postcode and between each pair of postcodes, picks which ready orders can share a trip and puts
+ * the stops in a short order (nearest neighbour then 2-opt). An order only joins a trip if no stop
+ * ends up more than MAX_DETOUR times further along the route than a direct trip there would be.
+ */
+
+public class DeliveryPlanner {
+	
+	public static final String SHOP = "SHOP"; // Where every trip starts and ends
+	private static final double MAX_DETOUR = 2.0; // Furthest a stop can be along a route compared to direct
+	
+	private HashMap<String, HashMap<String, Double>> distances; // Distance between each pair of places
+	
+	/*
+	 * Constructor to create a new DeliveryPlanner with the distances of the postcodes we deliver to
+	 */
+	public DeliveryPlanner() {
+		this.distances = new HashMap<>();
+		
+		// From the shop
+		setDistance(SHOP, "SO14", 50.0);
+		setDistance(SHOP, "SO15", 200.0);
+		setDistance(SHOP, "SO16", 150.0);
+		setDistance(SHOP, "SO17", 120.0);
+		setDistance(SHOP, "SO19", 70.0);
+		
+		// Between postcodes
+		setDistance("SO14", "SO15", 160.0);
+		setDistance("SO14", "SO16", 140.0);
+		setDistance("SO14", "SO17", 100.0);
+		setDistance("SO14", "SO19", 90.0);
+		setDistance("SO15", "SO16", 80.0);
+		setDistance("SO15", "SO17", 150.0);
+		setDistance("SO15", "SO19", 250.0);
+		setDistance("SO16", "SO17", 70.0);
+		setDistance("SO16", "SO19", 200.0);
+		setDistance("SO17", "SO19", 150.0);
+	}
+	
+	/*
+	 * Synchronized method to set the distance between two places (the same both ways)
+	 */
+	public synchronized void setDistance(String from, String to, double distance) {
+		if (!distances.containsKey(from)) {
+			distances.put(from, new HashMap<>());
+		}
+		if (!distances.containsKey(to)) {
+			distances.put(to, new HashMap<>());
+		}
+		
+		distances.get(from).put(to, distance);
+		distances.get(to).put(from, distance);
+	}
+	
+	/*
+	 * Synchronized method to return the distance between two places. A postcode we don't know is
+	 * treated as being at the shop, and two places without a distance are travelled between via the shop.
+	 */
+	public synchronized double getDistance(String from, String to) {
+		if (from.equals(to)) {
+			return 0.0;
+		}
+		
+		HashMap<String, Double> fromDistances = distances.get(from);
+		if (fromDistances != null && fromDistances.containsKey(to)) {
+			return fromDistances.get(to);
+		}
+		
+		// Go via the shop (unless one end is the shop, then it's an unknown postcode)
+		if (from.equals(SHOP) || to.equals(SHOP)) {
+			return 0.0;
+		}
+		
+		return getDistance(from, SHOP) + getDistance(SHOP, to);
+	}
+	
+	/*
+	 * Synchronized method to return every postcode we know the distance to
+	 */
+	public synchronized ArrayList<String> getPostcodes() {
+		ArrayList<String> postcodes = new ArrayList<>(distances.keySet());
+		postcodes.remove(SHOP);
+		Collections.sort(postcodes);
+		
+		return postcodes;
+	}
+	
+	/*
+	 * Method to choose which waiting orders go on the same trip as an order. Orders to postcodes
+	 * already on the route are tried first, then the nearest others, until capacity orders are chosen.
+	 */
+	public ArrayList<Order> planTrip(Order first, ArrayList<Order> waiting, int capacity) {
+		ArrayList<Order> trip = new ArrayList<>();
+		trip.add(first);
+		
+		ArrayList<Order> candidates = new ArrayList<>(waiting);
+		
+		while (trip.size() < capacity && !candidates.isEmpty()) {
+			// Find the candidate closest to a stop already on the route (oldest first when equal)
+			Order nearest = null;
+			double nearestDistance = Double.MAX_VALUE;
+			
+			for (Order candidate : candidates) {
+				double distance = distanceToTrip(candidate, trip);
+				if (distance < nearestDistance) {
+					nearest = candidate;
+					nearestDistance = distance;
+				}
+			}
+			
+			candidates.remove(nearest);
+			
+			// Only keep it if nobody on the trip waits too long because of it
+			trip.add(nearest);
+			if (!withinDetour(planStops(trip))) {
+				trip.remove(trip.size() - 1);
+			}
+		}
+		
+		return trip;
+	}
+	
+	/*
+	 * Method to put the postcodes of a trip's orders in the order to visit them
+	 */
+	public ArrayList<String> planStops(ArrayList<Order> orders) {
+		// Each postcode is only visited once
+		LinkedHashSet<String> postcodes = new LinkedHashSet<>();
+		for (Order order : orders) {
+			postcodes.add(getPostcode(order));
+		}
+		
+		// Start with nearest neighbour from the shop
+		ArrayList<String> stops = new ArrayList<>();
+		String current = SHOP;
+		
+		while (!postcodes.isEmpty()) {
+			String nearest = null;
+			for (String postcode : postcodes) {
+				if (nearest == null || getDistance(current, postcode) < getDistance(current, nearest)) {
+					nearest = postcode;
+				}
+			}
+			
+			postcodes.remove(nearest);
+			stops.add(nearest);
+			current = nearest;
+		}
+		
+		// Then improve it with 2-opt until reversing a section no longer shortens the round trip
+		boolean improved = true;
+		while (improved) {
+			improved = false;
+			
+			for (int i = 0; i < stops.size() - 1; i++) {
+				for (int j = i + 1; j < stops.size(); j++) {
+					String before = i == 0 ? SHOP : stops.get(i - 1);
+					String after = j == stops.size() - 1 ? SHOP : stops.get(j + 1);
+					
+					double currentLength = getDistance(before, stops.get(i)) + getDistance(stops.get(j), after);
+					double reversedLength = getDistance(before, stops.get(j)) + getDistance(stops.get(i), after);
+					
+					if (reversedLength < currentLength - 1e-9) {
+						reverse(stops, i, j);
+						improved = true;
+					}
+				}
+			}
+		}
+		
+		return stops;
+	}
+	
+	/*
+	 * Method to return the postcode an order is going to
+	 */
+	public String getPostcode(Order order) {
+		String postcode = order.getUser().getPostcode();
+		return postcode == null ? SHOP : postcode;
+	}
+	
+	/*
+	 * Method to return how far an order's postcode is from the nearest stop already on a trip
+	 */
+	private double distanceToTrip(Order order, ArrayList<Order> trip) {
+		double nearest = Double.MAX_VALUE;
+		
+		for (Order onTrip : trip) {
+			nearest = Math.min(nearest, getDistance(getPostcode(onTrip), getPostcode(order)));
+		}
+		
+		return nearest;
+	}
+	
+	/*
+	 * Method to check every stop is reached within MAX_DETOUR times its direct distance
+	 */
+	private boolean withinDetour(ArrayList<String> stops) {
+		double travelled = 0.0;
+		String current = SHOP;
+		
+		for (String stop : stops) {
+			travelled += getDistance(current, stop);
+			current = stop;
+			
+			if (travelled > MAX_DETOUR * getDistance(SHOP, stop) + 1e-9) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Method to reverse the stops between two positions (inclusive)
+	 */
+	private void reverse(ArrayList<String> stops, int i, int j) {
+		while (i < j) {
+			String temp = stops.get(i);
+			stops.set(i, stops.get(j));
+			stops.set(j, temp);
+			i++;
+			j--;
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Class to keep track of which parts of the business state have changed since they were last saved,
+ * so the StateSaver only writes what's changed and nothing at all while the business is idle.
+ * Listens to both stocks and the Suppliers.
+ */
+
+public class DirtyTracker implements StockListener {
+	
+	private AtomicBoolean dishes; // Whether the SushiStock needs saving
+	private AtomicBoolean ingredients; // Whether the IngredientStock needs saving
+	private AtomicBoolean suppliers; // Whether the Suppliers need saving
+	
+	/*
+	 * Constructor to create a new DirtyTracker with nothing needing saving
+	 */
+	public DirtyTracker() {
+		this.dishes = new AtomicBoolean(false);
+		this.ingredients = new AtomicBoolean(false);
+		this.suppliers = new AtomicBoolean(false);
+	}
+	
+	/*
+	 * Method to mark the SushiStock as changed
+	 */
+	public void dishStockChanged(SushiDish dish) {
+		dishes.set(true);
+	}
+	
+	/*
+	 * Method to mark the IngredientStock as changed (the SushiStock too, as recipes refer to
+	 * ingredients by name and an ingredient may have been renamed)
+	 */
+	public void ingredientStockChanged(Ingredient ingredient) {
+		ingredients.set(true);
+		dishes.set(true);
+	}
+	
+	/*
+	 * Method to mark the Suppliers as changed (the IngredientStock holds them too)
+	 */
+	public void supplierChanged(Supplier supplier) {
+		suppliers.set(true);
+		ingredients.set(true);
+	}
+	
+	/*
+	 * Method to return whether the SushiStock needs saving, marking it as saved (it's cleared before
+	 * saving so a change made while saving is picked up next time)
+	 */
+	public boolean takeDishes() {
+		return dishes.getAndSet(false);
+	}
+	
+	/*
+	 * Method to return whether the IngredientStock needs saving, marking it as saved
+	 */
+	public boolean takeIngredients() {
+		return ingredients.getAndSet(false);
+	}
+	
+	/*
+	 * Method to return whether the Suppliers need saving, marking them as saved
+	 */
+	public boolean takeSuppliers() {
+		return suppliers.getAndSet(false);
+	}
+
+}
@@ -0,0 +1,386 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+ * Class to hand out work to Drones. OrderReceiver and stock changes publish jobs here and Drones
+ * block on take() until there's something to deliver or collect. Collections from the same
+ * Supplier are combined into one trip when a Drone picks them up, and so are nearby deliveries
+ * (planned by the DeliveryPlanner). Ingredients tend to run low one at a time, so a Drone holds a
+ * collection for a moment before setting off to let others from the same Supplier join it.
+ */
+
+public class DispatchQueue implements StockListener {
+	
+	// Enum of possible job types
+	enum JobType {
+		DELIVERY, COLLECTION
+	}
+	
+	private static final long DEFAULT_COLLECTION_HOLD = 2000; // Clock milliseconds a collection waits for others to join
+	
+	private SushiStock sushiStock;
+	private IngredientStock ingredientStock;
+	private Clock clock; // Clock Drones wait for work on
+	private long collectionHold; // How long a Drone holds a collection before setting off
+	
+	private LinkedList<Order> pendingOrders; // RECEIVED orders still waiting on dishes to be prepared
+	private LinkedBlockingQueue<Job> jobs; // Jobs ready for a Drone to pick up
+	private DeliveryPlanner deliveryPlanner; // Decides which deliveries share a trip
+	
+	/*
+	 * Constructor to create a new DispatchQueue holding collections for the time in the
+	 * sushi.dispatch.collectionHold property (2 seconds of clock time by default)
+	 */
+	public DispatchQueue(SushiStock sushiStock, IngredientStock ingredientStock, Clock clock) {
+		this(sushiStock, ingredientStock, clock, Long.getLong("sushi.dispatch.collectionHold", DEFAULT_COLLECTION_HOLD));
+	}
+	
+	/*
+	 * Constructor to create a new DispatchQueue holding collections for a given time (0 to never hold them)
+	 */
+	public DispatchQueue(SushiStock sushiStock, IngredientStock ingredientStock, Clock clock, long collectionHold) {
+		this.sushiStock = sushiStock;
+		this.ingredientStock = ingredientStock;
+		this.clock = clock;
+		this.collectionHold = collectionHold;
+		
+		this.pendingOrders = new LinkedList<>();
+		this.jobs = new LinkedBlockingQueue<>();
+		this.deliveryPlanner = new DeliveryPlanner();
+	}
+	
+	/*
+	 * Synchronized method to add an order that needs delivering once its dishes are ready
+	 */
+	public synchronized void addOrder(Order order) {
+		pendingOrders.add(order);
+		
+		// It might be ready straight away
+		checkPendingOrders();
+	}
+	
+	/*
+	 * Synchronized method to stop an order from being delivered (e.g. it's been removed)
+	 */
+	public synchronized void removeOrder(Order order) {
+		boolean waiting = pendingOrders.remove(order);
+		
+		// Also remove any delivery job for it that hasn't been picked up yet
+		Iterator<Job> jobIt = jobs.iterator();
+		while (jobIt.hasNext()) {
+			Job job = jobIt.next();
+			if (job.getType() == JobType.DELIVERY && job.getOrders().contains(order)) {
+				jobIt.remove();
+				waiting = true;
+			}
+		}
+		
+		// If its dishes were never taken they're no longer being waited on
+		if (waiting) {
+			sushiStock.removeDemand(order.getContent());
+		}
+	}
+	
+	/*
+	 * Method to check every ingredient and publish a collection job for any below restocking level
+	 */
+	public void checkAllIngredients() {
+		// Take a copy of the keys first so we don't hold the stock lock while checking
+		LinkedList<Ingredient> ingredients = new LinkedList<>();
+		synchronized (ingredientStock) {
+			Iterator<Ingredient> ingredientIt = ingredientStock.getStockIterator();
+			while (ingredientIt.hasNext()) {
+				ingredients.add(ingredientIt.next());
+			}
+		}
+		
+		for (Ingredient ingredient : ingredients) {
+			checkIngredient(ingredient);
+		}
+	}
+	
+	/*
+	 * Method to block until a job is available and return it. A collection is filled up with other
+	 * ingredients from the same Supplier (see fillCollection), and a delivery is combined with any
+	 * other waiting deliveries the DeliveryPlanner fits on the same trip, up to capacity ingredients
+	 * or orders in total.
+	 */
+	public Job take(int capacity) throws InterruptedException {
+		Job job;
+		
+		// Wait on the clock rather than the queue, so with virtual time it decides which Drone runs when
+		while (true) {
+			synchronized (jobs) {
+				job = jobs.poll();
+				if (job != null) {
+					break;
+				}
+				
+				clock.beginWait(jobs);
+			}
+			
+			clock.awaitWork();
+		}
+		
+		if (job.getType() == JobType.COLLECTION) {
+			fillCollection(job.getIngredients(), capacity);
+		} else {
+			job = combineDeliveries(job, capacity);
+		}
+		
+		return job;
+	}
+	
+	/*
+	 * Method to add other ingredients from the same Supplier to a collection, up to capacity - first
+	 * any waiting collection jobs, then any other ingredient below its restocking level that nobody is
+	 * collecting yet. Drones call this again after holding a collection so late arrivals can join.
+	 */
+	public void fillCollection(ArrayList<Ingredient> ingredients, int capacity) {
+		Supplier supplier = ingredients.get(0).getSupplier();
+		
+		// Nothing to combine with if there's no supplier
+		if (supplier == null) {
+			return;
+		}
+		
+		combineCollections(ingredients, supplier, capacity);
+		
+		// setCollecting only succeeds once, so this doesn't need our lock to avoid collecting anything twice
+		Iterator<Ingredient> ingredientIt = ingredientStock.getStockIterator();
+		while (ingredients.size() < capacity && ingredientIt.hasNext()) {
+			Ingredient ingredient = ingredientIt.next();
+			Supplier otherSupplier = ingredient.getSupplier();
+			
+			if (otherSupplier == null || !otherSupplier.getName().equals(supplier.getName())) {
+				continue;
+			}
+			
+			Integer currentStock = ingredientStock.getStock(ingredient);
+			Integer restockingLevel = ingredientStock.getRestockingLevel(ingredient);
+			
+			if (currentStock != null && restockingLevel != null && currentStock < restockingLevel
+					&& ingredientStock.setCollecting(ingredient)) {
+				ingredients.add(ingredient);
+			}
+		}
+	}
+	
+	/*
+	 * Method to return how long a Drone should hold a collection for others to join (clock milliseconds)
+	 */
+	public long getCollectionHold() {
+		return collectionHold;
+	}
+	
+	/*
+	 * Method to return the DeliveryPlanner used to plan delivery trips
+	 */
+	public DeliveryPlanner getDeliveryPlanner() {
+		return deliveryPlanner;
+	}
+	
+	/*
+	 * Synchronized method to take waiting collections from a Supplier off the queue and add their
+	 * ingredients to a collection
+	 */
+	private synchronized void combineCollections(ArrayList<Ingredient> ingredients, Supplier supplier, int capacity) {
+		Iterator<Job> jobIt = jobs.iterator();
+		while (ingredients.size() < capacity && jobIt.hasNext()) {
+			Job other = jobIt.next();
+			
+			// Only collections from the same Supplier (by name as ingredients may hold copies)
+			if (other.getType() != JobType.COLLECTION || other.getIngredients().size() + ingredients.size() > capacity) {
+				continue;
+			}
+			
+			Supplier otherSupplier = other.getIngredients().get(0).getSupplier();
+			if (otherSupplier != null && otherSupplier.getName().equals(supplier.getName())) {
+				ingredients.addAll(other.getIngredients());
+				jobIt.remove();
+			}
+		}
+	}
+	
+	/*
+	 * Synchronized method to take waiting deliveries that fit on the same trip as a job off the queue
+	 * and return one job delivering all of them
+	 */
+	private synchronized Job combineDeliveries(Job job, int capacity) {
+		if (capacity <= 1) {
+			return job;
+		}
+		
+		// Every delivery still waiting (oldest first)
+		ArrayList<Order> waiting = new ArrayList<>();
+		for (Job other : jobs) {
+			if (other.getType() == JobType.DELIVERY) {
+				waiting.addAll(other.getOrders());
+			}
+		}
+		
+		if (waiting.isEmpty()) {
+			return job;
+		}
+		
+		// Work out the trip and take its orders off the queue
+		ArrayList<Order> trip = deliveryPlanner.planTrip(job.getOrders().get(0), waiting, capacity);
+		
+		Iterator<Job> jobIt = jobs.iterator();
+		while (jobIt.hasNext()) {
+			Job other = jobIt.next();
+			if (other.getType() == JobType.DELIVERY && trip.contains(other.getOrders().get(0))) {
+				jobIt.remove();
+			}
+		}
+		
+		Job combined = new Job(trip.get(0));
+		combined.orders.addAll(trip.subList(1, trip.size()));
+		return combined;
+	}
+	
+	/*
+	 * Synchronized method to move any pending orders whose dishes are all in stock onto the job queue
+	 */
+	private synchronized void checkPendingOrders() {
+		Iterator<Order> orderIt = pendingOrders.iterator();
+		
+		while (orderIt.hasNext()) {
+			Order order = orderIt.next();
+			
+			// If the order's been cancelled since it was added just drop it
+			if (order.getStatus() != Order.Status.RECEIVED) {
+				orderIt.remove();
+			} else if (checkDishesPrepared(order)) {
+				// Otherwise if everything's in stock it's ready to go
+				orderIt.remove();
+				publish(new Job(order));
+			}
+		}
+	}
+	
+	/*
+	 * Method to check that stock is sufficient to cover the contents of an Order
+	 */
+	private boolean checkDishesPrepared(Order order) {
+		HashMap<SushiDish, Integer> contents = order.getContent();
+		
+		// For each SushiDish in the order
+		for (SushiDish orderDish : contents.keySet()) {
+			int amount = contents.get(orderDish); // Get the quantity
+			Integer currentStock = sushiStock.getStock(orderDish.getName());
+			
+			// If current stock is less than that amount (or the dish is gone) return false
+			if (currentStock == null || currentStock < amount) {
+				return false;
+			}
+		}
+		
+		// Else all is good so return true
+		return true;
+	}
+	
+	/*
+	 * Method to publish a collection job for an ingredient if it needs restocking and nobody is collecting it
+	 */
+	private void checkIngredient(Ingredient ingredient) {
+		Integer currentStock = ingredientStock.getStock(ingredient);
+		Integer restockingLevel = ingredientStock.getRestockingLevel(ingredient);
+		
+		// Ingredient might have just been removed
+		if (currentStock == null || restockingLevel == null) {
+			return;
+		}
+		
+		// setCollecting only succeeds once so only one job is ever published per collection
+		if (currentStock < restockingLevel && ingredientStock.setCollecting(ingredient)) {
+			publish(new Job(ingredient));
+		}
+	}
+	
+	/*
+	 * Method to put a job on the queue and wake any Drones waiting for one
+	 */
+	private void publish(Job job) {
+		synchronized (jobs) {
+			jobs.add(job);
+			clock.wake(jobs);
+		}
+	}
+	
+	/*
+	 * Method called when a dish changes - pending orders might now be ready
+	 */
+	public void dishStockChanged(SushiDish dish) {
+		checkPendingOrders();
+	}
+	
+	/*
+	 * Method called when an ingredient changes - it might now need collecting
+	 */
+	public void ingredientStockChanged(Ingredient ingredient) {
+		checkIngredient(ingredient);
+	}
+	
+	/*
+	 * Class to represent a single piece of work for a Drone
+	 */
+	public static class Job {
+		
+		private JobType type;
+		private ArrayList<Order> orders;
+		private ArrayList<Ingredient> ingredients;
+		
+		/*
+		 * Constructor to create a delivery job for a single order
+		 */
+		public Job(Order order) {
+			this.type = JobType.DELIVERY;
+			this.orders = new ArrayList<>();
+			this.orders.add(order);
+		}
+		
+		/*
+		 * Constructor to create a collection job for a single ingredient
+		 */
+		public Job(Ingredient ingredient) {
+			this.type = JobType.COLLECTION;
+			this.ingredients = new ArrayList<>();
+			this.ingredients.add(ingredient);
+		}
+		
+		/*
+		 * Constructor to create a collection job for several ingredients from the same Supplier
+		 */
+		public Job(ArrayList<Ingredient> ingredients) {
+			this.type = JobType.COLLECTION;
+			this.ingredients = ingredients;
+		}
+		
+		/*
+		 * Method to return the type of job
+		 */
+		public JobType getType() {
+			return type;
+		}
+		
+		/*
+		 * Method to return the Orders to deliver (null for collections)
+		 */
+		public ArrayList<Order> getOrders() {
+			return orders;
+		}
+		
+		/*
+		 * Method to return the Ingredients to collect (null for deliveries)
+		 */
+		public ArrayList<Ingredient> getIngredients() {
+			return ingredients;
+		}
+		
+	}
+	
+}
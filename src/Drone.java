@@ -1,4 +1,4 @@
-import java.util.HashMap;
+import java.util.ArrayList;
 
 /*
  * Class to represent a Drone - picks up ingredients and delivers orders
@@ -13,17 +13,27 @@ public class Drone implements Runnable {
 	
 	private volatile Status status; // Current status of the Drone
 	
-	private static final Object lock = new Object(); // Lock for checking orders
+	private DispatchQueue dispatchQueue; // Where we get jobs from
+	private SushiStock sushiStock;
+	private IngredientStock ingredientStock;
+	private Comms comms; // Used to update the status of orders
+	private Clock clock; // Clock to time trips with
 	
-	private BusinessApplication businessApp;
 	private double speed;
+	private int capacity; // Number of ingredients or orders that can be carried in one trip
 	
 	/*
 	 * Constructor to create a new Drone
 	 */
-	public Drone(BusinessApplication businessApp, double speed) {
+	public Drone(DispatchQueue dispatchQueue, SushiStock sushiStock, IngredientStock ingredientStock, Comms comms, Clock clock, double speed, int capacity) {
+		this.dispatchQueue = dispatchQueue;
+		this.sushiStock = sushiStock;
+		this.ingredientStock = ingredientStock;
+		this.comms = comms;
+		this.clock = clock;
+		
 		this.speed = speed;
-		this.businessApp = businessApp;
+		this.capacity = capacity;
 		
 		this.status = Status.WAITING; // On creation we want to be WAITING
 	}
@@ -33,151 +43,140 @@ public class Drone implements Runnable {
 	 */
 	public void run() {		
 		status = Status.WAITING; // On start set status to WAITING in case it was STOPPED before
+		clock.register(); // Let the clock know we're taking part
 		
 		// While we're not stopped
 		while (status != Status.STOPPED) {
-			// Get the first ingredient that requires restocking
-			Ingredient ingredient = businessApp.ingredientStock.checkRestockLevels();
+			DispatchQueue.Job job;
 			
-			// If there is one to restock and no other drone is collecting it..
-			if (ingredient != null && businessApp.ingredientStock.setCollecting(ingredient)) {
-				try {
-					// Change status to COLLECTING and sleep for outward journey
-					status = Status.COLLECTING;
-					Thread.sleep((long) ((ingredient.getSupplier().getDistance() / speed) * 60000));
-					
-					// Change status to RETURNING and sleep for return journey
-					status = Status.RETURNING;
-					Thread.sleep((long) ((ingredient.getSupplier().getDistance() / speed) * 60000));
-					
-					// Get the restocking amount and increase current stock by that amount
-					int amount = businessApp.ingredientStock.getRestockingLevel(ingredient);
-					businessApp.ingredientStock.increaseStock(ingredient, amount);
-					
-					// Set status back to WAITING
-					status = Status.WAITING;
-				} catch (InterruptedException e) {
-					// If interrupted set collected to true so other Drones can pickup
-					businessApp.ingredientStock.setCollected(ingredient);
-					System.err.println("Collection of ingredient '" + ingredient.getName() + "' was interrupted!");
-					status = Status.STOPPED;
-				} finally {
-					// Set collected to true so other Drones can pickup
-					businessApp.ingredientStock.setCollected(ingredient);
-				}
+			// Block until there's something to collect or deliver
+			try {
+				job = dispatchQueue.take(capacity);
+			} catch (InterruptedException e) {
+				// Interrupted while waiting means we've been stopped
+				status = Status.STOPPED;
+				break;
+			}
+			
+			if (job.getType() == DispatchQueue.JobType.COLLECTION) {
+				collect(job.getIngredients());
 			} else {
-				// Else if there's no ingredients to pick up check if there are any orders
-				if (businessApp.orders != null) {
-					int size = businessApp.orders.size();
-					
-					if (size != 0) {
-						// Define a loop so we can break from it
-						orderloop:
-						// Loop over the orders ArrayList
-						for (int i = 0; i < size; i++) {
-							// Get the current order
-							Order order = businessApp.orders.get(i);
-							
-							if (order != null) {
-								if (checkOrderStatus(order)) {
-									try {
-										// Get the distance to the User's postcode
-										double distance = getDistance(order.getUser().getPostcode());
-										
-										// Get contents of the order
-										HashMap<SushiDish, Integer> contents = order.getContent();
-										
-										// For each SushiDish get the quantity and decrement current stock by that amount
-										for (SushiDish orderDish : contents.keySet()) {
-											int amount = contents.get(orderDish);
-											businessApp.sushiStock.decreaseStock(orderDish.getName(), amount);
-										}
-										
-										// Set Drone status to DELIVERING and sleep for outward journey
-										status = Status.DELIVERING;
-										Thread.sleep((long) ((distance / speed) * 60000));	
-										
-										// Set order status to DELIVERED
-										businessApp.comms.updateOrderStatus(order, Order.Status.DELIVERED);
-										
-										// Set Drone status to RETURNING and sleep for return journey
-										status = Status.RETURNING;
-										Thread.sleep((long) ((distance / speed) * 60000));
-										
-										// Set status back to WAITING
-										status = Status.WAITING;
-									} catch (InterruptedException e) {
-										// If interrupted just say it's delivered
-										businessApp.comms.updateOrderStatus(order, Order.Status.DELIVERED);
-										status = Status.STOPPED;
-									}
-									
-									// Break from the loop (one delivery then check for ingredients to restock)
-									break orderloop;
-								}
-							}
-						}
-					}
-				}
+				deliver(job.getOrders());
 			}
 		}
+		
+		clock.unregister(); // No longer taking part
 	}
 	
 	/*
-	 * Method to get the distance to the User's postcode
-	 */
-	private double getDistance(String postcode) {
-		switch (postcode) {
-			case "SO14":
-				return 50.0;
-			case "SO15":
-				return 200.0;
-			case "SO16":
-				return 150.0;
-			case "SO17":
-				return 120.0;
-			case "SO19":
-				return 70.0;
-			default:
-				return 0.0;
-		}
-	}
-	
-	/*
-	 * Synchronized method to check that an order is open for delivery
+	 * Method to collect ingredients from their Supplier in one trip (all from the same Supplier, with
+	 * collecting flags already set by the DispatchQueue, which may add more before setting off)
 	 */
-	private boolean checkOrderStatus(Order order) {
-		synchronized(lock) {
-			// If that order is set to RECEIVED...
-			if (order.getStatus() == Order.Status.RECEIVED) {
-				// Check there's enough of the contents so we can deliver..
-				if (checkDishesPrepared(order)) {
-					// Update status to DELIVERING and return true
-					businessApp.comms.updateOrderStatus(order, Order.Status.DELIVERING);
-					return true;
+	private void collect(ArrayList<Ingredient> ingredients) {
+		try {
+			// Give other ingredients from the same Supplier a moment to run low and join the trip
+			if (ingredients.size() < capacity && dispatchQueue.getCollectionHold() > 0) {
+				clock.sleep(dispatchQueue.getCollectionHold());
+				dispatchQueue.fillCollection(ingredients, capacity);
+			}
+			
+			double distance = ingredients.get(0).getSupplier().getDistance();
+			
+			// Change status to COLLECTING and sleep for outward journey
+			status = Status.COLLECTING;
+			clock.sleep((long) ((distance / speed) * 60000));
+			
+			// Change status to RETURNING and sleep for return journey
+			status = Status.RETURNING;
+			clock.sleep((long) ((distance / speed) * 60000));
+			
+			// Increase the stock of each by its restocking amount
+			for (Ingredient ingredient : ingredients) {
+				Integer amount = ingredientStock.getRestockingLevel(ingredient);
+				
+				// Skip anything removed while we were out
+				if (amount != null) {
+					ingredientStock.increaseStock(ingredient, amount);
 				}
 			}
 			
-			return false;
+			// Set status back to WAITING
+			status = Status.WAITING;
+		} catch (InterruptedException e) {
+			System.err.println("Collection from supplier '" + ingredients.get(0).getSupplier().getName() + "' was interrupted!");
+			status = Status.STOPPED;
+		} finally {
+			// Set collected so other Drones can pickup (and they get requeued if still low)
+			for (Ingredient ingredient : ingredients) {
+				ingredientStock.setCollected(ingredient);
+			}
 		}
 	}
 	
 	/*
-	 * Synchronized method to check that stock is sufficient to cover the contents of an Order
+	 * Method to deliver orders whose dishes the DispatchQueue has seen in stock, visiting each
+	 * postcode once in the order planned by the DeliveryPlanner
 	 */
-	private synchronized boolean checkDishesPrepared(Order order) {
-		// For each SushiDish in the order
-		for (SushiDish orderDish : order.getContent().keySet()) {
-			int amount = order.getContent().get(orderDish); // Get the quantity
+	private void deliver(ArrayList<Order> orders) {
+		ArrayList<Order> loaded = new ArrayList<>();
+		
+		for (Order order : orders) {
+			// It may have been cancelled or removed since it was queued
+			if (order.getStatus() != Order.Status.RECEIVED) {
+				continue;
+			}
 			
-			// If current stock is less than that amount return false
-			if (businessApp.sushiStock.getStock(orderDish.getName()) < amount) {
-				return false;
+			// Take the dishes out of stock - if another Drone got there first put it back to wait for more
+			if (!sushiStock.takeDishes(order.getContent())) {
+				dispatchQueue.addOrder(order);
+				continue;
 			}
+			
+			// Update status to DELIVERING
+			comms.updateOrderStatus(order, Order.Status.DELIVERING);
+			loaded.add(order);
 		}
 		
-		// Else all is good so return true
-		return true;
+		// Nothing left to deliver
+		if (loaded.isEmpty()) {
+			return;
+		}
+		
+		DeliveryPlanner planner = dispatchQueue.getDeliveryPlanner();
+		ArrayList<String> stops = planner.planStops(loaded);
+		String current = DeliveryPlanner.SHOP;
+		
+		try {
+			// Set Drone status to DELIVERING and visit each stop in turn
+			status = Status.DELIVERING;
+			
+			for (String stop : stops) {
+				clock.sleep((long) ((planner.getDistance(current, stop) / speed) * 60000));
+				current = stop;
+				
+				// Set the status of every order for this postcode to DELIVERED
+				for (Order order : loaded) {
+					if (planner.getPostcode(order).equals(stop)) {
+						comms.updateOrderStatus(order, Order.Status.DELIVERED);
+					}
+				}
+			}
+			
+			// Set Drone status to RETURNING and sleep for return journey
+			status = Status.RETURNING;
+			clock.sleep((long) ((planner.getDistance(current, DeliveryPlanner.SHOP) / speed) * 60000));
+			
+			// Set status back to WAITING
+			status = Status.WAITING;
+		} catch (InterruptedException e) {
+			// If interrupted just say everything still on board is delivered
+			for (Order order : loaded) {
+				if (order.getStatus() == Order.Status.DELIVERING) {
+					comms.updateOrderStatus(order, Order.Status.DELIVERED);
+				}
+			}
+			status = Status.STOPPED;
+		}
 	}
 	
 	/*
@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import javax.swing.SwingUtilities;
+
+/*
+ * OrderListener to pass order events on to another OrderListener on the Event Dispatch Thread, so
+ * a Swing view can update itself straight away without touching components from other threads.
+ * Events that arrive before the EDT gets round to them are delivered together, in the order they
+ * happened, with repeated status changes to the same order only delivered once.
+ */
+
+public class EdtOrderListener implements OrderListener {
+	
+	// Types of event
+	private static final int RECEIVED = 0;
+	private static final int STATUS_CHANGED = 1;
+	private static final int REMOVED = 2;
+	
+	private OrderListener target; // Listener to deliver events to on the EDT
+	
+	private ArrayList<Event> pending; // Events waiting to be delivered
+	private IdentityHashMap<Order, Boolean> pendingStatusChanges; // Orders with a status change already waiting
+	private boolean scheduled; // Whether a delivery is already queued on the EDT
+	
+	/*
+	 * Constructor to create a new EdtOrderListener delivering to a target
+	 */
+	public EdtOrderListener(OrderListener target) {
+		this.target = target;
+		
+		this.pending = new ArrayList<>();
+		this.pendingStatusChanges = new IdentityHashMap<>();
+		this.scheduled = false;
+	}
+	
+	/*
+	 * Method to pass on an order being received
+	 */
+	public void orderReceived(Order order) {
+		add(RECEIVED, order);
+	}
+	
+	/*
+	 * Method to pass on an order's status changing
+	 */
+	public void orderStatusChanged(Order order) {
+		add(STATUS_CHANGED, order);
+	}
+	
+	/*
+	 * Method to pass on an order being removed
+	 */
+	public void orderRemoved(Order order) {
+		add(REMOVED, order);
+	}
+	
+	/*
+	 * Synchronized method to queue an event and make sure a delivery is scheduled
+	 */
+	private synchronized void add(int type, Order order) {
+		// The status will be read when it's delivered, so one waiting change is enough
+		if (type == STATUS_CHANGED) {
+			if (pendingStatusChanges.containsKey(order)) {
+				return;
+			}
+			pendingStatusChanges.put(order, true);
+		}
+		
+		pending.add(new Event(type, order));
+		
+		if (!scheduled) {
+			scheduled = true;
+			SwingUtilities.invokeLater(this::deliver);
+		}
+	}
+	
+	/*
+	 * Method to deliver every waiting event to the target (run on the EDT)
+	 */
+	private void deliver() {
+		ArrayList<Event> events;
+		
+		// Take everything waiting so events arriving meanwhile schedule a new delivery
+		synchronized (this) {
+			events = pending;
+			pending = new ArrayList<>();
+			pendingStatusChanges.clear();
+			scheduled = false;
+		}
+		
+		for (Event event : events) {
+			switch (event.type) {
+				case RECEIVED:
+					target.orderReceived(event.order);
+					break;
+				case STATUS_CHANGED:
+					target.orderStatusChanged(event.order);
+					break;
+				default:
+					target.orderRemoved(event.order);
+			}
+		}
+	}
+	
+	/*
+	 * Class to hold an event waiting to be delivered
+	 */
+	private static class Event {
+		
+		private int type;
+		private Order order;
+		
+		/*
+		 * Constructor to create a new Event
+		 */
+		private Event(int type, Order order) {
+			this.type = type;
+			this.order = order;
+		}
+	
+	}
+
+}
@@ -0,0 +1,118 @@
+import java.util.LinkedHashSet;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/*
+ * StockListener to pass stock and supplier changes on to another StockListener on the Event Dispatch
+ * Thread. Stock changes constantly while the business is busy, so changes are collected up and
+ * delivered together at most once every interval, with each dish, ingredient or supplier only
+ * delivered once however many times it changed (the target reads the current state when told).
+ */
+
+public class EdtStockListener implements StockListener {
+	
+	private StockListener target; // Listener to deliver changes to on the EDT
+	private int interval; // Shortest time between deliveries in milliseconds
+	
+	// Things that have changed since the last delivery
+	private LinkedHashSet<SushiDish> pendingDishes;
+	private LinkedHashSet<Ingredient> pendingIngredients;
+	private LinkedHashSet<Supplier> pendingSuppliers;
+	
+	private boolean scheduled; // Whether a delivery is already queued
+	private long lastDelivery; // When the last delivery happened
+	
+	/*
+	 * Constructor to create a new EdtStockListener delivering to a target at most once every interval
+	 */
+	public EdtStockListener(StockListener target, int interval) {
+		this.target = target;
+		this.interval = interval;
+		
+		this.pendingDishes = new LinkedHashSet<>();
+		this.pendingIngredients = new LinkedHashSet<>();
+		this.pendingSuppliers = new LinkedHashSet<>();
+		
+		this.scheduled = false;
+		this.lastDelivery = 0;
+	}
+	
+	/*
+	 * Synchronized method to queue a dish change
+	 */
+	public synchronized void dishStockChanged(SushiDish dish) {
+		pendingDishes.add(dish);
+		schedule();
+	}
+	
+	/*
+	 * Synchronized method to queue an ingredient change
+	 */
+	public synchronized void ingredientStockChanged(Ingredient ingredient) {
+		pendingIngredients.add(ingredient);
+		schedule();
+	}
+	
+	/*
+	 * Synchronized method to queue a supplier change
+	 */
+	public synchronized void supplierChanged(Supplier supplier) {
+		pendingSuppliers.add(supplier);
+		schedule();
+	}
+	
+	/*
+	 * Method to make sure a delivery is scheduled, no sooner than an interval after the last (lock held)
+	 */
+	private void schedule() {
+		if (scheduled) {
+			return;
+		}
+		scheduled = true;
+		
+		long wait = lastDelivery + interval - System.currentTimeMillis();
+		if (wait <= 0) {
+			SwingUtilities.invokeLater(this::deliver);
+		} else {
+			// Swing Timers fire on the EDT
+			Timer timer = new Timer((int) wait, e -> deliver());
+			timer.setRepeats(false);
+			timer.start();
+		}
+	}
+	
+	/*
+	 * Method to deliver every waiting change to the target (run on the EDT)
+	 */
+	private void deliver() {
+		LinkedHashSet<SushiDish> dishes;
+		LinkedHashSet<Ingredient> ingredients;
+		LinkedHashSet<Supplier> suppliers;
+		
+		// Take everything waiting so changes arriving meanwhile schedule a new delivery
+		synchronized (this) {
+			dishes = pendingDishes;
+			ingredients = pendingIngredients;
+			suppliers = pendingSuppliers;
+			
+			pendingDishes = new LinkedHashSet<>();
+			pendingIngredients = new LinkedHashSet<>();
+			pendingSuppliers = new LinkedHashSet<>();
+			
+			scheduled = false;
+			lastDelivery = System.currentTimeMillis();
+		}
+		
+		for (SushiDish dish : dishes) {
+			target.dishStockChanged(dish);
+		}
+		for (Ingredient ingredient : ingredients) {
+			target.ingredientStockChanged(ingredient);
+		}
+		for (Supplier supplier : suppliers) {
+			target.supplierChanged(supplier);
+		}
+	}
+
+}
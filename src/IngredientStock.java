@@ -1,83 +1,204 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /*
- * Class to handle stock of SushiDishes
+ * Class to handle stock of Ingredients. Counts and restocking levels are held in StockCounters so
+ * reading and changing them never blocks - only adding, removing and renaming ingredients and
+ * changing collecting flags locks.
  */
 
 public class IngredientStock implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 	
-	private HashMap<Ingredient, Integer> stock;
-	private HashMap<Ingredient, Integer> restockingLevels;
-	private HashMap<Ingredient, Boolean> collecting;
+	// Still saved as three HashMaps so files saved before the counters were introduced can be read
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("stock", HashMap.class),
+		new ObjectStreamField("restockingLevels", HashMap.class),
+		new ObjectStreamField("collecting", HashMap.class)
+	};
+	
+	private transient StockCounters<Ingredient> stock;
+	private transient StockCounters<Ingredient> restockingLevels;
+	private transient HashMap<Ingredient, Boolean> collecting;
+	
+	// Index from name to ingredient so by-name lookups don't scan the stock (not saved, rebuilt when read in)
+	private transient ConcurrentHashMap<String, Ingredient> ingredientsByName;
+	
+	// Listeners to tell about changes (not saved, they're re-added on startup)
+	private transient volatile CopyOnWriteArrayList<StockListener> listeners;
 	
 	/*
 	 * Constructor to create a new IngredientStock
 	 */
 	public IngredientStock() {
-		stock = new HashMap<>();
-		restockingLevels = new HashMap<>();
+		stock = new StockCounters<>();
+		restockingLevels = new StockCounters<>();
+		ingredientsByName = new ConcurrentHashMap<>();
 		collecting = new HashMap<>();
 	}
 	
 	/*
-	 * Method to return size of stock HashMap
+	 * Method to return the number of ingredients in stock
 	 */
 	public int getSize() {
 		return stock.size();
 	}
 	
 	/*
-	 * Synchronized method to get an Ingredient using its name as a reference
+	 * Synchronized method to add a listener to be told about stock changes
 	 */
-	private synchronized Ingredient getIngredientFromName(String name) {
-		// For every ingredient in stock, check its name and return it if it matches
-		for (Ingredient ingredient : stock.keySet()) {
-			if (ingredient.getName().equals(name)) {
-				return ingredient;
+	public synchronized void addStockListener(StockListener listener) {
+		// Listeners are transient so may be null after being read back in
+		if (listeners == null) {
+			listeners = new CopyOnWriteArrayList<>();
+		}
+		
+		listeners.add(listener);
+	}
+	
+	/*
+	 * Method to tell every listener an ingredient has changed (called without holding our lock)
+	 */
+	private void fireIngredientChanged(Ingredient ingredient) {
+		CopyOnWriteArrayList<StockListener> current = listeners;
+		
+		// If nothing is listening or there's no ingredient there's nothing to do
+		if (current == null || ingredient == null) {
+			return;
+		}
+		
+		for (StockListener listener : current) {
+			listener.ingredientStockChanged(ingredient);
+		}
+	}
+	
+	/*
+	 * Method to get an Ingredient using its name as a reference
+	 */
+	private Ingredient getIngredientFromName(String name) {
+		return name == null ? null : ingredientsByName.get(name);
+	}
+	
+	/*
+	 * Synchronized method to save the counters as HashMaps
+	 */
+	private synchronized void writeObject(ObjectOutputStream output) throws IOException {
+		ObjectOutputStream.PutField fields = output.putFields();
+		fields.put("stock", stock.toHashMap());
+		fields.put("restockingLevels", restockingLevels.toHashMap());
+		fields.put("collecting", new HashMap<>(collecting));
+		output.writeFields();
+	}
+	
+	/*
+	 * Method to rebuild the counters and name index after being read back in
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = input.readFields();
+		HashMap<Ingredient, Integer> savedStock = (HashMap<Ingredient, Integer>) fields.get("stock", null);
+		HashMap<Ingredient, Integer> savedLevels = (HashMap<Ingredient, Integer>) fields.get("restockingLevels", null);
+		HashMap<Ingredient, Boolean> savedCollecting = (HashMap<Ingredient, Boolean>) fields.get("collecting", null);
+		
+		stock = new StockCounters<>();
+		restockingLevels = new StockCounters<>();
+		collecting = new HashMap<>();
+		ingredientsByName = new ConcurrentHashMap<>();
+		
+		for (Map.Entry<Ingredient, Integer> entry : savedStock.entrySet()) {
+			Ingredient ingredient = entry.getKey();
+			stock.put(ingredient, entry.getValue());
+			restockingLevels.put(ingredient, savedLevels.containsKey(ingredient) ? savedLevels.get(ingredient) : 0);
+			collecting.put(ingredient, savedCollecting != null && Boolean.TRUE.equals(savedCollecting.get(ingredient)));
+			ingredientsByName.put(ingredient.getName(), ingredient);
+		}
+	}
+	
+	/*
+	 * Method to rename an ingredient, keeping the name index up to date
+	 */
+	public void renameIngredient(Ingredient ingredient, String name) {
+		synchronized (this) {
+			// Only move the index entry if it's really this ingredient
+			if (ingredientsByName.get(ingredient.getName()) == ingredient) {
+				ingredientsByName.remove(ingredient.getName());
+			}
+			
+			ingredient.setName(name);
+			
+			if (stock.contains(ingredient)) {
+				ingredientsByName.put(name, ingredient);
 			}
 		}
 		
-		// Otherwise return null
-		return null;
+		fireIngredientChanged(ingredient);
+	}
+	
+	/*
+	 * Method to add an item of stock
+	 */
+	public void addStockItem(Ingredient ingredient, int restockingLevel) {
+		synchronized (this) {
+			// Add the item with current stock of 0
+			stock.put(ingredient, 0);
+			ingredientsByName.put(ingredient.getName(), ingredient);
+			// Add its restocking level
+			restockingLevels.put(ingredient, restockingLevel);
+			// Initially we aren't collecting it
+			collecting.put(ingredient, false);
+		}
+		
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to add an item of stock
+	 * Method to remove an item of stock
 	 */
-	public synchronized void addStockItem(Ingredient ingredient, int restockingLevel) {
-		// Add the item with current stock of 0
-		stock.put(ingredient, 0);
-		// Add its restocking level
-		restockingLevels.put(ingredient, restockingLevel);
-		// Initially we aren't collecting it
-		collecting.put(ingredient, false);
+	public void removeStockItem(Ingredient ingredient) {
+		synchronized (this) {
+			// Remove it from all mappings
+			stock.remove(ingredient);
+			if (ingredientsByName.get(ingredient.getName()) == ingredient) {
+				ingredientsByName.remove(ingredient.getName());
+			}
+			restockingLevels.remove(ingredient);
+			collecting.remove(ingredient);
+		}
+		
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to remove an item of stock
+	 * Method to set the stock of an ingredient to an exact amount
 	 */
-	public synchronized void removeStockItem(Ingredient ingredient) {
-		// Remove it from all mappings
-		stock.remove(ingredient);
-		restockingLevels.remove(ingredient);
-		collecting.remove(ingredient);
+	public void setStock(Ingredient ingredient, int amount) {
+		synchronized (this) {
+			stock.put(ingredient, amount);
+		}
+		
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to return the stock of an ingredient
+	 * Method to return the stock of an ingredient
 	 */
-	public synchronized Integer getStock(Ingredient ingredient) {
+	public Integer getStock(Ingredient ingredient) {
 		return stock.get(ingredient);
 	}
 	
 	/*
 	 * Method to return the stock of an ingredient using its name as a reference
 	 */
-	public synchronized Integer getStock(String name) {
+	public Integer getStock(String name) {
 		// Find the ingredient
 		Ingredient ingredient = getIngredientFromName(name);
 		
@@ -85,72 +206,121 @@ public class IngredientStock implements Serializable {
 	}
 	
 	/*
-	 * Synchronized mehtod to increase the stock of an ingredient by amount
+	 * Method to increase the stock of an ingredient by amount
 	 */
-	public synchronized void increaseStock(Ingredient ingredient, Integer amount) {
-		Integer currentStock = stock.get(ingredient);
-		stock.put(ingredient, currentStock + amount);
+	public void increaseStock(Ingredient ingredient, Integer amount) {
+		stock.add(ingredient, amount);
+		
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to increase the stock of an ingredient by amount using name as a reference
+	 * Method to increase the stock of an ingredient by amount using name as a reference
 	 */
-	public synchronized void increaseStock(String name, Integer amount) {
+	public void increaseStock(String name, Integer amount) {
 		// Find the ingredient
 		Ingredient ingredient = getIngredientFromName(name);
 		
-		Integer currentStock = stock.get(ingredient);
-		stock.put(ingredient, currentStock + amount);
+		stock.add(ingredient, amount);
+		
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to decrease the stock of an ingredient by amount
+	 * Method to decrease the stock of an ingredient by amount
 	 */
-	public synchronized void decreaseStock(Ingredient ingredient, Integer amount) {
-		Integer currentStock = stock.get(ingredient);
-		stock.put(ingredient, currentStock - amount);
+	public void decreaseStock(Ingredient ingredient, Integer amount) {
+		stock.add(ingredient, -amount);
+		
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to decrease the stock of an ingredient by amount using name as a reference
+	 * Method to decrease the stock of an ingredient by amount using name as a reference
 	 */
-	public synchronized void decreaseStock(String name, Integer amount) {
+	public void decreaseStock(String name, Integer amount) {
 		// Find the ingredient
 		Ingredient ingredient = getIngredientFromName(name);
 		
-		// Get current stock
-		Integer currentStock = stock.get(ingredient);
+		stock.add(ingredient, -amount);
 		
-		// Update the mapping
-		stock.put(ingredient, currentStock - amount);
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to return the restocking level of an ingredient
+	 * Method to return the restocking level of an ingredient
 	 */
-	public synchronized Integer getRestockingLevel(Ingredient ingredient) {
+	public Integer getRestockingLevel(Ingredient ingredient) {
 		return restockingLevels.get(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to set the restocking level of an ingredient
+	 * Method to set the restocking level of an ingredient
 	 */
-	public synchronized void setRestockingLevel(Ingredient ingredient, int restockLevel) {
-		restockingLevels.put(ingredient, restockLevel);
+	public void setRestockingLevel(Ingredient ingredient, int restockLevel) {
+		synchronized (this) {
+			// Only for ingredients we still have
+			if (stock.contains(ingredient)) {
+				restockingLevels.put(ingredient, restockLevel);
+			}
+		}
+		
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
-	 * Synchronized method to check the restocking level of all ingredients and return the first
+	 * Method to take every ingredient needed for quantity lots of a recipe in one go. Either all of
+	 * them are taken and a Reservation is returned, or none are and null is returned. Ingredients
+	 * the stock doesn't know about are skipped, as they always have been.
+	 */
+	public Reservation reserve(HashMap<Ingredient, Integer> recipe, int quantity) {
+		HashMap<Ingredient, Integer> taken = new HashMap<>();
+		
+		for (Ingredient required : recipe.keySet()) {
+			// Use our own instance (recipes may hold copies that were read back in separately)
+			Ingredient ingredient = getIngredientFromName(required.getName());
+			if (ingredient == null) {
+				continue;
+			}
+			
+			// Take it only if there's enough, otherwise put back everything taken so far
+			int amount = recipe.get(required) * quantity;
+			if (!stock.takeIfAvailable(ingredient, amount)) {
+				for (Ingredient takenIngredient : taken.keySet()) {
+					stock.add(takenIngredient, taken.get(takenIngredient));
+				}
+				
+				return null;
+			}
+			
+			taken.put(ingredient, amount);
+		}
+		
+		for (Ingredient ingredient : taken.keySet()) {
+			fireIngredientChanged(ingredient);
+		}
+		
+		return new Reservation(taken);
+	}
+	
+	/*
+	 * Method to check the restocking level of all ingredients and return the first
 	 * ingredient that needs restocking.
 	 */
-	public synchronized Ingredient checkRestockLevels() {
+	public Ingredient checkRestockLevels() {
 		// For every ingredient in restockingLevels
 		for (Ingredient ingredient : restockingLevels.keySet()) {
-			// Get current stock
+			// Get current stock and level
 			Integer currentStock = stock.get(ingredient);
+			Integer restockingLevel = restockingLevels.get(ingredient);
+			
+			// Skip anything removed while we're looking
+			if (currentStock == null || restockingLevel == null) {
+				continue;
+			}
 			
 			// If current stock is less than restocking level return the ingredient
-			if (currentStock < restockingLevels.get(ingredient) && !isCollecting(ingredient)) {
+			if (currentStock < restockingLevel && !isCollecting(ingredient)) {
 				return ingredient;
 			}
 		}
@@ -175,17 +345,21 @@ public class IngredientStock implements Serializable {
 	}
 	
 	/*
-	 * Synchronized method to set an ingredient's collecting flag to false
+	 * Method to set an ingredient's collecting flag to false
 	 */
-	public synchronized void setCollected(Ingredient ingredient) {
-		collecting.put(ingredient, false);
+	public void setCollected(Ingredient ingredient) {
+		synchronized (this) {
+			collecting.put(ingredient, false);
+		}
+		
+		fireIngredientChanged(ingredient);
 	}
 	
 	/*
 	 * Synchronized method to return whether we're currently collecting an ingredient
 	 */
 	public synchronized boolean isCollecting(Ingredient ingredient) {
-		return collecting.get(ingredient);
+		return Boolean.TRUE.equals(collecting.get(ingredient));
 	}
 	
 	/*
@@ -198,10 +372,56 @@ public class IngredientStock implements Serializable {
 	}
 	
 	/*
-	 * Method to return an iterator for the stock HashMap
+	 * Method to return an iterator over every ingredient (safe to use while stock changes)
 	 */
 	public Iterator<Ingredient> getStockIterator() {
 		return stock.keySet().iterator();
 	}
 	
-}
\ No newline at end of file
+	/*
+	 * Class to represent ingredients taken by reserve, which are either used (commit) or given back (release)
+	 */
+	public class Reservation {
+		
+		private HashMap<Ingredient, Integer> taken;
+		private boolean finished; // Whether it's been committed or released already
+		
+		/*
+		 * Constructor to create a new Reservation
+		 */
+		private Reservation(HashMap<Ingredient, Integer> taken) {
+			this.taken = taken;
+			this.finished = false;
+		}
+		
+		/*
+		 * Synchronized method to mark the ingredients as used
+		 */
+		public synchronized void commit() {
+			finished = true;
+		}
+		
+		/*
+		 * Method to give the ingredients back (does nothing if already committed or released)
+		 */
+		public void release() {
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+				
+				finished = true;
+			}
+			
+			// Anything removed from stock since is skipped
+			for (Ingredient ingredient : taken.keySet()) {
+				stock.add(ingredient, taken.get(ingredient));
+			}
+			
+			for (Ingredient ingredient : taken.keySet()) {
+				fireIngredientChanged(ingredient);
+			}
+		}
+	}
+
+}
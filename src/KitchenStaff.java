@@ -1,4 +1,4 @@
-import java.util.HashMap;
+import java.util.Random;
 
 /*
  * Runnable class to represent a member of the KitchenStaff
@@ -13,18 +13,30 @@ public class KitchenStaff implements Runnable {
 	
 	private volatile Status status; // Status variable
 	
-	private static final Object lock = new Object(); // Lock for checking dishes
-	
 	private SushiStock sushiStock;
 	private IngredientStock ingredientStock;
+	private RestockSignal restockSignal; // Signal to wait on when there's nothing to prepare
+	private Clock clock; // Clock to time preparation with
+	private Random random; // Picks how long each dish takes to prepare
 	
 	/*
 	 * Constructor to create a new KitchenStaff
 	 */
-	public KitchenStaff(SushiStock sushiStock, IngredientStock ingredientStock) {
+	public KitchenStaff(SushiStock sushiStock, IngredientStock ingredientStock, RestockSignal restockSignal, Clock clock) {
+		this(sushiStock, ingredientStock, restockSignal, clock, new Random());
+	}
+	
+	/*
+	 * Constructor to create a new KitchenStaff taking preparation times from a given Random (so a
+	 * seeded one gives the same times every run)
+	 */
+	public KitchenStaff(SushiStock sushiStock, IngredientStock ingredientStock, RestockSignal restockSignal, Clock clock, Random random) {
 		this.status = Status.WAITING; // On creation status should be WAITING
 		this.sushiStock = sushiStock;
 		this.ingredientStock = ingredientStock;
+		this.restockSignal = restockSignal;
+		this.clock = clock;
+		this.random = random;
 	}
 	
 	/*
@@ -32,92 +44,67 @@ public class KitchenStaff implements Runnable {
 	 */
 	public void run() {
 		status = Status.WAITING; // Set status to WAITING in case it was STOPPED before
+		clock.register(); // Let the clock know we're taking part
 		
 		// While status is not STOPPED
 		while (status != Status.STOPPED) {
-			// Get the first dish that needs restocking (if any)
+			// Get the most urgent dish that needs restocking (if any)
 			SushiDish dish = sushiStock.checkRestockLevels();
 			
-			// If there's a dish to restock
-			if (dish != null) {
-				// If we have the ingredients to prepare and there's a defecit
-				if (checkDish(dish)) {
-					status = Status.PREPARING; // Set status to PREPARING
-					try {							
-						// Sleep for a random time between 20 and 60 seconds
-						Thread.sleep((long) ((Math.floor(Math.random() * 60) + 20) * 1000));
-						
-						// Then increase stock of that dish by 1
-						sushiStock.incrementStock(dish.getName());
-						
-						// Reduce number in preparation
-						dish.decrementInPreparation();
-						
-						// Set status back to WAITING
-						status = Status.WAITING;
-					} catch (InterruptedException e) {
-						// If we were interrupted print an error
-						System.err.println("Preparation of dish '" + dish.getName() + "' was interrupted!");
-						status = Status.STOPPED;
+			// Go down the dishes in order of urgency until we can claim one and take the ingredients for it
+			IngredientStock.Reservation reservation = null;
+			while (dish != null && reservation == null) {
+				if (sushiStock.claimDeficit(dish)) {
+					reservation = ingredientStock.reserve(dish.getRecipe(), 1);
+					
+					// Not enough ingredients so give the claim back
+					if (reservation == null) {
+						sushiStock.releaseClaim(dish);
 					}
 				}
-			}
-		}
-	}
-	
-	public boolean checkDish(SushiDish dish) {
-		synchronized(lock) {
-			int currentStock = sushiStock.getStock(dish);
-			int restockingLevel = sushiStock.getRestockingLevel(dish);
-			int inPreparation = dish.getInPreparation();
-			
-			// Defecit is restocking level - current stock - number in preparation
-			int defecit = restockingLevel - currentStock - inPreparation;
-			
-			// If there's a defecit
-			if (defecit > 0) {
-				// If we have the ingredients to prepare
-				if (checkIngredients(dish)) {
-					// Increase number in preparation and return true
-					dish.incrementInPreparation();
-					return true;
+				
+				if (reservation == null) {
+					dish = sushiStock.nextRestockCandidate(dish);
 				}
 			}
 			
-			// Otherwise return false
-			return false;
-		}
-	}
-	
-	/*
-	 * Synchronized method to check ingredients for a dish
-	 */
-	public boolean checkIngredients(SushiDish dish) {
-		// Get the recipe for the dish
-		HashMap<Ingredient, Integer> recipe = dish.getRecipe();
-		
-		// For each ingredient in the recipe
-		for (Ingredient ingredient : recipe.keySet()) {
-			// Get the required stock
-			Integer requiredStock = recipe.get(ingredient);
-			
-			// Get the current stock (using name because Object references break when using recipes and persistence - serialization problems?)
-			Integer currentStock = ingredientStock.getStock(ingredient.getName());
-			
-			// If current stuck is not null
-			if (currentStock != null) {
-				// If current stock is less than the stock we need return false
-				if (currentStock < requiredStock) {	
-					return false;
+			if (reservation != null) {
+				status = Status.PREPARING; // Set status to PREPARING
+				try {							
+					// Sleep for a random time between 20 and 60 seconds
+					clock.sleep((random.nextInt(60) + 20) * 1000L);
+					
+					// Then increase stock of that dish by 1
+					sushiStock.incrementStock(dish.getName());
+					
+					// Reduce number in preparation and keep the ingredients used
+					sushiStock.releaseClaim(dish);
+					reservation.commit();
+					
+					// Set status back to WAITING
+					status = Status.WAITING;
+				} catch (InterruptedException e) {
+					// If we were interrupted print an error
+					System.err.println("Preparation of dish '" + dish.getName() + "' was interrupted!");
+					status = Status.STOPPED;
+					
+					// Give the dish and ingredients back so another member of staff can pick it up
+					reservation.release();
+					sushiStock.releaseClaim(dish);
+					restockSignal.signal();
+				}
+			} else {
+				// Nothing we can do right now so park until stock changes
+				try {
+					restockSignal.await();
+				} catch (InterruptedException e) {
+					// Interrupted while waiting means we've been stopped
+					status = Status.STOPPED;
 				}
 			}
 		}
 		
-		// Remove the ingredients for the dish
-		dish.prepare(ingredientStock);
-		
-		// Otherwise all is good so return true
-		return true;
+		clock.unregister(); // No longer taking part
 	}
 	
 	/*
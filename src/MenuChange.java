@@ -0,0 +1,107 @@
+/*
+ * Class to hold one change to the menu - the latest name, description, price and stock of a dish,
+ * or that a dish is no longer on it. Changes are absolute rather than relative so applying the
+ * same one twice does no harm.
+ */
+
+public class MenuChange {
+	
+	private long version; // Version of the menu this change brought it to
+	private String name;
+	private boolean removed;
+	private String description;
+	private double price;
+	private int stock;
+	
+	/*
+	 * Constructor to create a new MenuChange for a dish that was added or changed
+	 */
+	public MenuChange(long version, String name, String description, double price, int stock) {
+		this.version = version;
+		this.name = name;
+		this.removed = false;
+		this.description = description;
+		this.price = price;
+		this.stock = stock;
+	}
+	
+	/*
+	 * Constructor to create a new MenuChange for a dish that was removed
+	 */
+	public MenuChange(long version, String name) {
+		this.version = version;
+		this.name = name;
+		this.removed = true;
+		this.description = null;
+		this.price = 0.0;
+		this.stock = 0;
+	}
+	
+	/*
+	 * Method to make the same change to a copy of the menu
+	 */
+	public void applyTo(SushiStock menu) {
+		SushiDish dish = menu.getDish(name);
+		
+		if (removed) {
+			if (dish != null) {
+				menu.removeStockItem(dish);
+			}
+			return;
+		}
+		
+		// New dish (only what the menu shows is sent, so no recipe)
+		if (dish == null) {
+			dish = new SushiDish(name, description, price);
+			menu.addStockItem(dish, 0);
+		} else {
+			dish.setDescription(description);
+			dish.setPrice(price);
+		}
+		
+		menu.setStock(dish, stock);
+	}
+	
+	/*
+	 * Method to return the version of the menu this change brought it to
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/*
+	 * Method to return the name of the dish
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/*
+	 * Method to return whether the dish was removed
+	 */
+	public boolean isRemoved() {
+		return removed;
+	}
+	
+	/*
+	 * Method to return the description of the dish
+	 */
+	public String getDescription() {
+		return description;
+	}
+	
+	/*
+	 * Method to return the price of the dish
+	 */
+	public double getPrice() {
+		return price;
+	}
+	
+	/*
+	 * Method to return the stock of the dish
+	 */
+	public int getStock() {
+		return stock;
+	}
+
+}
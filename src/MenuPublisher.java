@@ -0,0 +1,165 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * Class to publish changes to the menu so clients only need what's changed since they last looked.
+ * Every change to a dish bumps the version and is kept in a bounded history, a client that has
+ * fallen further behind than the history goes back (or saw a previous run of the business) is sent
+ * the whole SushiStock instead.
+ */
+
+public class MenuPublisher implements StockListener {
+	
+	public static final int HISTORY = 1024; // Most changes kept before the oldest are forgotten
+	
+	private SushiStock sushiStock;
+	
+	private long epoch; // When we started, so clients can tell a restarted business apart
+	private long version; // Version of the latest change
+	private ArrayDeque<MenuChange> history; // Recent changes, oldest first
+	private IdentityHashMap<SushiDish, String> names; // Name each dish was last published under (to spot renames)
+	
+	private CopyOnWriteArrayList<Runnable> subscribers; // Told whenever the menu changes
+	
+	/*
+	 * Constructor to create a new MenuPublisher for a SushiStock
+	 */
+	public MenuPublisher(SushiStock sushiStock) {
+		this.sushiStock = sushiStock;
+		
+		this.epoch = System.currentTimeMillis();
+		this.version = 0;
+		this.history = new ArrayDeque<>();
+		this.names = new IdentityHashMap<>();
+		this.subscribers = new CopyOnWriteArrayList<>();
+		
+		// Remember what every dish is called now
+		synchronized (sushiStock) {
+			Iterator<SushiDish> iterator = sushiStock.getStockIterator();
+			while (iterator.hasNext()) {
+				SushiDish dish = iterator.next();
+				names.put(dish, dish.getName());
+			}
+		}
+	}
+	
+	/*
+	 * Method to add something to be told whenever the menu changes (it's told on whichever thread
+	 * changed the stock, so it should be quick)
+	 */
+	public void addSubscriber(Runnable subscriber) {
+		subscribers.add(subscriber);
+	}
+	
+	/*
+	 * Method to remove a subscriber
+	 */
+	public void removeSubscriber(Runnable subscriber) {
+		subscribers.remove(subscriber);
+	}
+	
+	/*
+	 * Method to record the latest state of a dish whenever it changes
+	 */
+	public void dishStockChanged(SushiDish dish) {
+		synchronized (this) {
+			String name = dish.getName();
+			String previousName = names.get(dish);
+			Integer stock = sushiStock.getStock(dish);
+			
+			// Renamed - the old name is no longer on the menu
+			if (previousName != null && !previousName.equals(name)) {
+				record(new MenuChange(version + 1, previousName));
+			}
+			
+			if (stock == null) {
+				// Removed from stock
+				names.remove(dish);
+				record(new MenuChange(version + 1, name));
+			} else {
+				names.put(dish, name);
+				record(new MenuChange(version + 1, name, dish.getDescription(), dish.getPrice(), stock));
+			}
+		}
+		
+		for (Runnable subscriber : subscribers) {
+			subscriber.run();
+		}
+	}
+	
+	/*
+	 * Method to add a change to the history, forgetting the oldest if it's full (lock held)
+	 */
+	private void record(MenuChange change) {
+		version = change.getVersion();
+		history.addLast(change);
+		
+		if (history.size() > HISTORY) {
+			history.removeFirst();
+		}
+	}
+	
+	/*
+	 * Synchronized method to return what a client at a version needs to be up to date - the changes
+	 * since then, or the whole menu if they're too far behind or from another epoch
+	 */
+	public synchronized MenuUpdate getUpdate(long clientEpoch, long clientVersion) {
+		if (clientEpoch != epoch || clientVersion > version || clientVersion < getOldestVersion() - 1) {
+			// Changes after this version may also end up in the snapshot, that's fine as they're absolute
+			return new MenuUpdate(epoch, version, sushiStock);
+		}
+		
+		return collectChanges(clientVersion);
+	}
+	
+	/*
+	 * Synchronized method to return every change still in the history (so clients that aren't
+	 * connected to us can pick out the ones they need)
+	 */
+	public synchronized MenuUpdate getHistory() {
+		return collectChanges(getOldestVersion() - 1);
+	}
+	
+	/*
+	 * Method to collect the latest change to each dish after a version (lock held)
+	 */
+	private MenuUpdate collectChanges(long since) {
+		// Only the latest change to each dish matters, kept in the order they were made
+		LinkedHashMap<String, MenuChange> latest = new LinkedHashMap<>();
+		
+		for (MenuChange change : history) {
+			if (change.getVersion() > since) {
+				latest.remove(change.getName());
+				latest.put(change.getName(), change);
+			}
+		}
+		
+		return new MenuUpdate(epoch, since, version, new ArrayList<>(latest.values()));
+	}
+	
+	/*
+	 * Method to return the version of the oldest change still in the history (lock held)
+	 */
+	private long getOldestVersion() {
+		return history.isEmpty() ? version + 1 : history.peekFirst().getVersion();
+	}
+	
+	/*
+	 * Synchronized method to return the version of the latest change
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+	
+	/*
+	 * Method to return when we started
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+
+/*
+ * Class to bring a client's copy of the menu up to date - either the changes made since the version
+ * it has, or the whole SushiStock if it's too far behind (or the business has restarted since).
+ * The epoch identifies one run of the business, versions only mean something within an epoch.
+ */
+
+public class MenuUpdate {
+	
+	private long epoch; // When the business publishing the menu started
+	private long since; // Version the changes follow on from
+	private long version; // Version the menu is at after this update
+	private SushiStock snapshot; // Whole menu (null if this is just changes)
+	private ArrayList<MenuChange> changes; // Latest change to each dish since the version (empty for a snapshot)
+	
+	/*
+	 * Constructor to create a new MenuUpdate holding the changes between two versions
+	 */
+	public MenuUpdate(long epoch, long since, long version, ArrayList<MenuChange> changes) {
+		this.epoch = epoch;
+		this.since = since;
+		this.version = version;
+		this.snapshot = null;
+		this.changes = changes;
+	}
+	
+	/*
+	 * Constructor to create a new MenuUpdate holding the whole menu at a version
+	 */
+	public MenuUpdate(long epoch, long version, SushiStock snapshot) {
+		this.epoch = epoch;
+		this.since = version;
+		this.version = version;
+		this.snapshot = snapshot;
+		this.changes = new ArrayList<>();
+	}
+	
+	/*
+	 * Method to apply this to a copy of the menu, returning the up to date menu (the snapshot if
+	 * this is one, otherwise the same menu changed)
+	 */
+	public SushiStock applyTo(SushiStock menu) {
+		if (snapshot != null) {
+			return snapshot;
+		}
+		
+		for (MenuChange change : changes) {
+			change.applyTo(menu);
+		}
+		
+		return menu;
+	}
+	
+	/*
+	 * Method to return just the changes made after a version (which must be no older than since)
+	 */
+	public MenuUpdate changesAfter(long from) {
+		ArrayList<MenuChange> newer = new ArrayList<>();
+		
+		for (MenuChange change : changes) {
+			if (change.getVersion() > from) {
+				newer.add(change);
+			}
+		}
+		
+		return new MenuUpdate(epoch, Math.max(from, since), Math.max(from, version), newer);
+	}
+	
+	/*
+	 * Method to return whether there's nothing to apply
+	 */
+	public boolean isEmpty() {
+		return snapshot == null && changes.isEmpty();
+	}
+	
+	/*
+	 * Method to return whether this holds the whole menu
+	 */
+	public boolean isSnapshot() {
+		return snapshot != null;
+	}
+	
+	/*
+	 * Method to return when the business publishing the menu started
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+	
+	/*
+	 * Method to return the version the changes follow on from
+	 */
+	public long getSince() {
+		return since;
+	}
+	
+	/*
+	 * Method to return the version the menu is at after this update
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/*
+	 * Method to return the whole menu (null if this is just changes)
+	 */
+	public SushiStock getSnapshot() {
+		return snapshot;
+	}
+	
+	/*
+	 * Method to return the changes
+	 */
+	public ArrayList<MenuChange> getChanges() {
+		return changes;
+	}
+
+}
@@ -0,0 +1,25 @@
+/*
+ * Class to convert everything saved by the applications into one format (binary unless "serialized"
+ * is given as an argument). Run it with both applications closed.
+ */
+
+public class MigrateFiles {
+	
+	/*
+	 * Main launch method
+	 */
+	public static void main(String[] args) {
+		// Work out which format we're converting to
+		Comms.Format format = Comms.Format.BINARY;
+		if (args.length > 0) {
+			format = Comms.Format.valueOf(args[0].toUpperCase());
+		}
+		
+		// Rewrite everything in that format
+		Comms comms = new Comms(format);
+		comms.migrateFiles();
+		
+		System.out.println("Converted saved files to the " + format.name().toLowerCase() + " format");
+	}
+
+}
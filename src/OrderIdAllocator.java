@@ -0,0 +1,120 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.zip.CRC32;
+
+/*
+ * Class to hand out order IDs. The next free ID is kept in a counter file which each process locks
+ * and moves on by a whole block at a time, so most IDs come straight from memory and none are ever
+ * handed out twice, even with several ClientApplications submitting at once.
+ *
+ * Counter file layout: [long next free ID][int CRC32 of the ID]
+ */
+
+public class OrderIdAllocator {
+	
+	private static final int BLOCK_SIZE = 16; // Number of IDs reserved at a time
+	private static final int RECOVERY_GAP = 1024; // IDs skipped if the counter file is ever corrupted
+	private static final long LOCK_POSITION = Long.MAX_VALUE - 1; // Lock past the data so readers aren't blocked on Windows
+	
+	private File counterFile;
+	private File orderFolder;
+	private OrderJournal journal; // Used to work out the first ID if there's no counter yet
+	
+	private long next; // Next ID to hand out from our block
+	private long limit; // First ID past the end of our block
+	
+	/*
+	 * Constructor to create a new OrderIdAllocator in a folder
+	 */
+	public OrderIdAllocator(String folder, OrderJournal journal) {
+		this.counterFile = new File(folder + "OrderID.counter");
+		this.orderFolder = new File(folder);
+		this.journal = journal;
+		
+		// Nothing reserved yet
+		this.next = 0;
+		this.limit = 0;
+	}
+	
+	/*
+	 * Synchronized method to return a new, never used order ID
+	 */
+	public synchronized int allocate() throws IOException {
+		// If our block has run out reserve another one
+		if (next >= limit) {
+			reserveBlock();
+		}
+		
+		return (int) next++;
+	}
+	
+	/*
+	 * Method to lock the counter file and move it on by a block, keeping the old value as our block
+	 */
+	private void reserveBlock() throws IOException {
+		try (RandomAccessFile counter = new RandomAccessFile(counterFile, "rw")) {
+			FileLock lock = counter.getChannel().lock(LOCK_POSITION, 1, false);
+			try {
+				long start;
+				
+				if (counter.length() < 12) {
+					// No counter yet so start after every order already written
+					start = findFirstFreeID();
+				} else {
+					start = counter.readLong();
+					int checksum = counter.readInt();
+					
+					// If it's been corrupted start again well past anything another process could have reserved
+					if (checksum != checksum(start)) {
+						System.err.println("Order ID counter corrupted, recovering from the order journal");
+						start = findFirstFreeID() + RECOVERY_GAP;
+					}
+				}
+				
+				// Write the new value and make sure it's on disk before we use any of the block
+				counter.seek(0);
+				counter.writeLong(start + BLOCK_SIZE);
+				counter.writeInt(checksum(start + BLOCK_SIZE));
+				counter.getFD().sync();
+				
+				next = start;
+				limit = start + BLOCK_SIZE;
+			} finally {
+				lock.release();
+			}
+		}
+	}
+	
+	/*
+	 * Method to work out the first free ID from the journal and any old OrderN.txt files (only done
+	 * once, when there's no counter file yet)
+	 */
+	private long findFirstFreeID() {
+		long highest = journal.getHighestID();
+		
+		// Old order files might not have been imported into the journal yet
+		String[] files = orderFolder.list();
+		if (files != null) {
+			for (String name : files) {
+				if (name.matches("Order[0-9]+\\.txt")) {
+					long ID = Long.parseLong(name.substring(5, name.length() - 4));
+					highest = Math.max(highest, ID);
+				}
+			}
+		}
+		
+		return highest + 1;
+	}
+	
+	/*
+	 * Method to return the checksum stored with an ID
+	 */
+	private int checksum(long ID) {
+		CRC32 crc = new CRC32();
+		crc.update(Long.toString(ID).getBytes());
+		return (int) crc.getValue();
+	}
+
+}
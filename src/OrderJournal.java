@@ -0,0 +1,1102 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/*
+ * Class to store every Order in a single append-only journal file. Submissions and status changes
+ * are small records appended to the end, and the current state of every order is rebuilt by
+ * reading the journal from start to finish.
+ *
+ * Record layout: [int payload length][int CRC32 of payload][payload]
+ * Payload layout: [byte type][int order ID][type specific data]
+ *
+ * Each user also has an index file in the Users folder listing the offsets of every record about
+ * their orders, so a user's orders can be read without reading the whole journal. Index files
+ * start with the journal generation they belong to and are rebuilt whenever the journal is
+ * compacted. If they don't match the journal the whole journal is read instead. Reading an index
+ * backwards gives a user's orders newest first a page at a time.
+ *
+ * Submissions are written either serialized or with BinaryCodec depending on the format chosen in
+ * Comms, and both kinds can always be read back. Compacting rewrites every order in the chosen format.
+ *
+ * A separate end file holds the journal's generation and the offset of the end of the last
+ * complete record. It's also what gets locked while writing, so multiple ClientApplications
+ * and the BusinessApplication can all append safely. Anything past the end offset is a torn
+ * write from a crash and gets truncated by the next writer. A crash part way through compacting
+ * can leave the end file describing the old journal, which shows up as its generation not matching
+ * the journal's header, and then the end is found again by reading the journal.
+ */
+
+public class OrderJournal {
+	
+	private static final int MAGIC = 0x534A4E31; // "SJN1" at the start of every journal
+	private static final int HEADER_SIZE = 12; // Magic + generation
+	
+	// Record types
+	private static final byte SUBMIT = 1;
+	private static final byte STATUS = 2;
+	private static final byte REMOVE = 3;
+	private static final byte SUBMIT_BINARY = 4; // Submission written with BinaryCodec rather than serialized
+	
+	private static final long FLUSH_INTERVAL = 50; // Milliseconds between batched writes
+	private static final long LOCK_POSITION = Long.MAX_VALUE - 1; // Lock past the data so readers aren't blocked on Windows
+	
+	private File journalFile;
+	private File endFile;
+	private File indexFolder; // Folder holding an index file for each user
+	private File indexGenerationFile; // Generation the index files were last rebuilt for
+	
+	private long generation; // Generation of the journal we've read (changes when it's compacted)
+	private long readOffset; // How far through the journal we've read
+	private int highestID; // Highest order ID we've seen
+	private boolean binary; // Whether new submissions are written with BinaryCodec
+	
+	private LinkedHashMap<Integer, Order> orders; // Every live order in journal order
+	private LinkedHashMap<Integer, Order> submittedOrders; // Orders still SUBMITTED (not received by the business)
+	
+	private OrderIdAllocator idAllocator; // Hands out order IDs without reading the journal
+	
+	private ArrayList<byte[]> batch; // Records waiting to be written by the flusher
+	private ArrayList<String> batchUsers; // User each batched record is about (for the index files)
+	private Thread flusher; // Thread writing batched records (only started if something is batched)
+	
+	/*
+	 * Constructor to create a new OrderJournal in a folder
+	 */
+	public OrderJournal(String folder, boolean binary) {
+		this.journalFile = new File(folder + "Orders.journal");
+		this.endFile = new File(folder + "Orders.journal.end");
+		this.indexFolder = new File(folder + "Users/");
+		this.indexGenerationFile = new File(folder + "Users/Index.generation");
+		
+		this.generation = -1;
+		this.readOffset = 0;
+		this.highestID = 0;
+		this.binary = binary;
+		
+		this.orders = new LinkedHashMap<>();
+		this.submittedOrders = new LinkedHashMap<>();
+		this.batch = new ArrayList<>();
+		this.batchUsers = new ArrayList<>();
+		
+		this.idAllocator = new OrderIdAllocator(folder, this);
+	}
+	
+	/*
+	 * Method to check whether a journal has been created yet
+	 */
+	public boolean exists() {
+		return journalFile.exists();
+	}
+	
+	/*
+	 * Synchronized method to append a new order, give it an ID and make sure it's on disk before returning
+	 */
+	public synchronized void submit(Order order) throws IOException {
+		// Reserve an ID first (usually straight from our reserved block without touching disk)
+		order.setID(idAllocator.allocate());
+		
+		// Frame the record before taking the lock to keep the locked part short
+		byte[] record = submitRecord(order);
+		
+		try (RandomAccessFile end = new RandomAccessFile(endFile, "rw")) {
+			FileLock lock = end.getChannel().lock(LOCK_POSITION, 1, false);
+			try {
+				// Append it at the committed end and commit
+				long committed = prepareForAppend(end);
+				writeRecords(end, committed, new byte[][] {record}, new String[] {order.getUser().getUsername()});
+			} finally {
+				lock.release();
+			}
+		}
+	}
+	
+	/*
+	 * Synchronized method to return the highest order ID ever written to the journal
+	 */
+	public synchronized int getHighestID() {
+		tail();
+		return highestID;
+	}
+	
+	/*
+	 * Synchronized method to record a status change (written in the background with other changes)
+	 */
+	public synchronized void updateStatus(Order order) {
+		// Keep our view up to date straight away
+		if (order.getStatus() != Order.Status.SUBMITTED) {
+			submittedOrders.remove(order.getID());
+		}
+		
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(1);
+		payload.write(order.getStatus().ordinal());
+		addToBatch(frame(STATUS, order.getID(), payload.toByteArray()), order.getUser().getUsername());
+	}
+	
+	/*
+	 * Synchronized method to record that an order has been removed (written in the background)
+	 */
+	public synchronized void remove(Order order) {
+		orders.remove(order.getID());
+		submittedOrders.remove(order.getID());
+		
+		addToBatch(frame(REMOVE, order.getID(), new byte[0]), order.getUser().getUsername());
+	}
+	
+	/*
+	 * Synchronized method to return every live order, reading anything new from the journal first
+	 */
+	public synchronized ArrayList<Order> getOrders() {
+		tail();
+		return new ArrayList<>(orders.values());
+	}
+	
+	/*
+	 * Synchronized method to return every order nobody has received yet, oldest first
+	 */
+	public synchronized ArrayList<Order> getSubmitted() {
+		tail();
+		return new ArrayList<>(submittedOrders.values());
+	}
+	
+	/*
+	 * Synchronized method to return every live order submitted by a user, reading only that user's
+	 * records if their index file is up to date
+	 */
+	public synchronized ArrayList<Order> getUsersOrders(String username) {
+		LinkedHashMap<Integer, Order> usersOrders = new LinkedHashMap<>();
+		
+		try {
+			// No journal yet means no orders yet
+			long[] end = readEnd();
+			if (end == null) {
+				return new ArrayList<>();
+			}
+			
+			// If the index files weren't built for this journal read the whole thing instead
+			long[] offsets = readIndex(username, end[0]);
+			if (offsets == null) {
+				return scanUsersOrders(username);
+			}
+			
+			// Read just those records
+			try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+				for (long offset : offsets) {
+					byte[] payload = readRecord(channel, offset, end[1], false);
+					if (payload != null) {
+						applyUsersRecord(payload, username, usersOrders);
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		}
+		
+		return new ArrayList<>(usersOrders.values());
+	}
+	
+	/*
+	 * Synchronized method to return a page of a user's live orders, newest first. Their index is read
+	 * backwards from the newest record, so only the records about the orders on the page (and anything
+	 * newer) are read, and only the orders on the page are read in full.
+	 */
+	public synchronized OrderPage getUsersOrdersPage(String username, int cursor, int size) {
+		ArrayList<Order> page = new ArrayList<>();
+		
+		try {
+			// No journal yet means no orders yet
+			long[] end = readEnd();
+			if (end == null) {
+				return new OrderPage(page, cursor, false);
+			}
+			
+			// If the index files weren't built for this journal read the whole thing instead
+			long[] offsets = readIndex(username, end[0]);
+			if (offsets == null) {
+				return pageOf(scanUsersOrders(username), cursor, size);
+			}
+			
+			// Latest status of each order and which have been removed, from the records newer than their submission
+			HashMap<Integer, Order.Status> statuses = new HashMap<>();
+			HashSet<Integer> skipped = new HashSet<>(); // Removed orders and orders already passed
+			boolean found = cursor == OrderPage.NEWEST; // Whether we've got past the cursor yet
+			boolean more = false;
+			
+			try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+				for (int i = offsets.length - 1; i >= 0 && !more; i--) {
+					// Only look at the type and ID to start with
+					byte[] peek = readRecord(channel, offsets[i], end[1], true);
+					if (peek == null) {
+						continue;
+					}
+					
+					DataInputStream data = new DataInputStream(new ByteArrayInputStream(peek));
+					byte type = data.readByte();
+					int ID = data.readInt();
+					
+					if (type == STATUS) {
+						byte[] payload = readRecord(channel, offsets[i], end[1], false);
+						if (payload != null && payload.length > 5) {
+							Order.Status status = Order.Status.values()[payload[5]];
+							Order.Status latest = statuses.get(ID);
+							
+							if (latest == null || status.ordinal() > latest.ordinal()) {
+								statuses.put(ID, status);
+							}
+						}
+					} else if (type == REMOVE) {
+						skipped.add(ID);
+					} else if (type == SUBMIT || type == SUBMIT_BINARY) {
+						// Orders newer than the cursor were on earlier pages. This comes before checking for
+						// removed orders as the cursor's order still marks where the last page ended if it's
+						// been removed since
+						if (!found) {
+							found = ID == cursor;
+							skipped.add(ID);
+							continue;
+						}
+						
+						if (!skipped.add(ID)) {
+							continue;
+						}
+						
+						// One more live order than fits means there's another page
+						if (page.size() == size) {
+							more = true;
+							continue;
+						}
+						
+						byte[] payload = readRecord(channel, offsets[i], end[1], false);
+						if (payload == null) {
+							continue;
+						}
+						
+						data = new DataInputStream(new ByteArrayInputStream(payload, 5, payload.length - 5));
+						Order order = readOrder(type, data);
+						order.setID(ID);
+						
+						// Ignore entries pointing at records rewritten for someone else after a crash
+						if (!order.getUser().getUsername().equals(username)) {
+							continue;
+						}
+						
+						Order.Status status = statuses.get(ID);
+						if (status != null && status.ordinal() > order.getStatus().ordinal()) {
+							order.setStatus(status);
+						}
+						
+						page.add(order);
+					}
+				}
+			}
+			
+			// The cursor's order isn't in the user's index any more (removed and then compacted away), so
+			// start again from the newest - whoever is paging already has these and skips them
+			if (!found) {
+				return getUsersOrdersPage(username, OrderPage.NEWEST, size);
+			}
+			
+			return new OrderPage(page, page.isEmpty() ? cursor : page.get(page.size() - 1).getID(), more);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		}
+		
+		return new OrderPage(page, cursor, false);
+	}
+	
+	/*
+	 * Method to return a page of orders from a list of a user's orders in journal order
+	 */
+	private OrderPage pageOf(ArrayList<Order> usersOrders, int cursor, int size) {
+		ArrayList<Order> page = new ArrayList<>();
+		
+		// Find where the last page got to, starting again from the newest if its order has gone
+		int start = usersOrders.size() - 1;
+		if (cursor != OrderPage.NEWEST) {
+			for (int i = start; i >= 0; i--) {
+				if (usersOrders.get(i).getID() == cursor) {
+					start = i - 1;
+					break;
+				}
+			}
+		}
+		
+		for (int i = start; i >= 0 && page.size() < size; i--) {
+			page.add(usersOrders.get(i));
+		}
+		
+		boolean more = start - page.size() >= 0;
+		return new OrderPage(page, page.isEmpty() ? cursor : page.get(page.size() - 1).getID(), more);
+	}
+	
+	/*
+	 * Method to read the current generation and committed end from the end file (null if there's no journal yet)
+	 */
+	private long[] readEnd() throws IOException {
+		if (!journalFile.exists() || !endFile.exists()) {
+			return null;
+		}
+		
+		try (RandomAccessFile end = new RandomAccessFile(endFile, "r")) {
+			if (end.length() < 16) {
+				return null;
+			}
+			
+			return new long[] {end.readLong(), end.readLong()};
+		}
+	}
+	
+	/*
+	 * Method to read the offsets of every record about a user's orders from their index file, oldest
+	 * first. Returns null if the index files don't match the journal's generation.
+	 */
+	private long[] readIndex(String username, long currentGeneration) throws IOException {
+		if (readIndexGeneration() != currentGeneration) {
+			return null;
+		}
+		
+		// No index file means they've never ordered, unless the index files are being rebuilt
+		// since we checked
+		File indexFile = getIndexFile(username);
+		if (!indexFile.exists()) {
+			return readIndexGeneration() == currentGeneration ? new long[0] : null;
+		}
+		
+		try (DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			int count = (int) ((indexFile.length() - 8) / 8);
+			
+			if (index.readLong() != currentGeneration) {
+				return null;
+			}
+			
+			long[] offsets = new long[count];
+			for (int i = 0; i < count; i++) {
+				offsets[i] = index.readLong();
+			}
+			
+			return offsets;
+		}
+	}
+	
+	/*
+	 * Method to read the payload of the record at an offset, or null if it isn't committed or is
+	 * corrupt. If peeking only the type and order ID are read (and can't be checked).
+	 */
+	private byte[] readRecord(FileChannel channel, long offset, long committed, boolean peek) throws IOException {
+		// Skip anything not committed yet
+		if (offset < HEADER_SIZE || offset + 8 > committed) {
+			return null;
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(8);
+		channel.read(header, offset);
+		header.flip();
+		int length = header.getInt();
+		int checksum = header.getInt();
+		
+		if (length < 5 || offset + 8 + length > committed) {
+			return null;
+		}
+		
+		ByteBuffer payload = ByteBuffer.allocate(peek ? 5 : length);
+		while (payload.hasRemaining()) {
+			if (channel.read(payload, offset + 8 + payload.position()) < 0) {
+				return null;
+			}
+		}
+		
+		if (peek) {
+			return payload.array();
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(payload.array());
+		if ((int) crc.getValue() != checksum) {
+			return null;
+		}
+		
+		return payload.array();
+	}
+	
+	/*
+	 * Method to find a user's orders by reading the whole journal
+	 */
+	private ArrayList<Order> scanUsersOrders(String username) {
+		tail();
+		
+		ArrayList<Order> usersOrders = new ArrayList<>();
+		for (Order order : orders.values()) {
+			if (order.getUser().getUsername().equals(username)) {
+				usersOrders.add(order);
+			}
+		}
+		
+		return usersOrders;
+	}
+	
+	/*
+	 * Method to read the generation the index files were built for (-1 if they never have been)
+	 */
+	private long readIndexGeneration() {
+		try (DataInputStream marker = new DataInputStream(new FileInputStream(indexGenerationFile))) {
+			return marker.readLong();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+	
+	/*
+	 * Method to apply a record from a user's index to their orders (ignoring anything about other
+	 * users' orders, in case an entry points at a record that was rewritten after a crash)
+	 */
+	private void applyUsersRecord(byte[] payload, String username, LinkedHashMap<Integer, Order> usersOrders) throws IOException, ClassNotFoundException {
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+		byte type = data.readByte();
+		int ID = data.readInt();
+		
+		if (type == SUBMIT || type == SUBMIT_BINARY) {
+			Order order = readOrder(type, data);
+			order.setID(ID);
+			
+			if (order.getUser().getUsername().equals(username) && !usersOrders.containsKey(ID)) {
+				usersOrders.put(ID, order);
+			}
+		} else if (type == STATUS) {
+			Order.Status status = Order.Status.values()[data.readByte()];
+			Order current = usersOrders.get(ID);
+			
+			if (current != null && status.ordinal() > current.getStatus().ordinal()) {
+				current.setStatus(status);
+			}
+		} else if (type == REMOVE) {
+			usersOrders.remove(ID);
+		}
+	}
+	
+	/*
+	 * Synchronized method to import orders saved the old way (one serialized file per order)
+	 */
+	public synchronized void importOrders(ArrayList<Order> legacyOrders) throws IOException {
+		try (RandomAccessFile end = new RandomAccessFile(endFile, "rw")) {
+			FileLock lock = end.getChannel().lock(LOCK_POSITION, 1, false);
+			try {
+				long committed = prepareForAppend(end);
+				
+				// Write every order out as a submission with whatever status it had
+				byte[][] records = new byte[legacyOrders.size()][];
+				String[] usernames = new String[legacyOrders.size()];
+				for (int i = 0; i < legacyOrders.size(); i++) {
+					Order order = legacyOrders.get(i);
+					records[i] = submitRecord(order);
+					usernames[i] = order.getUser().getUsername();
+				}
+				
+				writeRecords(end, committed, records, usernames);
+			} finally {
+				lock.release();
+			}
+		}
+	}
+	
+	/*
+	 * Synchronized method to rewrite the journal with one record per live order, dropping old
+	 * status changes and removed orders. Only the BusinessApplication does this, on startup.
+	 */
+	public synchronized void compact() throws IOException {
+		// Get anything waiting written first
+		flush();
+		
+		try (RandomAccessFile end = new RandomAccessFile(endFile, "rw")) {
+			FileLock lock = end.getChannel().lock(LOCK_POSITION, 1, false);
+			try {
+				prepareForAppend(end);
+				
+				// Make sure we have every order before rewriting
+				tail();
+				
+				long newGeneration = System.currentTimeMillis();
+				File tempFile = new File(journalFile.getPath() + ".tmp");
+				LinkedHashMap<String, ArrayList<Long>> entries = new LinkedHashMap<>();
+				
+				// Write the new journal out to a temporary file
+				long size;
+				try (FileChannel output = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					DataOutputStream data = new DataOutputStream(bytes);
+					data.writeInt(MAGIC);
+					data.writeLong(newGeneration);
+					
+					// Note where each user's orders end up for the new index files
+					for (Order order : orders.values()) {
+						addIndexEntry(entries, order.getUser().getUsername(), data.size());
+						data.write(submitRecord(order));
+					}
+					
+					data.flush();
+					output.write(ByteBuffer.wrap(bytes.toByteArray()));
+					output.force(true);
+					size = output.size();
+				}
+				
+				// Rebuild the index files for the new journal (until the end file points at it readers
+				// will see they don't match and read the whole journal instead)
+				writeIndexes(newGeneration, entries);
+				
+				// Swap it in and then point the end file at it
+				Files.move(tempFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				writeEnd(end, newGeneration, size);
+				
+				// Everything we know about is already in the new journal
+				generation = newGeneration;
+				readOffset = size;
+			} finally {
+				lock.release();
+			}
+		}
+	}
+	
+	/*
+	 * Synchronized method to write out any batched records now
+	 */
+	public synchronized void flush() {
+		// Nothing to do if nothing's waiting
+		if (batch.isEmpty()) {
+			return;
+		}
+		
+		byte[][] records = batch.toArray(new byte[batch.size()][]);
+		String[] usernames = batchUsers.toArray(new String[batchUsers.size()]);
+		
+		try (RandomAccessFile end = new RandomAccessFile(endFile, "rw")) {
+			FileLock lock = end.getChannel().lock(LOCK_POSITION, 1, false);
+			try {
+				long committed = prepareForAppend(end);
+				writeRecords(end, committed, records, usernames);
+				
+				batch.clear();
+				batchUsers.clear();
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			// Leave them in the batch to try again next time
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * Method to add a record about a user's order to the batch and make sure the flusher is running
+	 */
+	private void addToBatch(byte[] record, String username) {
+		batch.add(record);
+		batchUsers.add(username);
+		
+		// Start the flusher the first time something's batched
+		if (flusher == null) {
+			flusher = new Thread(new Flusher());
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+		
+		notifyAll();
+	}
+	
+	/*
+	 * Method to get ready to append (must hold the lock) - creates the journal if needed and chops
+	 * off any torn write. Returns the committed end offset.
+	 */
+	private long prepareForAppend(RandomAccessFile end) throws IOException {
+		// If there's no journal yet create one with just a header
+		if (!journalFile.exists() || end.length() < 16) {
+			long newGeneration = System.currentTimeMillis();
+			
+			try (FileChannel output = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC);
+				header.putLong(newGeneration);
+				header.flip();
+				output.write(header);
+				output.force(true);
+			}
+			
+			// Any index files left over belong to some other journal
+			writeIndexes(newGeneration, new LinkedHashMap<>());
+			writeEnd(end, newGeneration, HEADER_SIZE);
+		}
+		
+		end.seek(0);
+		long currentGeneration = end.readLong();
+		long committed = end.readLong();
+		
+		try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// A crash while compacting can leave the end file describing the old journal. The new
+			// journal's header is right, so find its end by reading it and put the end file and the
+			// index files right before anything is appended
+			long journalGeneration = readJournalGeneration(channel);
+			if (journalGeneration != currentGeneration) {
+				System.err.println("Order journal end file doesn't match the journal, finding the end again");
+				
+				LinkedHashMap<String, ArrayList<Long>> entries = new LinkedHashMap<>();
+				committed = findCommittedEnd(channel, entries);
+				
+				writeIndexes(journalGeneration, entries);
+				writeEnd(end, journalGeneration, committed);
+			}
+			
+			// Anything past the committed end is a write that never finished
+			if (channel.size() > committed) {
+				channel.truncate(committed);
+			}
+		}
+		
+		return committed;
+	}
+	
+	/*
+	 * Method to read the generation from the header at the start of the journal
+	 */
+	private long readJournalGeneration(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				throw new IOException("Order journal has no header");
+			}
+		}
+		header.flip();
+		
+		if (header.getInt() != MAGIC) {
+			throw new IOException("Not an order journal");
+		}
+		
+		return header.getLong();
+	}
+	
+	/*
+	 * Method to find the end of the last complete record by reading the whole journal, for when the
+	 * end file can't be trusted. If entries is given the offset of every record is added to it for
+	 * the index files.
+	 */
+	private long findCommittedEnd(FileChannel channel, LinkedHashMap<String, ArrayList<Long>> entries) throws IOException {
+		HashMap<Integer, String> owners = new HashMap<>(); // User each order belongs to
+		long offset = HEADER_SIZE;
+		
+		// Stop at the first record that's torn or doesn't check out
+		byte[] payload;
+		while ((payload = readRecord(channel, offset, channel.size(), false)) != null) {
+			if (entries != null) {
+				DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+				byte type = data.readByte();
+				int ID = data.readInt();
+				
+				if (type == SUBMIT || type == SUBMIT_BINARY) {
+					try {
+						owners.put(ID, readOrder(type, data).getUser().getUsername());
+					} catch (ClassNotFoundException e) {
+						e.printStackTrace();
+					}
+				}
+				
+				// Status changes and removals go in the index of whoever the order belongs to
+				String username = owners.get(ID);
+				if (username != null) {
+					addIndexEntry(entries, username, offset);
+				}
+			}
+			
+			offset += 8 + payload.length;
+		}
+		
+		return offset;
+	}
+	
+	/*
+	 * Method to append records at the committed end, sync them and move the end on (must hold the lock).
+	 * Each record is about an order belonging to the user at the same position in usernames.
+	 */
+	private void writeRecords(RandomAccessFile end, long committed, byte[][] records, String[] usernames) throws IOException {
+		// Put every record in a single buffer so it's one write
+		int length = 0;
+		for (byte[] record : records) {
+			length += record.length;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		for (byte[] record : records) {
+			buffer.put(record);
+		}
+		buffer.flip();
+		
+		try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+			channel.position(committed);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			// One sync for the whole batch
+			channel.force(false);
+		}
+		
+		end.seek(0);
+		long currentGeneration = end.readLong();
+		
+		// Add the records to the users' index files before committing them (readers ignore any
+		// entries past the committed end so a crash here is harmless)
+		LinkedHashMap<String, ArrayList<Long>> entries = new LinkedHashMap<>();
+		long offset = committed;
+		for (int i = 0; i < records.length; i++) {
+			addIndexEntry(entries, usernames[i], offset);
+			offset += records[i].length;
+		}
+		appendToIndexes(currentGeneration, entries);
+		
+		// Move the committed end on, keeping whichever generation is current
+		writeEnd(end, currentGeneration, committed + length);
+	}
+	
+	/*
+	 * Method to add the offset of a record to the entries for a user
+	 */
+	private void addIndexEntry(LinkedHashMap<String, ArrayList<Long>> entries, String username, long offset) {
+		ArrayList<Long> offsets = entries.get(username);
+		if (offsets == null) {
+			offsets = new ArrayList<>();
+			entries.put(username, offsets);
+		}
+		
+		offsets.add(offset);
+	}
+	
+	/*
+	 * Method to return the index file for a user
+	 */
+	private File getIndexFile(String username) {
+		return new File(indexFolder, username + ".idx");
+	}
+	
+	/*
+	 * Method to replace every index file with new ones for a generation (must hold the lock)
+	 */
+	private void writeIndexes(long generation, LinkedHashMap<String, ArrayList<Long>> entries) throws IOException {
+		indexFolder.mkdirs();
+		
+		// Stop readers trusting the index files before touching them (the end file still holds the
+		// old generation, so otherwise a deleted index would look like a user who's never ordered)
+		writeIndexGeneration(-1);
+		
+		// Get rid of the old index files
+		File[] oldFiles = indexFolder.listFiles();
+		if (oldFiles != null) {
+			for (File file : oldFiles) {
+				if (file.getName().endsWith(".idx")) {
+					file.delete();
+				}
+			}
+		}
+		
+		appendToIndexes(generation, entries);
+		
+		// Only now say the index files can be trusted for this generation
+		writeIndexGeneration(generation);
+	}
+	
+	/*
+	 * Method to write the generation the index files were built for (-1 while they're being rebuilt)
+	 */
+	private void writeIndexGeneration(long generation) throws IOException {
+		try (RandomAccessFile marker = new RandomAccessFile(indexGenerationFile, "rw")) {
+			marker.setLength(0);
+			marker.writeLong(generation);
+			marker.getFD().sync();
+		}
+	}
+	
+	/*
+	 * Method to append offsets to each user's index file, creating any that don't exist (must hold the lock).
+	 * The index files aren't synced - anything lost in a crash is put back when the journal is next compacted.
+	 */
+	private void appendToIndexes(long generation, LinkedHashMap<String, ArrayList<Long>> entries) throws IOException {
+		indexFolder.mkdirs();
+		
+		for (String username : entries.keySet()) {
+			ArrayList<Long> offsets = entries.get(username);
+			
+			try (RandomAccessFile index = new RandomAccessFile(getIndexFile(username), "rw")) {
+				// Start a new index if there isn't one, otherwise drop any half written entry
+				long length = index.length();
+				if (length < 8) {
+					index.setLength(0);
+					index.writeLong(generation);
+					length = 8;
+				} else {
+					length -= (length - 8) % 8;
+				}
+				
+				ByteBuffer buffer = ByteBuffer.allocate(offsets.size() * 8);
+				for (long offset : offsets) {
+					buffer.putLong(offset);
+				}
+				
+				index.seek(length);
+				index.write(buffer.array());
+			}
+		}
+	}
+	
+	/*
+	 * Method to write the generation and committed end to the end file
+	 */
+	private void writeEnd(RandomAccessFile end, long generation, long offset) throws IOException {
+		end.seek(0);
+		end.writeLong(generation);
+		end.writeLong(offset);
+		end.getFD().sync();
+	}
+	
+	/*
+	 * Method to read every complete record between where we got to last time and the committed end
+	 */
+	private void tail() {
+		// No journal yet means no orders yet
+		if (!journalFile.exists() || !endFile.exists()) {
+			return;
+		}
+		
+		try {
+			// Find the current generation and committed end
+			long currentGeneration;
+			long committed;
+			try (RandomAccessFile end = new RandomAccessFile(endFile, "r")) {
+				if (end.length() < 16) {
+					return;
+				}
+				
+				currentGeneration = end.readLong();
+				committed = end.readLong();
+			}
+			
+			try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+				// A crash while compacting can leave the end file describing the old journal until the
+				// next writer puts it right, so go by the journal's header and read as far as the records
+				// check out
+				long journalGeneration = readJournalGeneration(channel);
+				if (journalGeneration != currentGeneration) {
+					currentGeneration = journalGeneration;
+					committed = findCommittedEnd(channel, null);
+				}
+				
+				// If the journal's been compacted since we last read, start again from scratch
+				if (currentGeneration != generation) {
+					generation = currentGeneration;
+					readOffset = HEADER_SIZE;
+					orders.clear();
+					submittedOrders.clear();
+				}
+				
+				// Nothing new to read
+				if (committed <= readOffset) {
+					return;
+				}
+				
+				channel.position(readOffset);
+				DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+				
+				// Read records until we reach the committed end
+				while (readOffset + 8 <= committed) {
+					int length = input.readInt();
+					int checksum = input.readInt();
+					
+					// Stop at anything that doesn't fit (shouldn't happen below the committed end)
+					if (length < 5 || readOffset + 8 + length > committed) {
+						break;
+					}
+					
+					byte[] payload = new byte[length];
+					input.readFully(payload);
+					
+					// Stop at anything corrupted
+					CRC32 crc = new CRC32();
+					crc.update(payload);
+					if ((int) crc.getValue() != checksum) {
+						System.err.println("Corrupt record in order journal at offset " + readOffset);
+						break;
+					}
+					
+					apply(payload);
+					readOffset += 8 + length;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * Method to apply a single record to our view of the orders
+	 */
+	private void apply(byte[] payload) throws IOException, ClassNotFoundException {
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+		byte type = data.readByte();
+		int ID = data.readInt();
+		
+		// Keep track of the highest ID even for removed orders so they're never reused
+		if (ID > highestID) {
+			highestID = ID;
+		}
+		
+		switch (type) {
+			case SUBMIT:
+			case SUBMIT_BINARY:
+				// Read in the order (keeping the one we already have if we've seen it before)
+				Order order = readOrder(type, data);
+				order.setID(ID);
+				
+				if (!orders.containsKey(ID)) {
+					orders.put(ID, order);
+					
+					if (order.getStatus() == Order.Status.SUBMITTED) {
+						submittedOrders.put(ID, order);
+					}
+				}
+				break;
+			case STATUS:
+				Order.Status status = Order.Status.values()[data.readByte()];
+				Order current = orders.get(ID);
+				
+				// Statuses only ever move forwards, so ignore anything older than what we already have
+				// (the business updates its own orders before the record is written)
+				if (current != null && status.ordinal() > current.getStatus().ordinal()) {
+					current.setStatus(status);
+				}
+				
+				if (current != null && current.getStatus() != Order.Status.SUBMITTED) {
+					submittedOrders.remove(ID);
+				}
+				break;
+			case REMOVE:
+				orders.remove(ID);
+				submittedOrders.remove(ID);
+				break;
+			default:
+				System.err.println("Unknown record type in order journal: " + type);
+		}
+	}
+	
+	/*
+	 * Method to frame a record with its length and checksum
+	 */
+	private byte[] frame(byte type, int ID, byte[] data) {
+		// Build the payload
+		ByteBuffer payload = ByteBuffer.allocate(5 + data.length);
+		payload.put(type);
+		payload.putInt(ID);
+		payload.put(data);
+		
+		CRC32 crc = new CRC32();
+		crc.update(payload.array());
+		
+		// Put the length and checksum in front of it
+		ByteBuffer record = ByteBuffer.allocate(8 + payload.capacity());
+		record.putInt(payload.capacity());
+		record.putInt((int) crc.getValue());
+		record.put(payload.array());
+		
+		return record.array();
+	}
+	
+	/*
+	 * Method to read the order in a submission record of either format
+	 */
+	private Order readOrder(byte type, DataInputStream data) throws IOException, ClassNotFoundException {
+		if (type == SUBMIT_BINARY) {
+			return BinaryCodec.readOrder(data);
+		}
+		
+		return (Order) new ObjectInputStream(data).readObject();
+	}
+	
+	/*
+	 * Method to frame a submission record in whichever format we're writing
+	 */
+	private byte[] submitRecord(Order order) throws IOException {
+		if (!binary) {
+			return frame(SUBMIT, order.getID(), serialize(order));
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		BinaryCodec.writeOrder(new DataOutputStream(bytes), order);
+		
+		return frame(SUBMIT_BINARY, order.getID(), bytes.toByteArray());
+	}
+	
+	/*
+	 * Method to serialize an order to bytes
+	 */
+	private byte[] serialize(Order order) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		try (ObjectOutputStream objectOutput = new ObjectOutputStream(bytes)) {
+			objectOutput.writeObject(order);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/*
+	 * Runnable class to write batched records at regular intervals
+	 */
+	private class Flusher implements Runnable {
+		
+		/*
+		 * Method run on Thread.start()
+		 */
+		public void run() {
+			// Run indefinitely
+			while (true) {
+				try {
+					synchronized (OrderJournal.this) {
+						// Wait for something to be batched
+						while (batch.isEmpty()) {
+							OrderJournal.this.wait();
+						}
+					}
+					
+					// Give other changes a moment to join the batch, then write them all with one sync
+					Thread.sleep(FLUSH_INTERVAL);
+					flush();
+				} catch (InterruptedException e) {
+					// Shouldn't be interrupted, just write what we have
+					flush();
+				}
+			}
+		}
+	}
+
+}
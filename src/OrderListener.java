@@ -0,0 +1,28 @@
+/*
+ * Interface for anything that needs to be told when an order changes through Comms
+ */
+
+public interface OrderListener {
+	
+	/*
+	 * Method called after a new Order has been taken in by the BusinessEngine
+	 */
+	default void orderReceived(Order order) {
+		// Intentionally blank (not every listener cares about new orders)
+	}
+	
+	/*
+	 * Method called after the status of an Order changes
+	 */
+	default void orderStatusChanged(Order order) {
+		// Intentionally blank (not every listener cares about status changes)
+	}
+	
+	/*
+	 * Method called after an Order is removed
+	 */
+	default void orderRemoved(Order order) {
+		// Intentionally blank (not every listener cares about removals)
+	}
+
+}
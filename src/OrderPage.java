@@ -0,0 +1,46 @@
+import java.util.ArrayList;
+
+/*
+ * Class to hold one page of a user's orders, newest first. The cursor is the ID of the oldest order
+ * on the page - passing it back gets the page of orders placed before it.
+ */
+
+public class OrderPage {
+	
+	public static final int NEWEST = -1; // Cursor for the first page
+	
+	private ArrayList<Order> orders; // Orders on this page, newest first
+	private int cursor; // Cursor for the next page
+	private boolean more; // Whether there are older orders after this page
+	
+	/*
+	 * Constructor to create a new OrderPage
+	 */
+	public OrderPage(ArrayList<Order> orders, int cursor, boolean more) {
+		this.orders = orders;
+		this.cursor = cursor;
+		this.more = more;
+	}
+	
+	/*
+	 * Method to return the orders on this page, newest first
+	 */
+	public ArrayList<Order> getOrders() {
+		return orders;
+	}
+	
+	/*
+	 * Method to return the cursor to get the next page with
+	 */
+	public int getCursor() {
+		return cursor;
+	}
+	
+	/*
+	 * Method to return whether there are older orders after this page
+	 */
+	public boolean hasMore() {
+		return more;
+	}
+
+}
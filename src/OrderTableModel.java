@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import javax.swing.table.AbstractTableModel;
+
+/*
+ * Table model for the BusinessOrdersPanel's order list - one row per order, so the JTable only has
+ * to render the rows that are visible and is told exactly which rows are added, removed or changed.
+ * Only to be used on the Event Dispatch Thread.
+ */
+
+public class OrderTableModel extends AbstractTableModel {
+	
+	private static final long serialVersionUID = 1L;
+	
+	// Columns
+	public static final int ID_COLUMN = 0;
+	public static final int USERNAME_COLUMN = 1;
+	public static final int DATE_COLUMN = 2;
+	public static final int PRICE_COLUMN = 3;
+	public static final int STATUS_COLUMN = 4;
+	
+	private static final String[] COLUMN_NAMES = { "ID", "Username", "Date", "Order Total", "Status" };
+	private static final Class<?>[] COLUMN_CLASSES = { Integer.class, String.class, String.class, Double.class, Order.Status.class };
+	
+	private ArrayList<Order> orders; // Orders in the order they were added
+	private IdentityHashMap<Order, Integer> rows; // Row each order is in
+	
+	/*
+	 * Constructor to create a new, empty OrderTableModel
+	 */
+	public OrderTableModel() {
+		this.orders = new ArrayList<>();
+		this.rows = new IdentityHashMap<>();
+	}
+	
+	/*
+	 * Method to add an order as a new row (ignored if it's already there)
+	 */
+	public void addOrder(Order order) {
+		if (rows.containsKey(order)) {
+			return;
+		}
+		
+		int row = orders.size();
+		orders.add(order);
+		rows.put(order, row);
+		
+		fireTableRowsInserted(row, row);
+	}
+	
+	/*
+	 * Method to remove an order's row
+	 */
+	public void removeOrder(Order order) {
+		Integer row = rows.remove(order);
+		if (row == null) {
+			return;
+		}
+		
+		orders.remove((int) row);
+		
+		// Everything after it has moved up a row
+		for (int i = row; i < orders.size(); i++) {
+			rows.put(orders.get(i), i);
+		}
+		
+		fireTableRowsDeleted(row, row);
+	}
+	
+	/*
+	 * Method to remove many orders' rows at once
+	 */
+	public void removeOrders(ArrayList<Order> removed) {
+		IdentityHashMap<Order, Boolean> removing = new IdentityHashMap<>();
+		for (Order order : removed) {
+			removing.put(order, true);
+		}
+		
+		orders.removeIf(order -> removing.containsKey(order));
+		
+		// Renumber what's left
+		rows.clear();
+		for (int i = 0; i < orders.size(); i++) {
+			rows.put(orders.get(i), i);
+		}
+		
+		fireTableDataChanged();
+	}
+	
+	/*
+	 * Method to redraw an order's row after it's changed
+	 */
+	public void orderChanged(Order order) {
+		Integer row = rows.get(order);
+		if (row != null) {
+			fireTableRowsUpdated(row, row);
+		}
+	}
+	
+	/*
+	 * Method to return the order in a row
+	 */
+	public Order getOrder(int row) {
+		return orders.get(row);
+	}
+	
+	/*
+	 * Method to return the number of rows
+	 */
+	public int getRowCount() {
+		return orders.size();
+	}
+	
+	/*
+	 * Method to return the number of columns
+	 */
+	public int getColumnCount() {
+		return COLUMN_NAMES.length;
+	}
+	
+	/*
+	 * Method to return the name of a column
+	 */
+	public String getColumnName(int column) {
+		return COLUMN_NAMES[column];
+	}
+	
+	/*
+	 * Method to return the type of a column (so it's sorted and rendered properly)
+	 */
+	public Class<?> getColumnClass(int column) {
+		return COLUMN_CLASSES[column];
+	}
+	
+	/*
+	 * Method to return the value in a cell
+	 */
+	public Object getValueAt(int row, int column) {
+		Order order = orders.get(row);
+		
+		switch (column) {
+			case ID_COLUMN:
+				return order.getID();
+			case USERNAME_COLUMN:
+				return order.getUser().getUsername();
+			case DATE_COLUMN:
+				return order.getDate();
+			case PRICE_COLUMN:
+				return order.getPrice();
+			default:
+				return order.getStatus();
+		}
+	}
+
+}
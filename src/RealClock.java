@@ -0,0 +1,72 @@
+import java.util.HashMap;
+
+/*
+ * Class to keep time with the system clock
+ */
+
+public class RealClock implements Clock {
+	
+	private HashMap<Thread, Object> waiting; // Threads waiting for work (and what on)
+	
+	/*
+	 * Constructor to create a new RealClock
+	 */
+	public RealClock() {
+		this.waiting = new HashMap<>();
+	}
+	
+	/*
+	 * Method to return the current time in milliseconds
+	 */
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+	
+	/*
+	 * Method to block the calling thread for an amount of time
+	 */
+	public void sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+	
+	/*
+	 * Method to register a thread (nothing to keep track of in real time)
+	 */
+	public void register() {
+	}
+	
+	/*
+	 * Method to unregister a thread (nothing to keep track of in real time)
+	 */
+	public void unregister() {
+	}
+	
+	/*
+	 * Synchronized method called by a thread that's found no work, while holding the lock
+	 */
+	public synchronized void beginWait(Object lock) {
+		waiting.put(Thread.currentThread(), lock);
+	}
+	
+	/*
+	 * Synchronized method to block until wake() is called for the lock the calling thread called beginWait() with
+	 */
+	public synchronized void awaitWork() throws InterruptedException {
+		try {
+			while (waiting.containsKey(Thread.currentThread())) {
+				wait();
+			}
+		} finally {
+			waiting.remove(Thread.currentThread());
+		}
+	}
+	
+	/*
+	 * Synchronized method called when work is handed out - wakes every thread waiting for work on the lock
+	 */
+	public synchronized void wake(Object lock) {
+		waiting.values().removeIf(waitingOn -> waitingOn == lock);
+		notifyAll();
+	}
+	
+}
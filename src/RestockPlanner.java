@@ -0,0 +1,156 @@
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/*
+ * Class to keep every dish that needs preparing in order of urgency, so KitchenStaff can always
+ * pick the most urgent one without looking at every dish. A dish's urgency is its deficit (restocking
+ * level - stock - number in preparation) weighted by how many of it are waiting in received orders.
+ * SushiStock updates a dish's place whenever anything about it changes.
+ */
+
+public class RestockPlanner {
+	
+	private SushiStock sushiStock;
+	
+	private TreeSet<Entry> queue; // Dishes with a deficit, most urgent first
+	private HashMap<SushiDish, Entry> entries; // Each dish's current place in the queue
+	private HashMap<String, Integer> demand; // Number of each dish (by name) waiting in received orders
+	
+	private int totalDeficit; // Sum of the deficit of every dish in the queue
+	private long nextSequence; // Breaks ties so dishes waiting longest come first
+	
+	/*
+	 * Constructor to create a new RestockPlanner for a SushiStock
+	 */
+	public RestockPlanner(SushiStock sushiStock) {
+		this.sushiStock = sushiStock;
+		this.queue = new TreeSet<>();
+		this.entries = new HashMap<>();
+		this.demand = new HashMap<>();
+		this.totalDeficit = 0;
+		this.nextSequence = 0;
+	}
+	
+	/*
+	 * Synchronized method to recalculate a dish's urgency and move it to its new place (or take it
+	 * out of the queue if it doesn't need preparing)
+	 */
+	public synchronized void update(SushiDish dish) {
+		if (dish == null) {
+			return;
+		}
+		
+		Entry old = entries.get(dish);
+		Integer currentStock = sushiStock.getStock(dish);
+		Integer restockingLevel = sushiStock.getRestockingLevel(dish);
+		
+		// Work out the new deficit (nothing if it's been removed from stock)
+		int deficit = 0;
+		if (currentStock != null && restockingLevel != null) {
+			deficit = restockingLevel - currentStock - dish.getInPreparation();
+		}
+		
+		// Nothing to do if it's in the right place already
+		long priority = (long) deficit * (1 + getDemand(dish));
+		if (old != null && old.deficit == deficit && old.priority == priority) {
+			return;
+		}
+		
+		if (old != null) {
+			queue.remove(old);
+			entries.remove(dish);
+			totalDeficit -= old.deficit;
+		}
+		
+		if (deficit > 0) {
+			// Keep the old sequence number so it doesn't lose its place among equals
+			Entry entry = new Entry(dish, deficit, priority, old != null ? old.sequence : nextSequence++);
+			queue.add(entry);
+			entries.put(dish, entry);
+			totalDeficit += deficit;
+		}
+	}
+	
+	/*
+	 * Synchronized method to return the most urgent dish, or null if nothing needs preparing
+	 */
+	public synchronized SushiDish first() {
+		return queue.isEmpty() ? null : queue.first().dish;
+	}
+	
+	/*
+	 * Synchronized method to return the next most urgent dish after a dish, or null if there are no
+	 * more (or that dish no longer needs preparing)
+	 */
+	public synchronized SushiDish next(SushiDish dish) {
+		Entry entry = entries.get(dish);
+		if (entry == null) {
+			return null;
+		}
+		
+		Entry next = queue.higher(entry);
+		return next == null ? null : next.dish;
+	}
+	
+	/*
+	 * Synchronized method to return the total number of dishes that need preparing
+	 */
+	public synchronized int getTotalDeficit() {
+		return totalDeficit;
+	}
+	
+	/*
+	 * Synchronized method to change the number of a dish waiting in received orders
+	 */
+	public synchronized void changeDemand(String name, int amount) {
+		int current = demand.containsKey(name) ? demand.get(name) : 0;
+		int updated = Math.max(0, current + amount);
+		
+		if (updated == 0) {
+			demand.remove(name);
+		} else {
+			demand.put(name, updated);
+		}
+	}
+	
+	/*
+	 * Synchronized method to return the number of a dish waiting in received orders
+	 */
+	public synchronized int getDemand(SushiDish dish) {
+		Integer waiting = demand.get(dish.getName());
+		return waiting == null ? 0 : waiting;
+	}
+	
+	/*
+	 * Class to represent a dish's place in the queue
+	 */
+	private static class Entry implements Comparable<Entry> {
+		
+		private SushiDish dish;
+		private int deficit;
+		private long priority;
+		private long sequence;
+		
+		/*
+		 * Constructor to create a new Entry
+		 */
+		private Entry(SushiDish dish, int deficit, long priority, long sequence) {
+			this.dish = dish;
+			this.deficit = deficit;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+		
+		/*
+		 * Method to order entries by priority (highest first) then by sequence (lowest first)
+		 */
+		public int compareTo(Entry other) {
+			if (priority != other.priority) {
+				return Long.compare(other.priority, priority);
+			}
+			
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+
+}
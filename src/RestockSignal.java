@@ -0,0 +1,71 @@
+/*
+ * Class to park idle KitchenStaff until there's a deficit of dishes to fill. Fed by changes to
+ * SushiStock and IngredientStock so staff threads don't have to spin checking restock levels.
+ */
+
+public class RestockSignal implements StockListener {
+	
+	private SushiStock sushiStock;
+	private Clock clock; // Clock staff wait for work on
+	
+	private int permits; // Number of staff that should currently be awake looking for work
+	
+	/*
+	 * Constructor to create a new RestockSignal for a SushiStock
+	 */
+	public RestockSignal(SushiStock sushiStock, Clock clock) {
+		this.sushiStock = sushiStock;
+		this.clock = clock;
+		this.permits = 0;
+	}
+	
+	/*
+	 * Synchronized method to recalculate how much work there is and wake that many staff. The deficit
+	 * is read while holding our lock so an older reading can never overwrite a newer one (the
+	 * RestockPlanner's lock is only ever taken after ours, never the other way round).
+	 */
+	public synchronized void signal() {
+		// One permit per dish that needs preparing, replacing any stale count
+		permits = sushiStock.getTotalDeficit();
+		
+		// Only bother waking anyone if there's something to do
+		if (permits > 0) {
+			clock.wake(this);
+		}
+	}
+	
+	/*
+	 * Method to block until there's work available, then take a permit for it. Staff wait on the
+	 * clock rather than on us, so with virtual time it decides which of them runs when.
+	 */
+	public void await() throws InterruptedException {
+		while (true) {
+			synchronized (this) {
+				if (permits > 0) {
+					permits--;
+					return;
+				}
+				
+				// Staff woken beyond the number of permits just go straight back to waiting
+				clock.beginWait(this);
+			}
+			
+			clock.awaitWork();
+		}
+	}
+	
+	/*
+	 * Method called when a dish changes - could have increased or decreased the deficit
+	 */
+	public void dishStockChanged(SushiDish dish) {
+		signal();
+	}
+	
+	/*
+	 * Method called when an ingredient changes - new ingredients may let staff prepare a dish
+	 */
+	public void ingredientStockChanged(Ingredient ingredient) {
+		signal();
+	}
+	
+}
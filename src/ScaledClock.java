@@ -0,0 +1,39 @@
+/*
+ * Class to keep time running a fixed number of times faster than real time (e.g. a scale of 60
+ * makes every real second a minute)
+ */
+
+public class ScaledClock extends RealClock {
+	
+	private double scale; // Clock milliseconds per real millisecond
+	private long startMillis; // Clock time when we were created
+	private long startNanos; // Real time when we were created
+	
+	/*
+	 * Constructor to create a new ScaledClock starting from the current time
+	 */
+	public ScaledClock(double scale) {
+		if (scale <= 0) {
+			throw new IllegalArgumentException("Clock scale must be positive");
+		}
+		
+		this.scale = scale;
+		this.startMillis = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+	}
+	
+	/*
+	 * Method to return the current clock time in milliseconds
+	 */
+	public long currentTimeMillis() {
+		return startMillis + (long) ((System.nanoTime() - startNanos) / 1000000.0 * scale);
+	}
+	
+	/*
+	 * Method to block the calling thread for an amount of clock time
+	 */
+	public void sleep(long millis) throws InterruptedException {
+		Thread.sleep((long) (millis / scale));
+	}
+	
+}
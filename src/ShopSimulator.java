@@ -0,0 +1,378 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+/*
+ * Class to run the shop without the GUI on virtual time, to find out how many KitchenStaff and Drones
+ * are needed for a given load. Uses copies of the saved stock with the real KitchenStaff, Drone,
+ * RestockSignal and DispatchQueue logic, plays either a synthetic (Poisson) or recorded stream of
+ * orders into it and prints SimulationMetrics at the end. Nothing is saved to the business files -
+ * orders go through a Comms kept in a temporary folder.
+ *
+ * Usage: java ShopSimulator [orders=500] [hours=8] [staff=5] [drones=3] [speed=10] [capacity=3]
+ *                           [seed=1] [replay=<business folder to replay the orders of>]
+ */
+
+public class ShopSimulator {
+	
+	private static final long SAMPLE_INTERVAL = 60000; // Clock milliseconds between utilisation samples
+	private static final long DRAIN_LIMIT = 4 * 3600000; // Longest to wait for orders left at the end
+	
+	private VirtualClock clock;
+	private Comms comms;
+	private File folder; // Temporary folder the simulation's Comms works in
+	
+	private SushiStock sushiStock;
+	private IngredientStock ingredientStock;
+	private RestockSignal restockSignal;
+	private DispatchQueue dispatchQueue;
+	private SimulationMetrics metrics;
+	
+	private ArrayList<KitchenStaff> staff;
+	private ArrayList<Drone> drones;
+	private ArrayList<Thread> threads; // Threads running the staff, drones and sampler
+	
+	/*
+	 * Constructor to create a new ShopSimulator working on some stock, with every member of staff
+	 * taking preparation times from their own Random seeded from the one given
+	 */
+	public ShopSimulator(SushiStock sushiStock, IngredientStock ingredientStock, int staffCount, int droneCount, double droneSpeed, int droneCapacity, Random random) throws IOException {
+		this.clock = new VirtualClock(System.currentTimeMillis());
+		
+		// Keep the simulation's orders away from the real ones
+		this.folder = Files.createTempDirectory("sushi-simulation").toFile();
+		this.comms = new Comms(Comms.Format.BINARY, folder.getPath());
+		comms.prepareOrderJournal();
+		
+		this.sushiStock = sushiStock;
+		this.ingredientStock = ingredientStock;
+		
+		// Wire everything up the same way the BusinessApplication does
+		restockSignal = new RestockSignal(sushiStock, clock);
+		sushiStock.addStockListener(restockSignal);
+		ingredientStock.addStockListener(restockSignal);
+		
+		dispatchQueue = new DispatchQueue(sushiStock, ingredientStock, clock);
+		sushiStock.addStockListener(dispatchQueue);
+		ingredientStock.addStockListener(dispatchQueue);
+		
+		metrics = new SimulationMetrics(clock, sushiStock, ingredientStock);
+		sushiStock.addStockListener(metrics);
+		ingredientStock.addStockListener(metrics);
+		comms.addOrderListener(metrics);
+		
+		staff = new ArrayList<>();
+		for (int i = 0; i < staffCount; i++) {
+			staff.add(new KitchenStaff(sushiStock, ingredientStock, restockSignal, clock, new Random(random.nextLong())));
+		}
+		
+		drones = new ArrayList<>();
+		for (int i = 0; i < droneCount; i++) {
+			drones.add(new Drone(dispatchQueue, sushiStock, ingredientStock, comms, clock, droneSpeed, droneCapacity));
+		}
+		
+		threads = new ArrayList<>();
+	}
+	
+	/*
+	 * Method to play a stream of orders (each with its time after the start) through the shop and
+	 * return the metrics once every order is delivered (or DRAIN_LIMIT passes after the last one)
+	 */
+	public SimulationMetrics run(ArrayList<Arrival> arrivals) throws InterruptedException {
+		clock.register(); // This thread places the orders so takes part in the timing
+		
+		// Start every member of staff, every drone and the sampler
+		for (KitchenStaff member : staff) {
+			threads.add(new Thread(member));
+		}
+		for (Drone drone : drones) {
+			threads.add(new Thread(drone));
+		}
+		threads.add(new Thread(new Sampler()));
+		
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		
+		// Don't let time move on until everyone has started
+		clock.awaitRegistered(threads.size() + 1);
+		dispatchQueue.checkAllIngredients();
+		
+		long start = clock.currentTimeMillis();
+		
+		try {
+			// Place each order when its time comes
+			for (Arrival arrival : arrivals) {
+				long wait = start + arrival.getTime() - clock.currentTimeMillis();
+				if (wait > 0) {
+					clock.sleep(wait);
+				}
+				
+				placeOrder(arrival.getOrder());
+			}
+			
+			// Give the shop time to finish what's left
+			long deadline = clock.currentTimeMillis() + DRAIN_LIMIT;
+			while (!metrics.allDelivered() && clock.currentTimeMillis() < deadline) {
+				clock.sleep(SAMPLE_INTERVAL);
+			}
+		} finally {
+			metrics.finish();
+			clock.unregister();
+			stop();
+		}
+		
+		return metrics;
+	}
+	
+	/*
+	 * Method to place an order the same way the OrderReceiver takes one in
+	 */
+	private void placeOrder(Order order) {
+		// Gives it an ID
+		if (!comms.sendUserOrder(order)) {
+			System.err.println("Order couldn't be placed!");
+			return;
+		}
+		comms.updateOrderStatus(order, Order.Status.RECEIVED);
+		
+		metrics.orderArrived(order);
+		sushiStock.addDemand(order.getContent());
+		dispatchQueue.addOrder(order);
+	}
+	
+	/*
+	 * Method to stop every thread and clean up the temporary folder
+	 */
+	private void stop() throws InterruptedException {
+		for (KitchenStaff member : staff) {
+			member.stop();
+		}
+		for (Drone drone : drones) {
+			drone.stop();
+		}
+		
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		comms.flushOrders();
+		deleteFolder(folder);
+	}
+	
+	/*
+	 * Method to delete a folder and everything in it
+	 */
+	private static void deleteFolder(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteFolder(child);
+			}
+		}
+		
+		file.delete();
+	}
+	
+	/*
+	 * Method to make a synthetic stream of orders arriving at random (a Poisson process) at an
+	 * average rate, each for 1-3 random dishes from the menu going to a random postcode
+	 */
+	public static ArrayList<Arrival> syntheticArrivals(SushiStock sushiStock, ArrayList<String> postcodes, double ordersPerHour, double hours, Random random) {
+		// Copy out the menu
+		ArrayList<SushiDish> menu = new ArrayList<>();
+		synchronized (sushiStock) {
+			Iterator<SushiDish> dishIt = sushiStock.getStockIterator();
+			while (dishIt.hasNext()) {
+				menu.add(dishIt.next());
+			}
+		}
+		
+		ArrayList<Arrival> arrivals = new ArrayList<>();
+		if (menu.isEmpty() || ordersPerHour <= 0) {
+			return arrivals;
+		}
+		
+		double meanGap = 3600000.0 / ordersPerHour;
+		double time = 0;
+		int number = 0;
+		
+		while (true) {
+			// Time between arrivals is exponentially distributed
+			time += -Math.log(1 - random.nextDouble()) * meanGap;
+			if (time >= hours * 3600000) {
+				break;
+			}
+			
+			// Pick the dishes and work out the price
+			HashMap<SushiDish, Integer> content = new HashMap<>();
+			double price = 0;
+			int dishes = 1 + random.nextInt(Math.min(3, menu.size()));
+			
+			while (content.size() < dishes) {
+				SushiDish dish = menu.get(random.nextInt(menu.size()));
+				if (!content.containsKey(dish)) {
+					int quantity = 1 + random.nextInt(2);
+					content.put(dish, quantity);
+					price += dish.getPrice() * quantity;
+				}
+			}
+			
+			String postcode = postcodes.get(random.nextInt(postcodes.size()));
+			User user = new User("simulated" + number++, null, null, postcode);
+			
+			arrivals.add(new Arrival((long) time, new Order(user, "", content, price)));
+		}
+		
+		return arrivals;
+	}
+	
+	/*
+	 * Method to make a stream of orders from every order saved by a Comms, at the same times
+	 * (relative to the first) they were originally placed
+	 */
+	public static ArrayList<Arrival> recordedArrivals(Comms source) {
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss dd/M/yyyy"); // Format the client writes dates in
+		
+		ArrayList<Long> times = new ArrayList<>();
+		ArrayList<Order> orders = new ArrayList<>();
+		
+		for (Order order : source.getAllOrders()) {
+			try {
+				Date date = format.parse(order.getDate());
+				times.add(date.getTime());
+				orders.add(new Order(order.getUser(), order.getDate(), order.getContent(), order.getPrice()));
+			} catch (ParseException e) {
+				// Can't tell when it was placed so leave it out
+				System.err.println("Skipping order " + order.getID() + " with unreadable date '" + order.getDate() + "'");
+			}
+		}
+		
+		ArrayList<Arrival> arrivals = new ArrayList<>();
+		if (orders.isEmpty()) {
+			return arrivals;
+		}
+		
+		long first = Collections.min(times);
+		for (int i = 0; i < orders.size(); i++) {
+			arrivals.add(new Arrival(times.get(i) - first, orders.get(i)));
+		}
+		
+		// Play them back oldest first
+		Collections.sort(arrivals, (a, b) -> Long.compare(a.getTime(), b.getTime()));
+		
+		return arrivals;
+	}
+	
+	/*
+	 * Main launch method
+	 */
+	public static void main(String[] args) throws Exception {
+		// Read the name=value arguments
+		HashMap<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			String[] parts = arg.split("=", 2);
+			options.put(parts[0], parts.length > 1 ? parts[1] : "");
+		}
+		
+		double ordersPerHour = Double.parseDouble(options.getOrDefault("orders", "500"));
+		double hours = Double.parseDouble(options.getOrDefault("hours", "8"));
+		int staffCount = Integer.parseInt(options.getOrDefault("staff", "5"));
+		int droneCount = Integer.parseInt(options.getOrDefault("drones", "3"));
+		double speed = Double.parseDouble(options.getOrDefault("speed", "10"));
+		int capacity = Integer.parseInt(options.getOrDefault("capacity", "3"));
+		Random random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+		
+		// Start from the business's saved stock (read only, the simulation works on its own copy)
+		Comms business = new Comms();
+		IngredientStock ingredientStock = business.receiveIngredientStock();
+		SushiStock sushiStock = ingredientStock == null ? null : business.receiveSushiStock(ingredientStock);
+		
+		if (sushiStock == null) {
+			System.err.println("No saved stock to simulate - add some dishes and ingredients in the BusinessApplication first");
+			return;
+		}
+		
+		// Work out the orders to play
+		ArrayList<Arrival> arrivals;
+		if (options.containsKey("replay")) {
+			arrivals = recordedArrivals(new Comms(Comms.Format.BINARY, options.get("replay")));
+		} else {
+			arrivals = syntheticArrivals(sushiStock, new DeliveryPlanner().getPostcodes(), ordersPerHour, hours, random);
+		}
+		
+		System.out.println("Simulating " + arrivals.size() + " orders with " + staffCount + " staff and " + droneCount + " drones...");
+		
+		ShopSimulator simulator = new ShopSimulator(sushiStock, ingredientStock, staffCount, droneCount, speed, capacity, random);
+		simulator.run(arrivals).report(System.out);
+	}
+	
+	/*
+	 * Class to represent an order and when (after the start) it arrives
+	 */
+	public static class Arrival {
+		
+		private long time;
+		private Order order;
+		
+		/*
+		 * Constructor to create a new Arrival
+		 */
+		public Arrival(long time, Order order) {
+			this.time = time;
+			this.order = order;
+		}
+		
+		/*
+		 * Method to return the clock milliseconds after the start the order arrives
+		 */
+		public long getTime() {
+			return time;
+		}
+		
+		/*
+		 * Method to return the order
+		 */
+		public Order getOrder() {
+			return order;
+		}
+	
+	}
+	
+	/*
+	 * Runnable class to sample how busy staff and drones are every SAMPLE_INTERVAL
+	 */
+	private class Sampler implements Runnable {
+		
+		/*
+		 * Method run on Thread.start()
+		 */
+		public void run() {
+			clock.register();
+			
+			try {
+				while (true) {
+					clock.sleep(SAMPLE_INTERVAL);
+					metrics.sample(staff, drones);
+				}
+			} catch (InterruptedException e) {
+				// Interrupted means the simulation is over
+			} finally {
+				clock.unregister();
+			}
+		}
+	
+	}
+
+}
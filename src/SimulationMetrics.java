@@ -0,0 +1,191 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+/*
+ * Class to collect the results of a ShopSimulator run - throughput, how long orders took from
+ * arriving to being delivered, how busy KitchenStaff and Drones were and how often stock ran out.
+ * Listens to order and stock changes, and is sampled for utilisation by the simulator.
+ */
+
+public class SimulationMetrics implements OrderListener, StockListener {
+	
+	private Clock clock;
+	private SushiStock sushiStock;
+	private IngredientStock ingredientStock;
+	
+	private HashMap<Integer, Long> arrivals; // Arrival time of each order not yet delivered (by ID)
+	private ArrayList<Long> leadTimes; // Arrival to delivery of each delivered order
+	private int arrived;
+	
+	private HashMap<String, Integer> lastStock; // Last stock seen of each dish and ingredient
+	private int dishStockOuts;
+	private int ingredientStockOuts;
+	
+	private long staffSamples; // Number of KitchenStaff looked at when sampling
+	private long staffBusy; // Number of those that were preparing
+	private long droneSamples; // Number of Drones looked at when sampling
+	private long dronesBusy; // Number of those that were out
+	
+	private long startTime;
+	private long endTime;
+	private boolean finished; // Nothing is recorded after the simulation ends
+	
+	/*
+	 * Constructor to create new SimulationMetrics for a simulation's stock
+	 */
+	public SimulationMetrics(Clock clock, SushiStock sushiStock, IngredientStock ingredientStock) {
+		this.clock = clock;
+		this.sushiStock = sushiStock;
+		this.ingredientStock = ingredientStock;
+		
+		this.arrivals = new HashMap<>();
+		this.leadTimes = new ArrayList<>();
+		this.arrived = 0;
+		
+		this.lastStock = new HashMap<>();
+		this.dishStockOuts = 0;
+		this.ingredientStockOuts = 0;
+		
+		this.startTime = clock.currentTimeMillis();
+		this.endTime = startTime;
+		this.finished = false;
+	}
+	
+	/*
+	 * Synchronized method to record an order arriving
+	 */
+	public synchronized void orderArrived(Order order) {
+		arrivals.put(order.getID(), clock.currentTimeMillis());
+		arrived++;
+	}
+	
+	/*
+	 * Synchronized method to record the lead time of an order once it's delivered
+	 */
+	public synchronized void orderStatusChanged(Order order) {
+		if (finished || order.getStatus() != Order.Status.DELIVERED) {
+			return;
+		}
+		
+		Long arrival = arrivals.remove(order.getID());
+		if (arrival != null) {
+			leadTimes.add(clock.currentTimeMillis() - arrival);
+		}
+	}
+	
+	/*
+	 * Synchronized method to count a dish running out
+	 */
+	public synchronized void dishStockChanged(SushiDish dish) {
+		if (finished) {
+			return;
+		}
+		
+		if (stockRanOut("dish:" + dish.getName(), sushiStock.getStock(dish.getName()))) {
+			dishStockOuts++;
+		}
+	}
+	
+	/*
+	 * Synchronized method to count an ingredient running out
+	 */
+	public synchronized void ingredientStockChanged(Ingredient ingredient) {
+		if (finished) {
+			return;
+		}
+		
+		if (stockRanOut("ingredient:" + ingredient.getName(), ingredientStock.getStock(ingredient.getName()))) {
+			ingredientStockOuts++;
+		}
+	}
+	
+	/*
+	 * Synchronized method to sample how many KitchenStaff and Drones are busy right now
+	 */
+	public synchronized void sample(ArrayList<KitchenStaff> staff, ArrayList<Drone> drones) {
+		if (finished) {
+			return;
+		}
+		
+		for (KitchenStaff member : staff) {
+			staffSamples++;
+			if (member.getStatus() == KitchenStaff.Status.PREPARING) {
+				staffBusy++;
+			}
+		}
+		
+		for (Drone drone : drones) {
+			droneSamples++;
+			if (drone.getStatus() != Drone.Status.WAITING && drone.getStatus() != Drone.Status.STOPPED) {
+				dronesBusy++;
+			}
+		}
+	}
+	
+	/*
+	 * Synchronized method to return whether every order that arrived has been delivered
+	 */
+	public synchronized boolean allDelivered() {
+		return leadTimes.size() >= arrived;
+	}
+	
+	/*
+	 * Synchronized method to mark the end of the simulation
+	 */
+	public synchronized void finish() {
+		endTime = clock.currentTimeMillis();
+		finished = true;
+	}
+	
+	/*
+	 * Synchronized method to print the results
+	 */
+	public synchronized void report(PrintStream output) {
+		double hours = (endTime - startTime) / 3600000.0;
+		
+		ArrayList<Long> sorted = new ArrayList<>(leadTimes);
+		Collections.sort(sorted);
+		
+		output.println(String.format("Simulated time:        %.2f hours", hours));
+		output.println(String.format("Orders arrived:        %d", arrived));
+		output.println(String.format("Orders delivered:      %d", sorted.size()));
+		output.println(String.format("Throughput:            %.1f orders/hour", hours > 0 ? sorted.size() / hours : 0.0));
+		output.println(String.format("Lead time p50:         %.1f minutes", percentile(sorted, 50)));
+		output.println(String.format("Lead time p90:         %.1f minutes", percentile(sorted, 90)));
+		output.println(String.format("Lead time p99:         %.1f minutes", percentile(sorted, 99)));
+		output.println(String.format("Lead time max:         %.1f minutes", percentile(sorted, 100)));
+		output.println(String.format("Staff utilisation:     %.1f%%", staffSamples > 0 ? 100.0 * staffBusy / staffSamples : 0.0));
+		output.println(String.format("Drone utilisation:     %.1f%%", droneSamples > 0 ? 100.0 * dronesBusy / droneSamples : 0.0));
+		output.println(String.format("Dish stock-outs:       %d", dishStockOuts));
+		output.println(String.format("Ingredient stock-outs: %d", ingredientStockOuts));
+	}
+	
+	/*
+	 * Method to remember the latest stock of something and return whether it's just run out (lock held)
+	 */
+	private boolean stockRanOut(String key, Integer current) {
+		// Removed from stock, nothing to count
+		if (current == null) {
+			lastStock.remove(key);
+			return false;
+		}
+		
+		Integer previous = lastStock.put(key, current);
+		return current <= 0 && (previous == null || previous > 0);
+	}
+	
+	/*
+	 * Method to return a percentile of sorted lead times in minutes (nearest rank)
+	 */
+	private double percentile(ArrayList<Long> sorted, int percent) {
+		if (sorted.isEmpty()) {
+			return 0.0;
+		}
+		
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, rank - 1)) / 60000.0;
+	}
+
+}
@@ -0,0 +1,302 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+
+/*
+ * Class to let a ClientApplication talk to the business over TCP (served by a CommsServer) instead
+ * of through the shared files. Only what the ClientApplication uses goes over the socket - sending
+ * orders, getting the menu and a user's orders, logging in and registering. Menu changes are pushed
+ * - a subscription waits on the business until something changes - so they get their own connection
+ * to keep them from holding up everything else. Connections are kept open and reopened on the next
+ * request if they break. The business only takes orders from the user logged in on a connection,
+ * so a reopened one logs in again as whoever last did.
+ */
+
+public class SocketComms extends Comms {
+	
+	private static final long RETRY_INTERVAL = 5000; // How long to wait before subscribing again after a failure
+	
+	private String host;
+	private int port;
+	
+	private Connection requests; // Connection for everything but menu subscriptions
+	private Connection subscription; // Connection waiting for menu changes
+	
+	private String username; // User last logged in (null if nobody), to log in again on a new connection
+	private String password;
+	
+	/*
+	 * Constructor to create a new SocketComms for the business at a host and port
+	 */
+	public SocketComms(String host, int port) {
+		super();
+		this.host = host;
+		this.port = port;
+		
+		this.requests = new Connection();
+		this.subscription = new Connection();
+	}
+	
+	/*
+	 * Method to send an order to the business (this also sets its ID). Returns false if it couldn't be sent.
+	 */
+	public boolean sendUserOrder(Order order) {
+		try {
+			DataInputStream response = requests.request(CommsServer.SEND_ORDER, out -> BinaryCodec.writeOrder(out, order));
+			if (response == null) {
+				return false;
+			}
+			
+			order.setID(response.readInt());
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/*
+	 * Method to get the current menu from the business
+	 */
+	public SushiStock receiveSushiStock() {
+		try {
+			DataInputStream response = requests.request(CommsServer.GET_MENU, out -> {});
+			return BinaryCodec.readSushiStock(response, null);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/*
+	 * Method to wait until the business has changed the menu since a version and return what changed
+	 */
+	public MenuUpdate awaitMenuUpdate(long epoch, long version) throws InterruptedException {
+		while (true) {
+			try {
+				// The business holds on to this until something changes (or a while passes with nothing)
+				DataInputStream response = subscription.request(CommsServer.SUBSCRIBE_MENU, out -> {
+					out.writeLong(epoch);
+					out.writeLong(version);
+				});
+				
+				MenuUpdate update = BinaryCodec.readMenuUpdate(response);
+				if (!update.isEmpty()) {
+					return update;
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				
+				// Business is probably down, try again in a bit
+				Thread.sleep(RETRY_INTERVAL);
+			}
+		}
+	}
+	
+	/*
+	 * Method to get every order placed by a user from the business
+	 */
+	public ArrayList<Order> getUsersOrders(String username) {
+		ArrayList<Order> orders = new ArrayList<>();
+		
+		try {
+			DataInputStream response = requests.request(CommsServer.GET_USER_ORDERS, out -> out.writeUTF(username));
+			
+			// Not logged in as them
+			if (response == null) {
+				return orders;
+			}
+			
+			int size = response.readInt();
+			for (int i = 0; i < size; i++) {
+				orders.add(BinaryCodec.readOrder(response));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return orders;
+	}
+	
+	/*
+	 * Method to get a page of a user's orders from the business, newest first
+	 */
+	public OrderPage getUsersOrdersPage(String username, int cursor, int size) {
+		try {
+			DataInputStream response = requests.request(CommsServer.GET_USER_ORDERS_PAGE, out -> {
+				out.writeUTF(username);
+				out.writeInt(cursor);
+				out.writeInt(size);
+			});
+			
+			// Not logged in as them
+			if (response == null) {
+				return new OrderPage(new ArrayList<>(), cursor, false);
+			}
+			
+			return BinaryCodec.readOrderPage(response);
+		} catch (IOException e) {
+			e.printStackTrace();
+			
+			// Nothing more can be got for now
+			return new OrderPage(new ArrayList<>(), cursor, false);
+		}
+	}
+	
+	/*
+	 * Method to check a username and password with the business and return the User if they match
+	 */
+	public User login(String username, String password) {
+		try {
+			DataInputStream response = requests.request(CommsServer.LOGIN, out -> {
+				out.writeUTF(username);
+				out.writeUTF(password);
+			});
+			
+			if (response == null) {
+				return null;
+			}
+			
+			// Remember them in case the connection has to be reopened
+			this.username = username;
+			this.password = password;
+			
+			// The password isn't sent back so use the one that matched
+			User user = BinaryCodec.readUser(response);
+			return new User(user.getUsername(), password, user.getEmail(), user.getPostcode());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/*
+	 * Method to register a new User with the business. Returns false if the username is taken.
+	 */
+	public boolean saveUser(User user) {
+		try {
+			return requests.request(CommsServer.REGISTER, out -> BinaryCodec.writeUser(out, user, true)) != null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/*
+	 * Class to hold one connection to the business
+	 */
+	private class Connection {
+		
+		private Socket socket; // Current connection (null if not connected)
+		private DataInputStream input;
+		private DataOutputStream output;
+		
+		/*
+		 * Synchronized method to send a request and wait for the response. Returns the rest of the
+		 * response after the result, or null if the business refused the request.
+		 */
+		private synchronized DataInputStream request(byte type, RequestWriter writer) throws IOException {
+			// Build the request first so a half written one is never sent
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream request = new DataOutputStream(bytes);
+			request.writeByte(type);
+			writer.write(request);
+			
+			// The business would drop us for it anyway
+			if (bytes.size() > CommsServer.MAX_REQUEST) {
+				throw new IOException("Request too large");
+			}
+			
+			try {
+				connect();
+				
+				output.writeInt(bytes.size());
+				bytes.writeTo(output);
+				output.flush();
+				
+				int length = input.readInt();
+				if (length < 1 || length > CommsServer.MAX_FRAME) {
+					throw new IOException("Bad frame length " + length);
+				}
+				
+				byte[] response = new byte[length];
+				input.readFully(response);
+				
+				DataInputStream responseInput = new DataInputStream(new ByteArrayInputStream(response));
+				byte result = responseInput.readByte();
+				
+				if (result == CommsServer.ERROR) {
+					throw new IOException("Business reported an error: " + responseInput.readUTF());
+				}
+				
+				return result == CommsServer.OK ? responseInput : null;
+			} catch (IOException e) {
+				// Start again with a new connection next time
+				disconnect();
+				throw e;
+			}
+		}
+		
+		/*
+		 * Method to open the connection if it isn't already (lock held)
+		 */
+		private void connect() throws IOException {
+			if (socket != null) {
+				return;
+			}
+			
+			socket = new Socket(host, port);
+			socket.setTcpNoDelay(true);
+			
+			input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			
+			// Orders are only taken from whoever's logged in on the connection (subscriptions don't need it)
+			if (this == requests && username != null) {
+				request(CommsServer.LOGIN, out -> {
+					out.writeUTF(username);
+					out.writeUTF(password);
+				});
+			}
+		}
+		
+		/*
+		 * Method to close the connection (lock held)
+		 */
+		private void disconnect() {
+			if (socket == null) {
+				return;
+			}
+			
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			socket = null;
+			input = null;
+			output = null;
+		}
+	
+	}
+	
+	/*
+	 * Interface for writing the type specific part of a request
+	 */
+	private interface RequestWriter {
+		
+		/*
+		 * Method to write the request data
+		 */
+		void write(DataOutputStream output) throws IOException;
+	
+	}
+
+}
@@ -0,0 +1,164 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/*
+ * Class to hold a primitive int counter for each item of stock. Each item is given its own slot in
+ * fixed size chunks of AtomicIntegerArray, so reads and updates never take a lock - only adding and
+ * removing items does. Slots aren't reused after an item is removed, so an update racing with the
+ * removal just changes a counter nobody reads any more.
+ */
+
+public class StockCounters<T> {
+	
+	private static final int CHUNK_SIZE = 64; // Slots added at a time
+	
+	private ConcurrentHashMap<T, Integer> slots; // Slot of each item
+	private volatile AtomicIntegerArray[] chunks; // Counters, never copied once created
+	private int nextSlot; // Next unused slot
+	
+	/*
+	 * Constructor to create a new, empty StockCounters
+	 */
+	public StockCounters() {
+		this.slots = new ConcurrentHashMap<>();
+		this.chunks = new AtomicIntegerArray[0];
+		this.nextSlot = 0;
+	}
+	
+	/*
+	 * Synchronized method to set the counter of an item, adding the item if it's new
+	 */
+	public synchronized void put(T item, int value) {
+		Integer slot = slots.get(item);
+		
+		if (slot == null) {
+			slot = nextSlot++;
+			
+			// Add another chunk if we've run out (existing chunks are kept so nothing in flight is lost)
+			if (slot / CHUNK_SIZE >= chunks.length) {
+				AtomicIntegerArray[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+				grown[chunks.length] = new AtomicIntegerArray(CHUNK_SIZE);
+				chunks = grown;
+			}
+			
+			// Set the value before the slot is visible to anyone else
+			chunks[slot / CHUNK_SIZE].set(slot % CHUNK_SIZE, value);
+			slots.put(item, slot);
+		} else {
+			chunks[slot / CHUNK_SIZE].set(slot % CHUNK_SIZE, value);
+		}
+	}
+	
+	/*
+	 * Synchronized method to remove an item
+	 */
+	public synchronized void remove(T item) {
+		if (item != null) {
+			slots.remove(item);
+		}
+	}
+	
+	/*
+	 * Method to return whether an item has a counter
+	 */
+	public boolean contains(T item) {
+		return item != null && slots.containsKey(item);
+	}
+	
+	/*
+	 * Method to return the counter of an item, or null if it doesn't have one
+	 */
+	public Integer get(T item) {
+		Integer slot = getSlot(item);
+		if (slot == null) {
+			return null;
+		}
+		
+		return chunks[slot / CHUNK_SIZE].get(slot % CHUNK_SIZE);
+	}
+	
+	/*
+	 * Method to add to (or with a negative amount, take from) the counter of an item. Returns false
+	 * if the item doesn't have one.
+	 */
+	public boolean add(T item, int amount) {
+		Integer slot = getSlot(item);
+		if (slot == null) {
+			return false;
+		}
+		
+		chunks[slot / CHUNK_SIZE].getAndAdd(slot % CHUNK_SIZE, amount);
+		return true;
+	}
+	
+	/*
+	 * Method to take an amount from the counter of an item only if there's at least that much there
+	 */
+	public boolean takeIfAvailable(T item, int amount) {
+		Integer slot = getSlot(item);
+		if (slot == null) {
+			return false;
+		}
+		
+		AtomicIntegerArray chunk = chunks[slot / CHUNK_SIZE];
+		int index = slot % CHUNK_SIZE;
+		
+		// Keep trying until nobody else changes it between our read and write
+		while (true) {
+			int current = chunk.get(index);
+			
+			if (current < amount) {
+				return false;
+			}
+			
+			if (chunk.compareAndSet(index, current, current - amount)) {
+				return true;
+			}
+		}
+	}
+	
+	/*
+	 * Method to return the number of items
+	 */
+	public int size() {
+		return slots.size();
+	}
+	
+	/*
+	 * Method to return every item (safe to iterate while other threads change the counters)
+	 */
+	public Set<T> keySet() {
+		return slots.keySet();
+	}
+	
+	/*
+	 * Method to copy every counter into a HashMap (used for saving)
+	 */
+	public HashMap<T, Integer> toHashMap() {
+		HashMap<T, Integer> copy = new HashMap<>();
+		
+		for (T item : slots.keySet()) {
+			Integer value = get(item);
+			if (value != null) {
+				copy.put(item, value);
+			}
+		}
+		
+		return copy;
+	}
+	
+	/*
+	 * Method to find the slot of an item (null if it doesn't have one)
+	 */
+	private Integer getSlot(T item) {
+		if (item == null) {
+			return null;
+		}
+		
+		return slots.get(item);
+	}
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Interface for anything that needs to be told when SushiStock, IngredientStock or the Suppliers change
+ */
+
+public interface StockListener {
+	
+	/*
+	 * Method called after the stock, restocking level or membership of a SushiDish changes
+	 */
+	default void dishStockChanged(SushiDish dish) {
+		// Intentionally blank (not every listener cares about dishes)
+	}
+	
+	/*
+	 * Method called after the stock, restocking level, collecting flag or membership of an Ingredient changes
+	 */
+	default void ingredientStockChanged(Ingredient ingredient) {
+		// Intentionally blank (not every listener cares about ingredients)
+	}
+	
+	/*
+	 * Method called after the name, distance or membership of a Supplier changes
+	 */
+	default void supplierChanged(Supplier supplier) {
+		// Intentionally blank (not every listener cares about suppliers)
+	}
+	
+}
@@ -1,71 +1,206 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /*
- * Class to handle stock of SushiDishes
+ * Class to handle stock of SushiDishes. Counts and restocking levels are held in StockCounters so
+ * reading and changing them never blocks - only adding, removing and renaming dishes locks.
  */
 
 public class SushiStock implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 	
-	private HashMap<SushiDish, Integer> stock;
-	private HashMap<SushiDish, Integer> restockingLevels;
+	// Still saved as two HashMaps so files saved before the counters were introduced can be read
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("stock", HashMap.class),
+		new ObjectStreamField("restockingLevels", HashMap.class)
+	};
+	
+	private transient StockCounters<SushiDish> stock;
+	private transient StockCounters<SushiDish> restockingLevels;
+	
+	// Index from name to dish so by-name lookups don't scan the stock (not saved, rebuilt when read in)
+	private transient ConcurrentHashMap<String, SushiDish> dishesByName;
+	
+	// Keeps dishes that need preparing in order of urgency (not saved, rebuilt when read in)
+	private transient RestockPlanner planner;
+	
+	// Listeners to tell about changes (not saved, they're re-added on startup)
+	private transient volatile CopyOnWriteArrayList<StockListener> listeners;
 	
 	/*
 	 * Constructor to create a new SushiStock
 	 */
 	public SushiStock() {
-		stock = new HashMap<>();
-		restockingLevels = new HashMap<>();
+		stock = new StockCounters<>();
+		restockingLevels = new StockCounters<>();
+		dishesByName = new ConcurrentHashMap<>();
+		planner = new RestockPlanner(this);
+	}
+	
+	/*
+	 * Synchronized method to add a listener to be told about stock changes
+	 */
+	public synchronized void addStockListener(StockListener listener) {
+		// Listeners are transient so may be null after being read back in
+		if (listeners == null) {
+			listeners = new CopyOnWriteArrayList<>();
+		}
+		
+		listeners.add(listener);
+	}
+	
+	/*
+	 * Method to move a dish to its new place in the restock plan and tell every listener it has
+	 * changed (called without holding our lock)
+	 */
+	private void fireDishChanged(SushiDish dish) {
+		planner.update(dish);
+		
+		CopyOnWriteArrayList<StockListener> current = listeners;
+		
+		// If nothing is listening or there's no dish there's nothing to do
+		if (current == null || dish == null) {
+			return;
+		}
+		
+		for (StockListener listener : current) {
+			listener.dishStockChanged(dish);
+		}
+	}
+	
+	/*
+	 * Method to get a SushiDish using its name as a reference
+	 */
+	private SushiDish getDishFromName(String name) {
+		return name == null ? null : dishesByName.get(name);
+	}
+	
+	/*
+	 * Method to return the dish with a name (null if there isn't one)
+	 */
+	public SushiDish getDish(String name) {
+		return getDishFromName(name);
+	}
+	
+	/*
+	 * Synchronized method to save the counters as HashMaps
+	 */
+	private synchronized void writeObject(ObjectOutputStream output) throws IOException {
+		ObjectOutputStream.PutField fields = output.putFields();
+		fields.put("stock", stock.toHashMap());
+		fields.put("restockingLevels", restockingLevels.toHashMap());
+		output.writeFields();
 	}
 	
 	/*
-	 * Synchronized method to get a SushiDish using its name as a reference
+	 * Method to rebuild the counters and name index after being read back in
 	 */
-	private synchronized SushiDish getDishFromName(String name) {
-		// For every dish in stock, check its name and return it if it matches
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = input.readFields();
+		HashMap<SushiDish, Integer> savedStock = (HashMap<SushiDish, Integer>) fields.get("stock", null);
+		HashMap<SushiDish, Integer> savedLevels = (HashMap<SushiDish, Integer>) fields.get("restockingLevels", null);
+		
+		stock = new StockCounters<>();
+		restockingLevels = new StockCounters<>();
+		dishesByName = new ConcurrentHashMap<>();
+		planner = new RestockPlanner(this);
+		
+		for (Map.Entry<SushiDish, Integer> entry : savedStock.entrySet()) {
+			SushiDish dish = entry.getKey();
+			stock.put(dish, entry.getValue());
+			restockingLevels.put(dish, savedLevels.containsKey(dish) ? savedLevels.get(dish) : 0);
+			dishesByName.put(dish.getName(), dish);
+		}
+		
 		for (SushiDish dish : stock.keySet()) {
-			if (dish.getName().equals(name)) {
-				return dish;
+			planner.update(dish);
+		}
+	}
+	
+	/*
+	 * Method to rename a dish, keeping the name index up to date
+	 */
+	public void renameDish(SushiDish dish, String name) {
+		synchronized (this) {
+			// Only move the index entry if it's really this dish
+			if (dishesByName.get(dish.getName()) == dish) {
+				dishesByName.remove(dish.getName());
+			}
+			
+			dish.setName(name);
+			
+			if (stock.contains(dish)) {
+				dishesByName.put(name, dish);
 			}
 		}
 		
-		// Otherwise return null
-		return null;
+		fireDishChanged(dish);
+	}
+	
+	/*
+	 * Method to add an item of stock
+	 */
+	public void addStockItem(SushiDish dish, int restockingLevel) {
+		synchronized (this) {
+			// Add the item with current stock of 0
+			stock.put(dish, 0);
+			dishesByName.put(dish.getName(), dish);
+			// Add its restocking level
+			restockingLevels.put(dish, restockingLevel);
+		}
+		
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to add an item of stock
+	 * Method to remove an item of stock
 	 */
-	public synchronized void addStockItem(SushiDish dish, int restockingLevel) {
-		// Add the item with current stock of 0
-		stock.put(dish, 0);
-		// Add its restocking level
-		restockingLevels.put(dish, restockingLevel);
+	public void removeStockItem(SushiDish dish) {
+		synchronized (this) {
+			// Remove it from both mappings
+			stock.remove(dish);
+			if (dishesByName.get(dish.getName()) == dish) {
+				dishesByName.remove(dish.getName());
+			}
+			restockingLevels.remove(dish);
+		}
+		
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to remove an item of stock
+	 * Method to set the stock of a dish to an exact amount
 	 */
-	public synchronized void removeStockItem(SushiDish dish) {
-		// Remove it from both mappings
-		stock.remove(dish);
-		restockingLevels.remove(dish);
+	public void setStock(SushiDish dish, int amount) {
+		synchronized (this) {
+			stock.put(dish, amount);
+		}
+		
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to return the stock of a dish
+	 * Method to return the stock of a dish
 	 */
-	public synchronized Integer getStock(SushiDish dish) {
+	public Integer getStock(SushiDish dish) {
 		return stock.get(dish);
 	}
 	
 	/*
 	 * Method to return the stock of a dish using its name as a reference
 	 */
-	public synchronized Integer getStock(String name) {
+	public Integer getStock(String name) {
 		// Find the dish
 		SushiDish dish = getDishFromName(name);
 		
@@ -73,57 +208,96 @@ public class SushiStock implements Serializable {
 	}
 	
 	/*
-	 * Synchronized mehtod to increase the stock of a dish by 1
+	 * Method to increase the stock of a dish by 1
 	 */
-	public synchronized void incrementStock(SushiDish dish) {
-		Integer currentStock = stock.get(dish);
-		stock.put(dish, currentStock + 1);
+	public void incrementStock(SushiDish dish) {
+		stock.add(dish, 1);
+		
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to increase the stock of a dish by 1 using name as a reference
+	 * Method to increase the stock of a dish by 1 using name as a reference
 	 */
-	public synchronized void incrementStock(String name) {
+	public void incrementStock(String name) {
 		// Find the dish
 		SushiDish dish = getDishFromName(name);
 		
-		Integer currentStock = stock.get(dish);
-		stock.put(dish, currentStock + 1);
+		stock.add(dish, 1);
+		
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to decrease the stock of a dish by amount
+	 * Method to decrease the stock of a dish by amount
 	 */
-	public synchronized void decreaseStock(SushiDish dish, int amount) {
-		Integer currentStock = stock.get(dish);
-		stock.put(dish, currentStock - amount);
+	public void decreaseStock(SushiDish dish, int amount) {
+		stock.add(dish, -amount);
+		
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to decrease the stock of a dish by amount using name as a reference
+	 * Method to decrease the stock of a dish by amount using name as a reference
 	 */
-	public synchronized void decreaseStock(String name, int amount) {
+	public void decreaseStock(String name, int amount) {
 		// Find the dish
 		SushiDish dish = getDishFromName(name);
 		
-		// Get current stock
-		Integer currentStock = stock.get(dish);
+		stock.add(dish, -amount);
 		
-		// Update the mapping
-		stock.put(dish, currentStock - amount);
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to return the restocking level of a dish
+	 * Method to take the contents of an Order out of stock, only if every dish is in stock
 	 */
-	public synchronized Integer getRestockingLevel(SushiDish dish) {
+	public boolean takeDishes(HashMap<SushiDish, Integer> contents) {
+		ArrayList<SushiDish> taken = new ArrayList<>();
+		ArrayList<Integer> amounts = new ArrayList<>();
+		
+		// Take each dish in turn (using names as the order's dishes are copies)
+		for (SushiDish orderDish : contents.keySet()) {
+			SushiDish dish = getDishFromName(orderDish.getName());
+			int amount = contents.get(orderDish);
+			
+			// If we can't take one, put back what we've taken so far
+			if (dish == null || !stock.takeIfAvailable(dish, amount)) {
+				for (int i = 0; i < taken.size(); i++) {
+					stock.add(taken.get(i), amounts.get(i));
+				}
+				
+				return false;
+			}
+			
+			taken.add(dish);
+			amounts.add(amount);
+		}
+		
+		// These dishes are no longer waited on
+		for (SushiDish orderDish : contents.keySet()) {
+			planner.changeDemand(orderDish.getName(), -contents.get(orderDish));
+		}
+		
+		// Tell listeners about every dish that changed
+		for (SushiDish dish : taken) {
+			fireDishChanged(dish);
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Method to return the restocking level of a dish
+	 */
+	public Integer getRestockingLevel(SushiDish dish) {
 		return restockingLevels.get(dish);
 	}
 	
 	/*
-	 * Synchronized method to return the restocking level of a dish using name as a reference
+	 * Method to return the restocking level of a dish using name as a reference
 	 */
-	public synchronized Integer getRestockingLevel(String name) {
+	public Integer getRestockingLevel(String name) {
 		// Find the dish
 		SushiDish dish = getDishFromName(name);
 		
@@ -131,53 +305,127 @@ public class SushiStock implements Serializable {
 	}
 	
 	/*
-	 * Synchronized method to set the restocking level of a dish
+	 * Method to set the restocking level of a dish
 	 */
-	public synchronized void setRestockingLevel(SushiDish dish, int restockLevel) {
-		restockingLevels.put(dish, restockLevel);
+	public void setRestockingLevel(SushiDish dish, int restockLevel) {
+		synchronized (this) {
+			// Only for dishes we still have
+			if (stock.contains(dish)) {
+				restockingLevels.put(dish, restockLevel);
+			}
+		}
+		
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to set the restocking level of a dish using name as a reference
+	 * Method to set the restocking level of a dish using name as a reference
 	 */
-	public synchronized void setRestockingLevel(String name, int restockLevel) {
-		// Find the dish
-		SushiDish dish = getDishFromName(name);
-				
-		restockingLevels.put(dish, restockLevel);
+	public void setRestockingLevel(String name, int restockLevel) {
+		SushiDish dish;
+		
+		synchronized (this) {
+			// Find the dish
+			dish = getDishFromName(name);
+			
+			if (dish != null) {
+				restockingLevels.put(dish, restockLevel);
+			}
+		}
+		
+		fireDishChanged(dish);
 	}
 	
 	/*
-	 * Synchronized method to check the restocking level of all dishes and return the first dish
-	 * that needs restocking.
+	 * Method to return the most urgent dish that needs restocking (ignoring any that are already
+	 * being prepared up to their level), or null if none do
 	 */
-	public synchronized SushiDish checkRestockLevels() {
-		// For every dish in restockingLevels
-		for (SushiDish dish : restockingLevels.keySet()) {
-			// Get current stock
-			Integer currentStock = stock.get(dish);
-			
-			// If current stock is less than restocking level return the dish
-			if (currentStock < restockingLevels.get(dish)) {
-				return dish;
-			}
+	public SushiDish checkRestockLevels() {
+		return planner.first();
+	}
+	
+	/*
+	 * Method to return the next most urgent dish after one returned by checkRestockLevels, or null
+	 * if there are no more
+	 */
+	public SushiDish nextRestockCandidate(SushiDish dish) {
+		return planner.next(dish);
+	}
+	
+	/*
+	 * Synchronized method to claim one unit of a dish's deficit for preparation. Returns false if
+	 * stock plus what's already being prepared has reached the restocking level.
+	 */
+	public synchronized boolean claimDeficit(SushiDish dish) {
+		Integer currentStock = stock.get(dish);
+		Integer restockingLevel = restockingLevels.get(dish);
+		
+		// It may have been removed since it was picked
+		if (currentStock == null || restockingLevel == null) {
+			return false;
 		}
 		
-		// If nothing needs restocking return null
-		return null;
+		if (restockingLevel - currentStock - dish.getInPreparation() > 0) {
+			dish.incrementInPreparation();
+			planner.update(dish);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/*
+	 * Method to give back a claim made by claimDeficit (once the dish is made or if it can't be)
+	 */
+	public void releaseClaim(SushiDish dish) {
+		dish.decrementInPreparation();
+		planner.update(dish);
+	}
+	
+	/*
+	 * Method to add the dishes in an order to the demand used to plan restocking
+	 */
+	public void addDemand(HashMap<SushiDish, Integer> contents) {
+		changeDemand(contents, 1);
+	}
+	
+	/*
+	 * Method to remove the dishes in an order from the demand used to plan restocking (taking the
+	 * dishes for delivery does this automatically)
+	 */
+	public void removeDemand(HashMap<SushiDish, Integer> contents) {
+		changeDemand(contents, -1);
+	}
+	
+	/*
+	 * Method to change the demand for every dish in an order (using names as the order's dishes are copies)
+	 */
+	private void changeDemand(HashMap<SushiDish, Integer> contents, int sign) {
+		for (SushiDish orderDish : contents.keySet()) {
+			planner.changeDemand(orderDish.getName(), sign * contents.get(orderDish));
+			planner.update(getDishFromName(orderDish.getName()));
+		}
+	}
+	
+	/*
+	 * Method to return the total number of dishes that need preparing to reach every restocking level
+	 */
+	public int getTotalDeficit() {
+		return planner.getTotalDeficit();
 	}
 	
 	/*
-	 * Synchronized method to reset inPreparation for all dishes ready for closing
+	 * Method to reset inPreparation for all dishes ready for closing
 	 */
-	public synchronized void prepareForClose() {
+	public void prepareForClose() {
 		for (SushiDish dish : stock.keySet()) {
 			dish.resetInPreparation();
+			planner.update(dish);
 		}
 	}
 	
 	/*
-	 * Method to return an iterator for the stock HashMap
+	 * Method to return an iterator over every dish (safe to use while stock changes)
 	 */
 	public Iterator<SushiDish> getStockIterator() {
 		return stock.keySet().iterator();
@@ -0,0 +1,246 @@
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/*
+ * Class to keep discrete-event time. Registered threads take turns: only one of them runs at a time,
+ * and it keeps its turn until it sleeps on the clock or waits for work through it. Once none of them
+ * is left to run the clock jumps straight to the earliest wake up time. Only registered threads should
+ * sleep on it.
+ *
+ * Threads get their turns in the order they were woken (and those woken together in the order they
+ * were created), so given the same inputs a run always plays out the same way however the threads
+ * are scheduled. Whatever hands out work (RestockSignal, DispatchQueue) calls wake() with the lock its
+ * waiters called beginWait() with, so they join the queue for a turn.
+ */
+
+public class VirtualClock implements Clock {
+	
+	private long now; // Current clock time in milliseconds
+	
+	private int registered; // Number of threads we keep time for
+	private Thread running; // Registered thread whose turn it is (null if none)
+	private long batch; // Incremented each time threads are woken, so earlier wake ups run first
+	private PriorityQueue<Turn> ready; // Threads woken up and waiting for their turn
+	private HashMap<Thread, Long> sleeping; // Threads asleep on the clock and when they're due
+	private HashMap<Thread, Object> waiting; // Threads waiting for work (and what on)
+	
+	/*
+	 * Constructor to create a new VirtualClock starting from the current time
+	 */
+	public VirtualClock() {
+		this(System.currentTimeMillis());
+	}
+	
+	/*
+	 * Constructor to create a new VirtualClock starting from a given time
+	 */
+	public VirtualClock(long startMillis) {
+		this.now = startMillis;
+		this.registered = 0;
+		this.running = null;
+		this.batch = 0;
+		this.ready = new PriorityQueue<>();
+		this.sleeping = new HashMap<>();
+		this.waiting = new HashMap<>();
+	}
+	
+	/*
+	 * Synchronized method to return the current clock time in milliseconds
+	 */
+	public synchronized long currentTimeMillis() {
+		return now;
+	}
+	
+	/*
+	 * Synchronized method to block the calling thread until the clock reaches a time, giving up its turn
+	 */
+	public synchronized void sleep(long millis) throws InterruptedException {
+		// Like Thread.sleep() - otherwise a thread that never has to wait would never notice
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		
+		if (millis <= 0) {
+			return;
+		}
+		
+		sleeping.put(Thread.currentThread(), now + millis);
+		yieldTurn();
+		awaitTurn();
+	}
+	
+	/*
+	 * Synchronized method to add the calling thread to the threads we keep time for. Returns once it's
+	 * the thread's turn.
+	 */
+	public synchronized void register() {
+		registered++;
+		notifyAll();
+		
+		ready.add(new Turn(Thread.currentThread(), batch));
+		runNext();
+		
+		// Not interruptible, so hang on to an interrupt for whatever the thread does next
+		boolean interrupted = false;
+		while (running != Thread.currentThread()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/*
+	 * Synchronized method to remove the calling thread from the threads we keep time for
+	 */
+	public synchronized void unregister() {
+		registered--;
+		forget(Thread.currentThread());
+	}
+	
+	/*
+	 * Synchronized method to block (in real time) until at least a number of threads have registered,
+	 * so time doesn't move on before every thread has started
+	 */
+	public synchronized void awaitRegistered(int count) throws InterruptedException {
+		while (registered < count) {
+			wait();
+		}
+	}
+	
+	/*
+	 * Synchronized method called by a registered thread that's found no work, while holding the lock
+	 */
+	public synchronized void beginWait(Object lock) {
+		waiting.put(Thread.currentThread(), lock);
+	}
+	
+	/*
+	 * Synchronized method to give up the calling thread's turn until wake() is called for the lock it
+	 * called beginWait() with
+	 */
+	public synchronized void awaitWork() throws InterruptedException {
+		yieldTurn();
+		awaitTurn();
+	}
+	
+	/*
+	 * Synchronized method called when work is handed out - every thread waiting for work on the lock
+	 * joins the queue for a turn
+	 */
+	public synchronized void wake(Object lock) {
+		batch++;
+		
+		waiting.entrySet().removeIf(entry -> {
+			if (entry.getValue() == lock) {
+				ready.add(new Turn(entry.getKey(), batch));
+				return true;
+			}
+			return false;
+		});
+		
+		runNext();
+	}
+	
+	/*
+	 * Method to hand the calling thread's turn on if it has it (lock held)
+	 */
+	private void yieldTurn() {
+		if (running == Thread.currentThread()) {
+			running = null;
+			runNext();
+		}
+	}
+	
+	/*
+	 * Method to block until it's the calling thread's turn (lock held). An interrupted thread gives up
+	 * its place and carries on outside the turns.
+	 */
+	private void awaitTurn() throws InterruptedException {
+		try {
+			while (running != Thread.currentThread()) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			forget(Thread.currentThread());
+			throw e;
+		}
+	}
+	
+	/*
+	 * Method to drop a thread from everything we track, passing its turn on if it had it (lock held)
+	 */
+	private void forget(Thread thread) {
+		sleeping.remove(thread);
+		waiting.remove(thread);
+		ready.removeIf(turn -> turn.thread == thread);
+		
+		if (running == thread) {
+			running = null;
+		}
+		runNext();
+	}
+	
+	/*
+	 * Method to give the next thread its turn if nobody has it, moving the clock on to the earliest
+	 * wake up if nobody is ready (lock held)
+	 */
+	private void runNext() {
+		if (running != null) {
+			return;
+		}
+		
+		if (ready.isEmpty() && !sleeping.isEmpty()) {
+			now = sleeping.values().stream().min(Long::compare).get();
+			batch++;
+			
+			// Everyone due now is ready
+			sleeping.entrySet().removeIf(entry -> {
+				if (entry.getValue() <= now) {
+					ready.add(new Turn(entry.getKey(), batch));
+					return true;
+				}
+				return false;
+			});
+		}
+		
+		if (!ready.isEmpty()) {
+			running = ready.poll().thread;
+			notifyAll();
+		}
+	}
+	
+	/*
+	 * Class to hold a thread waiting for its turn, ordered by when it was woken then when it was created
+	 */
+	private static class Turn implements Comparable<Turn> {
+		
+		private final Thread thread; // Thread waiting for its turn
+		private final long batch; // Batch it was woken in
+		
+		/*
+		 * Constructor to create a new Turn
+		 */
+		public Turn(Thread thread, long batch) {
+			this.thread = thread;
+			this.batch = batch;
+		}
+		
+		/*
+		 * Method to compare to another Turn
+		 */
+		public int compareTo(Turn other) {
+			if (batch != other.batch) {
+				return Long.compare(batch, other.batch);
+			}
+			return Long.compare(thread.getId(), other.thread.getId());
+		}
+	
+	}
+
+}